@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.PropertiesPropertySource;
+import org.springframework.core.io.support.ResourcePropertySource;
+import org.trustedanalytics.kafka.adminapi.config.ExecutorConfig;
+import org.trustedanalytics.kafka.adminapi.config.KafkaConfig;
+import org.trustedanalytics.kafka.adminapi.config.MetricsConfig;
+import org.trustedanalytics.kafka.adminapi.kafka.MessageFilter;
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+import org.trustedanalytics.kafka.adminapi.model.TopicDescription;
+import org.trustedanalytics.kafka.adminapi.services.KafkaService;
+import org.trustedanalytics.kafka.adminapi.services.ReadCoalescer;
+import org.trustedanalytics.kafka.adminapi.services.TopicMetadataCache;
+import org.trustedanalytics.kafka.adminapi.services.admission.AdmissionControl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * The services of the application wired together without the web layer,
+ * configured by application.properties and pointed at the embedded Zookeeper and Kafka.
+ */
+public class AdminApi implements Closeable {
+
+    private static final long TOPIC_READY_TIMEOUT_MS = 30000;
+
+    private final AnnotationConfigApplicationContext context;
+
+    public AdminApi(EmbeddedKafka kafka) throws IOException {
+        context = new AnnotationConfigApplicationContext();
+        Properties overrides = new Properties();
+        overrides.put("kafka.zookeeperUri", kafka.getZookeeperUri());
+        overrides.put("kafka.brokersUri", kafka.getBrokersUri());
+        MutablePropertySources propertySources = context.getEnvironment().getPropertySources();
+        propertySources.addFirst(new PropertiesPropertySource("benchmark", overrides));
+        propertySources.addLast(new ResourcePropertySource("classpath:application.properties"));
+
+        context.register(BenchmarkConfig.class, MetricsConfig.class, ExecutorConfig.class, KafkaConfig.class,
+                TopicMetadataCache.class, ReadCoalescer.class, AdmissionControl.class, KafkaService.class);
+        context.refresh();
+    }
+
+    public KafkaService getKafkaService() {
+        return context.getBean(KafkaService.class);
+    }
+
+    /**
+     * Creates a single partition topic and waits until its leader is elected.
+     */
+    public void createTopic(String topic) throws InterruptedException {
+        KafkaService kafkaService = getKafkaService();
+        TopicDescription description = new TopicDescription();
+        description.setTopic(topic);
+        description.setPartitions(1);
+        kafkaService.createTopic(description);
+
+        long deadline = System.currentTimeMillis() + TOPIC_READY_TIMEOUT_MS;
+        while (true) {
+            try {
+                kafkaService.readPartitionTail(topic, 0, 1, 1024, MessageFormat.TEXT, MessageFilter.NONE);
+                return;
+            } catch (RuntimeException ex) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Topic " + topic + " has no leader: " + ex.getMessage());
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+    @Configuration
+    static class BenchmarkConfig {
+
+        @Bean
+        public static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
+            return new PropertySourcesPlaceholderConfigurer();
+        }
+
+        @Bean
+        public ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+    }
+}
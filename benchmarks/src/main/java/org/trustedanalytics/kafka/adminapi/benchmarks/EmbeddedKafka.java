@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.benchmarks;
+
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaServerStartable;
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * Zookeeper and optionally a single Kafka broker running inside the benchmark JVM.
+ * Both listen on loopback only and keep their data in a temporary directory removed on close.
+ */
+public class EmbeddedKafka implements Closeable {
+
+    // brokers URI used when no broker is started, nothing ever connects to it
+    private static final String NO_BROKER = "localhost:9";
+
+    private final Path dataDir;
+    private final ServerCnxnFactory zookeeper;
+    private final KafkaServerStartable kafka;
+    private final String zookeeperUri;
+    private final String brokersUri;
+
+    private EmbeddedKafka(boolean withBroker) throws IOException, InterruptedException {
+        dataDir = Files.createTempDirectory("kafka-admin-api-benchmark");
+
+        ZooKeeperServer zookeeperServer = new ZooKeeperServer(
+                dataDir.resolve("zookeeper").toFile(), dataDir.resolve("zookeeper").toFile(), 500);
+        zookeeper = ServerCnxnFactory.createFactory(new InetSocketAddress("localhost", 0), 1024);
+        zookeeper.startup(zookeeperServer);
+        zookeeperUri = "localhost:" + zookeeper.getLocalPort();
+
+        if (withBroker) {
+            int port = freePort();
+            Properties config = new Properties();
+            config.put("broker.id", "0");
+            config.put("host.name", "localhost");
+            config.put("port", String.valueOf(port));
+            config.put("log.dirs", dataDir.resolve("kafka").toString());
+            config.put("zookeeper.connect", zookeeperUri);
+            config.put("num.partitions", "1");
+            config.put("controlled.shutdown.enable", "false");
+            kafka = new KafkaServerStartable(new KafkaConfig(config));
+            kafka.startup();
+            brokersUri = "localhost:" + port;
+        } else {
+            kafka = null;
+            brokersUri = NO_BROKER;
+        }
+    }
+
+    public static EmbeddedKafka startZookeeper() throws IOException, InterruptedException {
+        return new EmbeddedKafka(false);
+    }
+
+    public static EmbeddedKafka startKafka() throws IOException, InterruptedException {
+        return new EmbeddedKafka(true);
+    }
+
+    public String getZookeeperUri() {
+        return zookeeperUri;
+    }
+
+    public String getBrokersUri() {
+        return brokersUri;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (kafka != null) {
+            kafka.shutdown();
+            kafka.awaitShutdown();
+        }
+        zookeeper.shutdown();
+        try (Stream<Path> files = Files.walk(dataDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
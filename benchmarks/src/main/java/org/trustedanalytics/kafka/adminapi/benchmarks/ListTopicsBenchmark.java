@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.benchmarks;
+
+import kafka.utils.ZKStringSerializer$;
+import kafka.utils.ZkUtils;
+import org.I0Itec.zkclient.ZkClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.trustedanalytics.kafka.adminapi.services.KafkaService;
+
+import java.util.List;
+
+/**
+ * Topic listing and existence checks with topicCount topics.
+ * Only Zookeeper is started: the topics are registered directly in Zookeeper,
+ * as no broker is involved in listing and thousands of real topics would take minutes to create.
+ */
+@State(Scope.Benchmark)
+public class ListTopicsBenchmark {
+
+    private static final String ASSIGNMENT = "{\"version\":1,\"partitions\":{\"0\":[0]}}";
+
+    @Param({"10", "1000", "10000"})
+    private int topicCount;
+
+    private EmbeddedKafka zookeeper;
+    private AdminApi adminApi;
+    private KafkaService kafkaService;
+    private String existingTopic;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        zookeeper = EmbeddedKafka.startZookeeper();
+        ZkClient zkClient = new ZkClient(zookeeper.getZookeeperUri(), 10000, 10000, ZKStringSerializer$.MODULE$);
+        try {
+            zkClient.createPersistent(ZkUtils.BrokerTopicsPath(), true);
+            for (int i = 0; i < topicCount; i++) {
+                zkClient.createPersistent(ZkUtils.getTopicPath(topic(i)), ASSIGNMENT);
+            }
+        } finally {
+            zkClient.close();
+        }
+        existingTopic = topic(topicCount / 2);
+
+        adminApi = new AdminApi(zookeeper);
+        kafkaService = adminApi.getKafkaService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        adminApi.close();
+        zookeeper.close();
+    }
+
+    @Benchmark
+    public List<String> listTopics() {
+        return kafkaService.listTopics(false);
+    }
+
+    @Benchmark
+    public List<String> listTopicsRefresh() {
+        return kafkaService.listTopics(true);
+    }
+
+    @Benchmark
+    public boolean topicExists() {
+        return kafkaService.topicExists(existingTopic);
+    }
+
+    private static String topic(int i) {
+        return "benchmark-topic-" + i;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Message payloads of a given size. The content is random ASCII text, so that it is valid UTF-8
+ * and does not compress better than real data when compression is enabled.
+ */
+final class Messages {
+
+    private static final Random RANDOM = new Random(42);
+
+    private Messages() {
+    }
+
+    static String text(int size) {
+        char[] chars = new char[size];
+        for (int i = 0; i < size; i++) {
+            chars[i] = (char) ('a' + RANDOM.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    static byte[] bytes(int size) {
+        return text(size).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.trustedanalytics.kafka.adminapi.kafka.MessageFilter;
+import org.trustedanalytics.kafka.adminapi.kafka.ReadOptions;
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+import org.trustedanalytics.kafka.adminapi.model.MessageRecord;
+import org.trustedanalytics.kafka.adminapi.model.PartitionMessages;
+import org.trustedanalytics.kafka.adminapi.model.TopicMessages;
+import org.trustedanalytics.kafka.adminapi.services.KafkaService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Whole topic reads, buffered, streamed and filtered, and reads of a range of a partition.
+ * The topic is filled once per trial with messageCount messages of messageSize bytes.
+ */
+@State(Scope.Benchmark)
+public class ReadBenchmark {
+
+    private static final String TOPIC = "benchmark-reads";
+    private static final int FILL_BATCH_SIZE = 500;
+    private static final MessageFilter SCAN_FILTER = MessageFilter.of("NOT-THERE", null, null, null, null,
+            Long.MAX_VALUE, Long.MAX_VALUE);
+
+    @Param({"100", "1024", "10240"})
+    private int messageSize;
+
+    @Param({"1000"})
+    private int messageCount;
+
+    @Param({"100"})
+    private int rangeSize;
+
+    private EmbeddedKafka kafka;
+    private AdminApi adminApi;
+    private KafkaService kafkaService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        kafka = EmbeddedKafka.startKafka();
+        adminApi = new AdminApi(kafka);
+        kafkaService = adminApi.getKafkaService();
+        adminApi.createTopic(TOPIC);
+
+        for (int written = 0; written < messageCount; written += FILL_BATCH_SIZE) {
+            List<MessageRecord> batch = new ArrayList<>();
+            for (int i = written; i < Math.min(messageCount, written + FILL_BATCH_SIZE); i++) {
+                batch.add(new MessageRecord(Messages.text(messageSize)));
+            }
+            kafkaService.writeMessages(TOPIC, batch).join();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        adminApi.close();
+        kafka.close();
+    }
+
+    @Benchmark
+    public TopicMessages readTopic() {
+        return kafkaService.readTopic(TOPIC, MessageFilter.NONE, ReadOptions.DEFAULT);
+    }
+
+    @Benchmark
+    public void streamTopic(Blackhole blackhole) {
+        kafkaService.readTopic(TOPIC, MessageFilter.NONE, ReadOptions.DEFAULT, (partition, offset, key, value) -> {
+            blackhole.consume(value);
+            return true;
+        });
+    }
+
+    // scans every message for a substring which never occurs in the random lower case payloads
+    @Benchmark
+    public void streamTopicFiltered(Blackhole blackhole) {
+        kafkaService.readTopic(TOPIC, SCAN_FILTER, ReadOptions.DEFAULT, (partition, offset, key, value) -> {
+            blackhole.consume(value);
+            return true;
+        });
+    }
+
+    @Benchmark
+    public PartitionMessages readRange() {
+        return kafkaService.readPartition(TOPIC, 0, (long) (messageCount - rangeSize), rangeSize,
+                Integer.MAX_VALUE, MessageFormat.TEXT, MessageFilter.NONE);
+    }
+
+    @Benchmark
+    public PartitionMessages readRangeBinary() {
+        return kafkaService.readPartition(TOPIC, 0, (long) (messageCount - rangeSize), rangeSize,
+                Integer.MAX_VALUE, MessageFormat.BINARY, MessageFilter.NONE);
+    }
+}
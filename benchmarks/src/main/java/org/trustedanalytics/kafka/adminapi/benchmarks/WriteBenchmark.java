@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.trustedanalytics.kafka.adminapi.model.MessageRecord;
+import org.trustedanalytics.kafka.adminapi.model.RecordResult;
+import org.trustedanalytics.kafka.adminapi.services.KafkaService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes of single messages and of batches, each waiting until Kafka acknowledges them.
+ */
+@State(Scope.Benchmark)
+public class WriteBenchmark {
+
+    private static final String TOPIC = "benchmark-writes";
+
+    @Param({"100", "1024", "10240"})
+    private int messageSize;
+
+    @Param({"100"})
+    private int batchSize;
+
+    private EmbeddedKafka kafka;
+    private AdminApi adminApi;
+    private KafkaService kafkaService;
+
+    private byte[] message;
+    private List<MessageRecord> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        kafka = EmbeddedKafka.startKafka();
+        adminApi = new AdminApi(kafka);
+        kafkaService = adminApi.getKafkaService();
+        adminApi.createTopic(TOPIC);
+
+        message = Messages.bytes(messageSize);
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(new MessageRecord(Messages.text(messageSize)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        adminApi.close();
+        kafka.close();
+    }
+
+    @Benchmark
+    public RecordResult writeMessage() {
+        return kafkaService.writeMessage(TOPIC, null, message).join();
+    }
+
+    @Benchmark
+    public List<RecordResult> writeBatch() {
+        return kafkaService.writeMessages(TOPIC, batch).join();
+    }
+}
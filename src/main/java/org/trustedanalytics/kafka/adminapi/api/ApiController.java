@@ -16,27 +16,87 @@
 
 package org.trustedanalytics.kafka.adminapi.api;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
 import kafka.common.InvalidTopicException;
 import kafka.common.Topic;
 import kafka.common.UnknownTopicOrPartitionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.stereotype.Controller;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptorAdapter;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.trustedanalytics.kafka.adminapi.api.streaming.BinaryMessageWriter;
+import org.trustedanalytics.kafka.adminapi.api.streaming.MessagePackMessageWriter;
+import org.trustedanalytics.kafka.adminapi.api.streaming.MessageStreamWriter;
+import org.trustedanalytics.kafka.adminapi.api.streaming.NdjsonMessageWriter;
+import org.trustedanalytics.kafka.adminapi.api.streaming.SseMessageWriter;
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+import org.trustedanalytics.kafka.adminapi.exceptions.ServiceUnavailableException;
+import org.trustedanalytics.kafka.adminapi.kafka.ExportFormat;
+import org.trustedanalytics.kafka.adminapi.kafka.KafkaReader;
+import org.trustedanalytics.kafka.adminapi.kafka.MergeOrder;
+import org.trustedanalytics.kafka.adminapi.kafka.MessageFilter;
+import org.trustedanalytics.kafka.adminapi.kafka.ReadMemory;
+import org.trustedanalytics.kafka.adminapi.kafka.ReadOptions;
+import org.trustedanalytics.kafka.adminapi.kafka.ReadResult;
+import org.trustedanalytics.kafka.adminapi.model.ExportResult;
+import org.trustedanalytics.kafka.adminapi.model.ImportResult;
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+import org.trustedanalytics.kafka.adminapi.model.MessageRecord;
+import org.trustedanalytics.kafka.adminapi.model.PartitionMessages;
+import org.trustedanalytics.kafka.adminapi.model.RecordResult;
 import org.trustedanalytics.kafka.adminapi.model.TopicDescription;
+import org.trustedanalytics.kafka.adminapi.model.TopicDetails;
+import org.trustedanalytics.kafka.adminapi.model.TopicResult;
+import org.trustedanalytics.kafka.adminapi.model.TopicUpdate;
 import org.trustedanalytics.kafka.adminapi.services.KafkaService;
+import org.trustedanalytics.kafka.adminapi.services.admission.AdmissionControl;
+import org.trustedanalytics.kafka.adminapi.services.admission.ConsumerSession;
+import org.trustedanalytics.kafka.adminapi.services.admission.RequestKind;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 @Controller
 @RequestMapping(value = "/api")
@@ -44,22 +104,448 @@ public class ApiController {
 
     private static final Logger LOG = LoggerFactory.getLogger(ApiController.class);
 
+    // flag a topic read which ended early and tell the from parameter which continues it
+    static final String TRUNCATED_HEADER = "X-Truncated";
+    static final String CONTINUATION_HEADER = "X-Continuation";
+
+    private static final String READ_MEMORY_ATTRIBUTE = ApiController.class.getName() + ".readMemory";
+
+    // an import stops sending at its timeout, then waits for the acknowledgements of the messages already sent
+    private static final long IMPORT_ACK_WAIT_MS = 60_000;
+
     @Autowired
     private KafkaService kafkaService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("readExecutor")
+    private Executor readExecutor;
+
+    @Autowired
+    @Qualifier("importExecutor")
+    private Executor importExecutor;
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    @Value("${kafka.reader.executor.timeoutMs}")
+    private long readTimeoutMs;
+
+    @Value("${kafka.import.timeoutMs}")
+    private long importTimeoutMs;
+
+    @Value("${kafka.admin.maxBatchSize}")
+    private int maxAdminBatchSize;
+
+    @Value("${kafka.reader.filter.maxScanMessages}")
+    private long maxScanMessages;
+
+    @Value("${kafka.reader.filter.maxScanBytes}")
+    private long maxScanBytes;
+
     @RequestMapping(method = RequestMethod.GET, value = "/topics")
     @ResponseBody
-    public List<String> listTopics() {
-        LOG.info("listTopics invoked.");
-        return kafkaService.listTopics();
+    @RateLimited(RequestKind.READ)
+    public List<String> listTopics(@RequestParam(defaultValue = "false") boolean refresh) {
+        LOG.info("listTopics invoked, refresh={}.", refresh);
+        return kafkaService.listTopics(refresh);
     }
 
     @RequestMapping(method = RequestMethod.POST, value = "/topics", consumes = "application/json")
     @ResponseStatus(HttpStatus.CREATED)
+    @RateLimited(RequestKind.ADMIN)
     public void createTopic(@RequestBody TopicDescription topicDescription) {
         LOG.info("createTopic invoked: {}", topicDescription);
 
-        if (StringUtils.isEmpty(topicDescription.getTopic())) {
+        validateTopicDescription(topicDescription);
+
+        kafkaService.createTopic(topicDescription);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/topics:batch", consumes = "application/json")
+    @ResponseBody
+    @RateLimited(RequestKind.ADMIN)
+    public DeferredResult<List<TopicResult>> createTopics(@RequestBody List<TopicDescription> topicDescriptions,
+                                                          @RequestParam(defaultValue = "false") boolean ifAbsent) {
+        LOG.info("createTopics invoked: {} topics, ifAbsent={}", topicDescriptions.size(), ifAbsent);
+
+        validateBatchSize(topicDescriptions.size());
+        Set<String> topics = new HashSet<>();
+        for (TopicDescription topicDescription : topicDescriptions) {
+            validateTopicDescription(topicDescription);
+            if (!topics.add(topicDescription.getTopic())) {
+                throw new BadRequestException("Duplicate topic: " + topicDescription.getTopic());
+            }
+        }
+
+        return toDeferredResult(kafkaService.createTopics(topicDescriptions, ifAbsent));
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}/config")
+    @ResponseBody
+    @RateLimited(RequestKind.READ)
+    public Map<String, String> getTopicConfig(@PathVariable String topic) {
+        LOG.info("getTopicConfig invoked: {}", topic);
+
+        validateExistingTopic(topic);
+        return kafkaService.getTopicConfig(topic);
+    }
+
+    @RequestMapping(method = RequestMethod.PATCH, value = "/topics/{topic}", consumes = "application/json")
+    @ResponseBody
+    @RateLimited(RequestKind.ADMIN)
+    public TopicResult updateTopic(@PathVariable String topic, @RequestBody TopicUpdate topicUpdate) {
+        LOG.info("updateTopic invoked: {}, {}", topic, topicUpdate);
+
+        validateExistingTopic(topic);
+        topicUpdate.setTopic(topic);
+        validateTopicUpdate(topicUpdate);
+
+        return TopicResult.of(topic, kafkaService.updateTopic(topicUpdate));
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/topics:update", consumes = "application/json")
+    @ResponseBody
+    @RateLimited(RequestKind.ADMIN)
+    public DeferredResult<List<TopicResult>> updateTopics(@RequestBody List<TopicUpdate> topicUpdates) {
+        LOG.info("updateTopics invoked: {} topics", topicUpdates.size());
+
+        validateBatchSize(topicUpdates.size());
+        Set<String> topics = new HashSet<>();
+        for (TopicUpdate topicUpdate : topicUpdates) {
+            validateTopicUpdate(topicUpdate);
+            if (!topics.add(topicUpdate.getTopic())) {
+                throw new BadRequestException("Duplicate topic: " + topicUpdate.getTopic());
+            }
+        }
+
+        return toDeferredResult(kafkaService.updateTopics(topicUpdates));
+    }
+
+    @RequestMapping(method = RequestMethod.DELETE, value = "/topics/{topic}")
+    @ResponseBody
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    @RateLimited(RequestKind.ADMIN)
+    public TopicResult deleteTopic(@PathVariable String topic) {
+        LOG.info("deleteTopic invoked: {}", topic);
+
+        validateExistingTopic(topic);
+        kafkaService.deleteTopic(topic);
+        return TopicResult.of(topic, TopicResult.Status.MARKED_FOR_DELETION);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/topics:delete", consumes = "application/json")
+    @ResponseBody
+    @RateLimited(RequestKind.ADMIN)
+    public DeferredResult<List<TopicResult>> deleteTopics(@RequestBody List<String> topics) {
+        LOG.info("deleteTopics invoked: {} topics", topics.size());
+
+        validateBatchSize(topics.size());
+        if (new HashSet<>(topics).size() < topics.size()) {
+            throw new BadRequestException("Duplicate topics");
+        }
+        for (String topic : topics) {
+            if (StringUtils.isEmpty(topic)) {
+                throw new InvalidTopicException("Missing mandatory topic name");
+            }
+            Topic.validate(topic);
+        }
+
+        return toDeferredResult(kafkaService.deleteTopics(topics));
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics:describe")
+    @ResponseBody
+    @RateLimited(RequestKind.READ)
+    public List<TopicDetails> describeTopics(@RequestParam(value = "topic", required = false) List<String> topics) {
+        LOG.info("describeTopics invoked: {}", topics);
+
+        if (topics == null) {
+            return kafkaService.describeTopics(Collections.emptyList());
+        }
+        topics.forEach(Topic::validate);
+        return kafkaService.describeTopics(topics);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}/describe")
+    @ResponseBody
+    @RateLimited(RequestKind.READ)
+    public TopicDetails describeTopic(@PathVariable String topic) {
+        LOG.info("describeTopic invoked: {}", topic);
+
+        validateExistingTopic(topic);
+        return kafkaService.describeTopic(topic);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}")
+    @ResponseBody
+    @RateLimited(RequestKind.READ)
+    public DeferredResult<ResponseEntity<List<String>>> readTopic(@PathVariable final String topic,
+                                                                  FilterParams filterParams, ReadParams readParams) {
+        LOG.info("readTopic invoked: {}", topic);
+
+        validateExistingTopic(topic);
+        MessageFilter filter = toFilter(filterParams);
+        ReadOptions options = toOptions(readParams);
+
+        DeferredResult<ResponseEntity<List<String>>> deferredResult = new DeferredResult<>(readTimeoutMs);
+        // the read itself is not interrupted, it ends on its own once the partitions are read
+        deferredResult.onTimeout(() -> deferredResult.setErrorResult(
+                new ServiceUnavailableException("Reading topic " + topic + " timed out")));
+        // the messages keep their read memory until the response is written, or the result comes too late
+        AtomicReference<ReadMemory.Lease> memory = new AtomicReference<>();
+        deferredResult.onCompletion(() -> close(memory.getAndSet(null)));
+        CompletableFuture.supplyAsync(() -> kafkaService.readTopic(topic, filter, options), readExecutor)
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        deferredResult.setErrorResult(unwrap(throwable));
+                        return;
+                    }
+                    memory.set(result.getMemory());
+                    boolean set;
+                    if (result.isTruncated()) {
+                        set = deferredResult.setResult(ResponseEntity.ok()
+                                .header(TRUNCATED_HEADER, "true")
+                                .header(CONTINUATION_HEADER, result.getContinuation())
+                                .body(result.getMessages()));
+                    } else {
+                        set = deferredResult.setResult(ResponseEntity.ok(result.getMessages()));
+                    }
+                    if (!set) {
+                        close(memory.getAndSet(null));
+                    }
+                });
+        return deferredResult;
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}", produces = NdjsonMessageWriter.MEDIA_TYPE)
+    @RateLimited(RequestKind.READ)
+    public ResponseEntity<StreamingResponseBody> streamTopicAsNdjson(@PathVariable final String topic,
+                                                                     @RequestParam(defaultValue = "text") String format,
+                                                                     FilterParams filterParams,
+                                                                     ReadParams readParams) {
+        LOG.info("streamTopicAsNdjson invoked: {}, format={}", topic, format);
+
+        validateExistingTopic(topic);
+        MessageFormat messageFormat = MessageFormat.parse(format);
+        return streamTopic(topic, toFilter(filterParams), toOptions(readParams), NdjsonMessageWriter.MEDIA_TYPE,
+                outputStream -> new NdjsonMessageWriter(outputStream, messageFormat));
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}", produces = SseMessageWriter.MEDIA_TYPE)
+    @RateLimited(RequestKind.READ)
+    public ResponseEntity<StreamingResponseBody> streamTopicAsEvents(@PathVariable final String topic,
+                                                                     @RequestParam(defaultValue = "text") String format,
+                                                                     FilterParams filterParams,
+                                                                     ReadParams readParams) {
+        LOG.info("streamTopicAsEvents invoked: {}, format={}", topic, format);
+
+        validateExistingTopic(topic);
+        MessageFormat messageFormat = MessageFormat.parse(format);
+        return streamTopic(topic, toFilter(filterParams), toOptions(readParams), SseMessageWriter.MEDIA_TYPE,
+                outputStream -> new SseMessageWriter(outputStream, messageFormat));
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}", produces = BinaryMessageWriter.MEDIA_TYPE)
+    @RateLimited(RequestKind.READ)
+    public ResponseEntity<StreamingResponseBody> streamTopicAsBinary(@PathVariable final String topic,
+                                                                     FilterParams filterParams,
+                                                                     ReadParams readParams) {
+        LOG.info("streamTopicAsBinary invoked: {}", topic);
+
+        validateExistingTopic(topic);
+        return streamTopic(topic, toFilter(filterParams), toOptions(readParams), BinaryMessageWriter.MEDIA_TYPE,
+                BinaryMessageWriter::new);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}", produces = MessagePackMessageWriter.MEDIA_TYPE)
+    @RateLimited(RequestKind.READ)
+    public ResponseEntity<StreamingResponseBody> streamTopicAsMessagePack(@PathVariable final String topic,
+                                                                          @RequestParam(defaultValue = "binary") String format,
+                                                                          FilterParams filterParams,
+                                                                          ReadParams readParams) {
+        LOG.info("streamTopicAsMessagePack invoked: {}, format={}", topic, format);
+
+        validateExistingTopic(topic);
+        MessageFormat messageFormat = MessageFormat.parse(format);
+        return streamTopic(topic, toFilter(filterParams), toOptions(readParams), MessagePackMessageWriter.MEDIA_TYPE,
+                outputStream -> new MessagePackMessageWriter(outputStream, messageFormat));
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}/partitions/{partition}")
+    @ResponseBody
+    @RateLimited(RequestKind.READ)
+    public PartitionMessages readPartition(@PathVariable String topic, @PathVariable int partition,
+                                           @RequestParam(required = false) Long offset,
+                                           @RequestParam(defaultValue = "100") int limit,
+                                           @RequestParam(defaultValue = "${kafka.reader.fetchSize}") int maxBytes,
+                                           @RequestParam(defaultValue = "text") String format,
+                                           FilterParams filterParams) {
+        LOG.info("readPartition invoked: {}, {}, offset={}, limit={}, maxBytes={}, format={}",
+                topic, partition, offset, limit, maxBytes, format);
+
+        validateExistingTopic(topic);
+        validateRange(limit, maxBytes);
+        if (offset != null && offset < 0) {
+            throw new BadRequestException("Offset must not be negative");
+        }
+
+        return releasedAfterResponse(kafkaService.readPartition(topic, partition, offset, limit, maxBytes,
+                MessageFormat.parse(format), toFilter(filterParams)));
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}/partitions/{partition}/tail")
+    @ResponseBody
+    @RateLimited(RequestKind.READ)
+    public PartitionMessages readPartitionTail(@PathVariable String topic, @PathVariable int partition,
+                                               @RequestParam(defaultValue = "100") int count,
+                                               @RequestParam(defaultValue = "${kafka.reader.fetchSize}") int maxBytes,
+                                               @RequestParam(defaultValue = "text") String format,
+                                               FilterParams filterParams) {
+        LOG.info("readPartitionTail invoked: {}, {}, count={}, maxBytes={}, format={}",
+                topic, partition, count, maxBytes, format);
+
+        validateExistingTopic(topic);
+        validateRange(count, maxBytes);
+
+        return releasedAfterResponse(kafkaService.readPartitionTail(topic, partition, count, maxBytes,
+                MessageFormat.parse(format), toFilter(filterParams)));
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/topics/{topic}",
+            consumes = {MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    @RateLimited(RequestKind.WRITE)
+    public DeferredResult<ResponseEntity<RecordResult>> writeMessage(@PathVariable String topic,
+                                                                     @RequestParam(required = false) String key,
+                                                                     @RequestBody byte[] message) {
+        LOG.info("writeMessage invoked: {}, key={}, {} bytes", topic, key, message.length);
+
+        byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+        DeferredResult<ResponseEntity<RecordResult>> deferredResult = new DeferredResult<>();
+        kafkaService.writeMessage(topic, keyBytes, message)
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        deferredResult.setErrorResult(unwrap(throwable));
+                    } else {
+                        // a spooled message is not in Kafka yet
+                        HttpStatus status = Boolean.TRUE.equals(result.getSpooled()) ? HttpStatus.ACCEPTED : HttpStatus.CREATED;
+                        deferredResult.setResult(new ResponseEntity<>(result, status));
+                    }
+                });
+        return deferredResult;
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/topics/{topic}/messages",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, NdjsonMessageWriter.MEDIA_TYPE})
+    @ResponseBody
+    @RateLimited(RequestKind.WRITE)
+    public DeferredResult<List<RecordResult>> writeMessages(@PathVariable String topic, InputStream body) {
+        LOG.info("writeMessages invoked: {}", topic);
+
+        validateExistingTopic(topic);
+
+        List<MessageRecord> records;
+        try {
+            // a JSON array and newline delimited JSON records are both read as a sequence of values
+            records = objectMapper.readerFor(MessageRecord.class).<MessageRecord>readValues(body).readAll();
+        } catch (IOException | RuntimeJsonMappingException ex) {
+            throw new HttpMessageNotReadableException("Could not read messages: " + ex.getMessage(), ex);
+        }
+        LOG.debug("writeMessages received {} messages", records.size());
+
+        DeferredResult<List<RecordResult>> deferredResult = new DeferredResult<>();
+        kafkaService.writeMessages(topic, records)
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        deferredResult.setErrorResult(unwrap(throwable));
+                    } else {
+                        deferredResult.setResult(result);
+                    }
+                });
+        return deferredResult;
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}/export")
+    @RateLimited(RequestKind.READ)
+    public ResponseEntity<StreamingResponseBody> exportTopic(@PathVariable String topic,
+                                                             @RequestParam(required = false) Integer partition,
+                                                             @RequestParam(required = false) Long fromOffset,
+                                                             @RequestParam(required = false) Long toOffset,
+                                                             @RequestParam(defaultValue = "raw") String format) {
+        LOG.info("exportTopic invoked: {}, partition={}, fromOffset={}, toOffset={}, format={}",
+                topic, partition, fromOffset, toOffset, format);
+
+        validateExistingTopic(topic);
+        validateOffsets(fromOffset, toOffset);
+        ExportFormat exportFormat = ExportFormat.parse(format);
+
+        ConsumerSession session = openStreamSession();
+        StreamingResponseBody body = outputStream -> {
+            try (ConsumerSession exportSession = session) {
+                kafkaService.exportMessages(topic, partition, fromOffset, toOffset, exportFormat,
+                        Channels.newChannel(outputStream));
+            } catch (UncheckedIOException ex) {
+                LOG.debug("Client stopped receiving export of topic {}", topic, ex);
+                throw ex.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(exportFormat.getMediaType())).body(body);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}/export", params = "file")
+    @ResponseBody
+    @RateLimited(RequestKind.READ)
+    public ExportResult exportTopicToFile(@PathVariable String topic,
+                                          @RequestParam(required = false) Integer partition,
+                                          @RequestParam(required = false) Long fromOffset,
+                                          @RequestParam(required = false) Long toOffset,
+                                          @RequestParam(defaultValue = "raw") String format,
+                                          @RequestParam String file) {
+        LOG.info("exportTopicToFile invoked: {}, partition={}, fromOffset={}, toOffset={}, format={}, file={}",
+                topic, partition, fromOffset, toOffset, format, file);
+
+        validateExistingTopic(topic);
+        validateOffsets(fromOffset, toOffset);
+        return kafkaService.exportMessagesToFile(topic, partition, fromOffset, toOffset, ExportFormat.parse(format),
+                file);
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/topics/{topic}/import",
+            consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, MediaType.TEXT_PLAIN_VALUE})
+    @ResponseBody
+    @RateLimited(RequestKind.WRITE)
+    public DeferredResult<ImportResult> importTopic(@PathVariable String topic,
+                                                    @RequestParam(defaultValue = "false") boolean keepPartitions,
+                                                    @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+                                                    InputStream body) {
+        LOG.info("importTopic invoked: {}, contentType={}, keepPartitions={}", topic, contentType, keepPartitions);
+
+        validateExistingTopic(topic);
+        // the same layout as an export of the content type
+        ExportFormat format = MediaType.TEXT_PLAIN.includes(contentType) ? ExportFormat.LINES : ExportFormat.RAW;
+        ReadableByteChannel channel = Channels.newChannel(body);
+        return importAsync(topic, () -> kafkaService.importMessages(topic, format, keepPartitions, channel));
+    }
+
+    @RequestMapping(method = RequestMethod.POST, value = "/topics/{topic}/import", params = "file")
+    @ResponseBody
+    @RateLimited(RequestKind.WRITE)
+    public DeferredResult<ImportResult> importTopicFromFile(@PathVariable String topic,
+                                                            @RequestParam(defaultValue = "false") boolean keepPartitions,
+                                                            @RequestParam(defaultValue = "raw") String format,
+                                                            @RequestParam String file) {
+        LOG.info("importTopicFromFile invoked: {}, format={}, keepPartitions={}, file={}",
+                topic, format, keepPartitions, file);
+
+        validateExistingTopic(topic);
+        ExportFormat exportFormat = ExportFormat.parse(format);
+        return importAsync(topic, () -> kafkaService.importMessagesFromFile(topic, exportFormat, keepPartitions, file));
+    }
+
+    private static void validateTopicDescription(TopicDescription topicDescription) {
+        if (topicDescription == null || StringUtils.isEmpty(topicDescription.getTopic())) {
             throw new InvalidTopicException("Missing mandatory topic name");
         }
         Topic.validate(topicDescription.getTopic());
@@ -67,15 +553,32 @@ public class ApiController {
         if (topicDescription.getPartitions() <= 0) {
             throw new InvalidTopicException("Number of partitions must be larger than 0");
         }
+        if (topicDescription.getReplicationFactor() <= 0) {
+            throw new InvalidTopicException("Replication factor must be larger than 0");
+        }
+    }
 
-        kafkaService.createTopic(topicDescription);
+    private static void validateTopicUpdate(TopicUpdate topicUpdate) {
+        if (topicUpdate == null || StringUtils.isEmpty(topicUpdate.getTopic())) {
+            throw new InvalidTopicException("Missing mandatory topic name");
+        }
+        Topic.validate(topicUpdate.getTopic());
+
+        if (topicUpdate.getPartitions() == null && topicUpdate.getConfig().isEmpty()) {
+            throw new BadRequestException("Nothing to update in topic " + topicUpdate.getTopic());
+        }
+        if (topicUpdate.getPartitions() != null && topicUpdate.getPartitions() <= 0) {
+            throw new InvalidTopicException("Number of partitions must be larger than 0");
+        }
     }
 
-    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}")
-    @ResponseBody
-    public DeferredResult<List<String>> readTopic(@PathVariable final String topic) {
-        LOG.info("readTopic invoked: {}", topic);
+    private void validateBatchSize(int topics) {
+        if (topics == 0 || topics > maxAdminBatchSize) {
+            throw new BadRequestException("Number of topics must be between 1 and " + maxAdminBatchSize);
+        }
+    }
 
+    private void validateExistingTopic(String topic) {
         if (StringUtils.isEmpty(topic)) {
             throw new InvalidTopicException("Missing mandatory topic name");
         }
@@ -83,22 +586,144 @@ public class ApiController {
         if (!kafkaService.topicExists(topic)) {
             throw new UnknownTopicOrPartitionException("Topic does not exist: " + topic);
         }
+    }
+
+    private void validateRange(int limit, int maxBytes) {
+        if (limit <= 0 || limit > KafkaReader.MAX_MESSAGE_LIST_CAPACITY) {
+            throw new BadRequestException("Limit must be between 1 and " + KafkaReader.MAX_MESSAGE_LIST_CAPACITY);
+        }
+        if (maxBytes <= 0) {
+            throw new BadRequestException("Max bytes must be larger than 0");
+        }
+    }
+
+    private static void validateOffsets(Long fromOffset, Long toOffset) {
+        if ((fromOffset != null && fromOffset < 0) || (toOffset != null && toOffset < 0)) {
+            throw new BadRequestException("Offsets must not be negative");
+        }
+        if (fromOffset != null && toOffset != null && toOffset < fromOffset) {
+            throw new BadRequestException("The to offset must not be lower than the from offset");
+        }
+    }
 
-        DeferredResult<List<String>> deferredResult = new DeferredResult<>();
-        CompletableFuture.supplyAsync(() -> kafkaService.readTopic(topic))
-                .whenCompleteAsync((result, throwable) -> {
-                    deferredResult.setResult(result);
-                    deferredResult.setErrorResult(throwable);
+    private MessageFilter toFilter(FilterParams params) {
+        long scanMessages = params.getScanLimit() == null ? maxScanMessages : params.getScanLimit();
+        long scanBytes = params.getScanMaxBytes() == null ? maxScanBytes : params.getScanMaxBytes();
+        if (scanMessages > maxScanMessages || scanBytes > maxScanBytes) {
+            throw new BadRequestException("Scan limits must not exceed " + maxScanMessages + " messages and "
+                    + maxScanBytes + " bytes");
+        }
+        return MessageFilter.of(params.getContains(), params.getRegex(), params.getField(), params.getValue(),
+                params.getFields(), scanMessages, scanBytes);
+    }
+
+    private static ReadOptions toOptions(ReadParams params) {
+        MergeOrder order = params.getOrder() == null ? MergeOrder.PARTITION : MergeOrder.parse(params.getOrder());
+        return ReadOptions.of(order, params.getMaxMessages(), params.getMaxBytes(), params.getFrom());
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        // exception handlers are matched against the exception thrown by the read, not its async wrapper
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
+    /**
+     * Takes a consumer session for a streamed response before it is committed, so that a rejection can still be
+     * a 429 rather than a cut off stream. The body closes the session once it is done, the session is closed as well
+     * when the async request completes without running the body, e.g. when it timed out before the body started.
+     */
+    private ConsumerSession openStreamSession() {
+        ConsumerSession session = admissionControl.openConsumerSession();
+        HttpServletRequest request =
+                ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes()).getRequest();
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(ConsumerSession.class.getName(),
+                new CallableProcessingInterceptorAdapter() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                        session.close();
+                    }
+                });
+        return session;
+    }
+
+    /**
+     * Keeps the read memory of the messages until the response is written, when the request completes.
+     */
+    private static PartitionMessages releasedAfterResponse(PartitionMessages messages) {
+        RequestContextHolder.currentRequestAttributes().registerDestructionCallback(READ_MEMORY_ATTRIBUTE,
+                () -> close(messages.getMemory()), RequestAttributes.SCOPE_REQUEST);
+        return messages;
+    }
+
+    private static void close(ReadMemory.Lease memory) {
+        if (memory != null) {
+            memory.close();
+        }
+    }
+
+    /**
+     * Runs an import on the import executor. The import stops sending at its own timeout and returns where it
+     * stopped, the request only times out if the acknowledgements of the messages sent before take too long.
+     */
+    private DeferredResult<ImportResult> importAsync(String topic, Supplier<ImportResult> importOperation) {
+        DeferredResult<ImportResult> deferredResult = new DeferredResult<>(importTimeoutMs + IMPORT_ACK_WAIT_MS);
+        deferredResult.onTimeout(() -> deferredResult.setErrorResult(
+                new ServiceUnavailableException("Importing topic " + topic + " timed out")));
+        CompletableFuture.supplyAsync(importOperation, importExecutor)
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        deferredResult.setErrorResult(unwrap(throwable));
+                    } else {
+                        deferredResult.setResult(result);
+                    }
                 });
         return deferredResult;
     }
 
-    @RequestMapping(method = RequestMethod.POST, value = "/topics/{topic}", consumes = "text/plain")
-    @ResponseStatus(HttpStatus.CREATED)
-    public void writeMessage(@PathVariable String topic, @RequestBody String message) {
-        LOG.info("writeMessage invoked: {}, {}", topic, message);
+    private static <T> DeferredResult<T> toDeferredResult(CompletableFuture<T> future) {
+        DeferredResult<T> deferredResult = new DeferredResult<>();
+        future.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                deferredResult.setErrorResult(unwrap(throwable));
+            } else {
+                deferredResult.setResult(result);
+            }
+        });
+        return deferredResult;
+    }
 
-        kafkaService.writeMessage(topic, message);
+    private ResponseEntity<StreamingResponseBody> streamTopic(String topic, MessageFilter filter, ReadOptions options,
+                                                              String mediaType, WriterFactory writerFactory) {
+        ConsumerSession session = openStreamSession();
+        StreamingResponseBody body = outputStream -> {
+            try (ConsumerSession streamSession = session) {
+                MessageStreamWriter writer = writerFactory.create(outputStream);
+                try {
+                    ReadResult result = kafkaService.readTopic(topic, filter, options, writer);
+                    if (result.isTruncated()) {
+                        writer.writeTruncated(result.getContinuation());
+                    }
+                    writer.writeEnd();
+                } catch (UncheckedIOException ex) {
+                    LOG.debug("Client stopped receiving topic {}", topic, ex);
+                    throw ex.getCause();
+                } catch (RuntimeException ex) {
+                    // the response is already committed, so the error can only be reported inside the stream
+                    LOG.error("Streaming topic {} failed", topic, ex);
+                    writer.writeError(ex.getMessage());
+                } finally {
+                    writer.close();
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(mediaType)).body(body);
     }
 
+    @FunctionalInterface
+    private interface WriterFactory {
+        MessageStreamWriter create(OutputStream outputStream) throws IOException;
+    }
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api;
+
+import com.yammer.metrics.core.MetricsRegistry;
+import org.springframework.http.HttpHeaders;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the body on its way to the container.
+ * Whether to compress is decided when the body is first written, once the headers are known:
+ * bodies already encoded and bodies with a known length below the minimum size are passed through.
+ */
+class CompressingResponse extends HttpServletResponseWrapper {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String encoding;
+    private final int level;
+    private final int minSize;
+    private final MetricsRegistry metrics;
+
+    private long contentLength = -1;
+    private CompressingOutputStream compressingStream;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    CompressingResponse(HttpServletResponse response, String encoding, int level, int minSize,
+                        MetricsRegistry metrics) {
+        super(response);
+        this.encoding = encoding;
+        this.level = level;
+        this.minSize = minSize;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        return openStream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (outputStream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called");
+            }
+            writer = new PrintWriter(new OutputStreamWriter(openStream(), getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    private ServletOutputStream openStream() throws IOException {
+        if (outputStream == null) {
+            if (shouldCompress()) {
+                compressingStream = startCompressing();
+                outputStream = compressingStream;
+            } else {
+                outputStream = passThrough();
+            }
+        }
+        return outputStream;
+    }
+
+    private boolean shouldCompress() {
+        if (getHeader(HttpHeaders.CONTENT_ENCODING) != null) {
+            return false;
+        }
+        return contentLength < 0 || contentLength >= minSize;
+    }
+
+    private CompressingOutputStream startCompressing() throws IOException {
+        setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+        ServletOutputStream target = super.getOutputStream();
+        // sync flush, so that flushing the response sends everything compressed so far
+        if (CompressionFilter.GZIP.equals(encoding)) {
+            GzipStream gzip = new GzipStream(target, level);
+            return new CompressingOutputStream(target, gzip, gzip.deflater());
+        }
+        Deflater deflater = new Deflater(level);
+        return new CompressingOutputStream(target, new DeflaterOutputStream(target, deflater, BUFFER_SIZE, true),
+                deflater);
+    }
+
+    private ServletOutputStream passThrough() throws IOException {
+        if (contentLength >= 0) {
+            super.setContentLengthLong(contentLength);
+        }
+        return super.getOutputStream();
+    }
+
+    /**
+     * Writes whatever the compressor still holds and the trailer of the compressed stream.
+     */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (compressingStream != null) {
+            compressingStream.finish();
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (compressingStream != null) {
+            compressingStream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void setContentLength(int length) {
+        setContentLengthLong(length);
+    }
+
+    @Override
+    public void setContentLengthLong(long length) {
+        // the length of the compressed body is not known up front, it is only passed on when not compressing
+        if (outputStream == null) {
+            contentLength = length;
+        } else if (compressingStream == null) {
+            super.setContentLengthLong(length);
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    private final class CompressingOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream target;
+        private final DeflaterOutputStream compressor;
+        private final Deflater deflater;
+        private boolean finished;
+
+        private CompressingOutputStream(ServletOutputStream target, DeflaterOutputStream compressor,
+                                        Deflater deflater) {
+            this.target = target;
+            this.compressor = compressor;
+            this.deflater = deflater;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureOpen();
+            compressor.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ensureOpen();
+            compressor.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!finished) {
+                compressor.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            target.close();
+        }
+
+        private void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            try {
+                compressor.finish();
+                metrics.newMeter(CompressionFilter.class, "uncompressedBytes", encoding, "bytes", TimeUnit.SECONDS)
+                        .mark(deflater.getBytesRead());
+                metrics.newMeter(CompressionFilter.class, "compressedBytes", encoding, "bytes", TimeUnit.SECONDS)
+                        .mark(deflater.getBytesWritten());
+                metrics.newMeter(CompressionFilter.class, "responses", encoding, "responses", TimeUnit.SECONDS)
+                        .mark();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private void ensureOpen() throws IOException {
+            if (finished) {
+                throw new IOException("The compressed response is already finished");
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return target.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            target.setWriteListener(writeListener);
+        }
+    }
+
+    /**
+     * Exposes the deflater of the gzip stream, which is the only way to set its level and read its counters.
+     */
+    private static final class GzipStream extends GZIPOutputStream {
+
+        private GzipStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE, true);
+            def.setLevel(level);
+        }
+
+        private Deflater deflater() {
+            return def;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api;
+
+import com.yammer.metrics.core.MetricsRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Compresses GET responses with gzip or deflate, whichever the client prefers in Accept-Encoding.
+ * Bodies are compressed while they are written, so streamed topics are never buffered as a whole,
+ * and every flush of the body (e.g. of an SSE event) is passed on to the client as it is.
+ *
+ * Async requests pass this filter twice, the compressing response lives in a request attribute
+ * in between and the compressed stream is finished when the async dispatch completes.
+ */
+public class CompressionFilter extends OncePerRequestFilter {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private static final String RESPONSE_ATTRIBUTE = CompressionFilter.class.getName() + ".RESPONSE";
+
+    private final int level;
+    private final int minResponseSize;
+    private final MetricsRegistry metrics;
+
+    public CompressionFilter(int level, int minResponseSize, MetricsRegistry metrics) {
+        this.level = level;
+        this.minResponseSize = minResponseSize;
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        CompressingResponse compressingResponse = (CompressingResponse) request.getAttribute(RESPONSE_ATTRIBUTE);
+        if (compressingResponse == null && !isAsyncDispatch(request)) {
+            compressingResponse = startCompressing(request, response);
+        }
+        if (compressingResponse == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        try {
+            filterChain.doFilter(request, compressingResponse);
+        } finally {
+            if (!request.isAsyncStarted()) {
+                request.removeAttribute(RESPONSE_ATTRIBUTE);
+                compressingResponse.finish();
+            }
+        }
+    }
+
+    private CompressingResponse startCompressing(HttpServletRequest request, HttpServletResponse response) {
+        // WebSocket handshakes are GET requests as well, but they are not followed by an HTTP body
+        if (!"GET".equals(request.getMethod()) || request.getHeader(HttpHeaders.UPGRADE) != null) {
+            return null;
+        }
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        String encoding = negotiateEncoding(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (encoding == null) {
+            return null;
+        }
+        CompressingResponse compressingResponse =
+                new CompressingResponse(response, encoding, level, minResponseSize, metrics);
+        request.setAttribute(RESPONSE_ATTRIBUTE, compressingResponse);
+        return compressingResponse;
+    }
+
+    /**
+     * @return gzip or deflate, the one with the higher quality value, preferring gzip on a tie;
+     * null when neither is acceptable
+     */
+    static String negotiateEncoding(String acceptEncoding) {
+        if (!StringUtils.hasText(acceptEncoding)) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String coding : StringUtils.tokenizeToStringArray(acceptEncoding, ",")) {
+            String[] parts = StringUtils.tokenizeToStringArray(coding, ";");
+            if (parts.length == 0) {
+                continue;
+            }
+            double quality = parseQuality(parts);
+            String name = parts[0].toLowerCase();
+            if (GZIP.equals(name) || "x-gzip".equals(name)) {
+                gzip = quality;
+            } else if (DEFLATE.equals(name)) {
+                deflate = quality;
+            } else if ("*".equals(name)) {
+                any = quality;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    private static double parseQuality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parts[i].substring(2));
+                } catch (NumberFormatException ex) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
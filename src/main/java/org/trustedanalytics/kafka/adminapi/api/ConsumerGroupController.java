@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.trustedanalytics.kafka.adminapi.exceptions.NotFoundException;
+import org.trustedanalytics.kafka.adminapi.model.ConsumerGroupLag;
+import org.trustedanalytics.kafka.adminapi.services.ConsumerGroupMonitor;
+import org.trustedanalytics.kafka.adminapi.services.admission.RequestKind;
+
+import java.util.List;
+
+@Controller
+@RequestMapping(value = "/api")
+public class ConsumerGroupController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConsumerGroupController.class);
+
+    @Autowired
+    private ConsumerGroupMonitor consumerGroupMonitor;
+
+    @RequestMapping(method = RequestMethod.GET, value = "/consumer-groups")
+    @ResponseBody
+    @RateLimited(RequestKind.READ)
+    public List<String> listGroups() {
+        LOG.info("listGroups invoked");
+        return consumerGroupMonitor.listGroups();
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/consumer-groups/{group}/lag")
+    @ResponseBody
+    @RateLimited(RequestKind.READ)
+    public ConsumerGroupLag getLag(@PathVariable String group) {
+        LOG.info("getLag invoked: {}", group);
+
+        ConsumerGroupLag lag = consumerGroupMonitor.getLag(group);
+        if (lag == null) {
+            throw new NotFoundException("Consumer group does not exist: " + group);
+        }
+        return lag;
+    }
+}
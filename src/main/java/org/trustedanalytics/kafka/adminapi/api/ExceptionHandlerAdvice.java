@@ -16,11 +16,15 @@
 
 package org.trustedanalytics.kafka.adminapi.api;
 
+import kafka.admin.AdminOperationException;
 import kafka.common.InvalidTopicException;
+import kafka.common.OffsetOutOfRangeException;
 import kafka.common.TopicExistsException;
 import kafka.common.UnknownTopicOrPartitionException;
+import org.apache.kafka.common.errors.RetriableException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageConversionException;
@@ -28,6 +32,7 @@ import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.trustedanalytics.kafka.adminapi.exceptions.TooManyRequestsException;
 
 import static org.springframework.core.annotation.AnnotatedElementUtils.findMergedAnnotation;
 
@@ -52,6 +57,22 @@ public class ExceptionHandlerAdvice {
         return "Request malformed";
     }
 
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ResponseBody
+    public String handleBadRequest(OffsetOutOfRangeException ex) {
+        LOG.error("Offset out of range", ex);
+        return ex.getMessage();
+    }
+
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ResponseBody
+    public String handleBadRequest(AdminOperationException ex) {
+        LOG.error("Topic operation rejected", ex);
+        return ex.getMessage();
+    }
+
     @ExceptionHandler
     @ResponseStatus(HttpStatus.CONFLICT)
     @ResponseBody
@@ -68,6 +89,22 @@ public class ExceptionHandlerAdvice {
         return ex.getMessage();
     }
 
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    @ResponseBody
+    public String handleRetriable(RetriableException ex) {
+        LOG.error("Kafka is temporarily unavailable", ex);
+        return ex.getMessage();
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<String> handleTooManyRequests(TooManyRequestsException ex) {
+        LOG.warn("Request rejected: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(ex.getMessage());
+    }
+
     /**
      * This is a generic exception handler.
      * It tries to resolve a response status based on the ResponseStatus annotation
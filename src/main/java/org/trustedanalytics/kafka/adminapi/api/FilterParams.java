@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trustedanalytics.kafka.adminapi.api;
+
+import java.util.List;
+
+/**
+ * Query parameters which filter and project the messages of a read, see
+ * {@link org.trustedanalytics.kafka.adminapi.kafka.MessageFilter}.
+ */
+public class FilterParams {
+
+    private String contains;
+
+    private String regex;
+
+    private String field;
+
+    private String value;
+
+    private List<String> fields;
+
+    private Long scanLimit;
+
+    private Long scanMaxBytes;
+
+    public String getContains() {
+        return contains;
+    }
+
+    public void setContains(String contains) {
+        this.contains = contains;
+    }
+
+    public String getRegex() {
+        return regex;
+    }
+
+    public void setRegex(String regex) {
+        this.regex = regex;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public void setField(String field) {
+        this.field = field;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    public void setFields(List<String> fields) {
+        this.fields = fields;
+    }
+
+    public Long getScanLimit() {
+        return scanLimit;
+    }
+
+    public void setScanLimit(Long scanLimit) {
+        this.scanLimit = scanLimit;
+    }
+
+    public Long getScanMaxBytes() {
+        return scanMaxBytes;
+    }
+
+    public void setScanMaxBytes(Long scanMaxBytes) {
+        this.scanMaxBytes = scanMaxBytes;
+    }
+}
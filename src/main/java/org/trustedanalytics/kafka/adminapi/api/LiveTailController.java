@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api;
+
+import kafka.common.Topic;
+import kafka.common.UnknownTopicOrPartitionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+import org.trustedanalytics.kafka.adminapi.exceptions.ServiceUnavailableException;
+import org.trustedanalytics.kafka.adminapi.kafka.KafkaReader;
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+import org.trustedanalytics.kafka.adminapi.model.TailMessages;
+import org.trustedanalytics.kafka.adminapi.services.KafkaService;
+import org.trustedanalytics.kafka.adminapi.services.admission.RequestKind;
+import org.trustedanalytics.kafka.adminapi.services.tail.TopicTailer;
+
+/**
+ * Long-poll live tail of a topic. The same tail is available over a WebSocket, see {@link LiveTailWebSocketHandler}.
+ */
+@Controller
+@RequestMapping(value = "/api")
+public class LiveTailController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LiveTailController.class);
+
+    @Autowired
+    private KafkaService kafkaService;
+
+    @Autowired
+    private TopicTailer topicTailer;
+
+    @Value("${kafka.tail.maxPollTimeoutMs}")
+    private long maxPollTimeoutMs;
+
+    @Value("${kafka.reader.executor.timeoutMs}")
+    private long readTimeoutMs;
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}/live")
+    @ResponseBody
+    @RateLimited(RequestKind.READ)
+    public DeferredResult<TailMessages> pollTopic(@PathVariable String topic,
+                                                  @RequestParam(required = false) String token,
+                                                  @RequestParam(defaultValue = "100") int limit,
+                                                  @RequestParam(defaultValue = "${kafka.tail.pollTimeoutMs}") long timeoutMs,
+                                                  @RequestParam(defaultValue = "text") String format) {
+        LOG.info("pollTopic invoked: {}, token={}, limit={}, timeoutMs={}, format={}",
+                topic, token, limit, timeoutMs, format);
+
+        Topic.validate(topic);
+        if (!kafkaService.topicExists(topic)) {
+            throw new UnknownTopicOrPartitionException("Topic does not exist: " + topic);
+        }
+        if (limit <= 0 || limit > KafkaReader.MAX_MESSAGE_LIST_CAPACITY) {
+            throw new BadRequestException("Limit must be between 1 and " + KafkaReader.MAX_MESSAGE_LIST_CAPACITY);
+        }
+        if (timeoutMs < 0 || timeoutMs > maxPollTimeoutMs) {
+            throw new BadRequestException("Timeout must be between 0 and " + maxPollTimeoutMs);
+        }
+        MessageFormat messageFormat = MessageFormat.parse(format);
+
+        // the tail answers by itself when the timeout passes, this one only guards against a stuck tail
+        DeferredResult<TailMessages> deferredResult = new DeferredResult<>(timeoutMs + readTimeoutMs);
+        deferredResult.onTimeout(() -> deferredResult.setErrorResult(
+                new ServiceUnavailableException("Live tail of topic " + topic + " timed out")));
+        topicTailer.poll(topic, token, limit, timeoutMs, messageFormat)
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        deferredResult.setErrorResult(throwable);
+                    } else {
+                        deferredResult.setResult(result);
+                    }
+                });
+        return deferredResult;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kafka.common.InvalidTopicException;
+import kafka.common.Topic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+import org.trustedanalytics.kafka.adminapi.exceptions.TooManyRequestsException;
+import org.trustedanalytics.kafka.adminapi.kafka.KafkaReader;
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+import org.trustedanalytics.kafka.adminapi.services.KafkaService;
+import org.trustedanalytics.kafka.adminapi.services.admission.AdmissionControl;
+import org.trustedanalytics.kafka.adminapi.services.admission.RequestKind;
+import org.trustedanalytics.kafka.adminapi.services.tail.SlowConsumerPolicy;
+import org.trustedanalytics.kafka.adminapi.services.tail.TailSubscription;
+import org.trustedanalytics.kafka.adminapi.services.tail.TailToken;
+import org.trustedanalytics.kafka.adminapi.services.tail.TopicTailer;
+
+import javax.websocket.Session;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * WebSocket live tail of a topic, at /api/topics/{topic}/live/ws.
+ * Every text frame sent to the client is a {@link org.trustedanalytics.kafka.adminapi.model.TailMessages} batch.
+ * The query parameters are token, limit (messages per frame), format and policy (what happens to a slow client).
+ */
+@Component
+public class LiveTailWebSocketHandler extends TextWebSocketHandler implements HandshakeInterceptor {
+
+    public static final String PATH = "/api/topics/*/live/ws";
+
+    private static final Logger LOG = LoggerFactory.getLogger(LiveTailWebSocketHandler.class);
+
+    private static final String TOPIC = "topic";
+    private static final String TOKEN = "token";
+    private static final String LIMIT = "limit";
+    private static final String FORMAT = "format";
+    private static final String POLICY = "policy";
+    private static final String SUBSCRIPTION = "subscription";
+
+    // how long Tomcat lets a send block on a client which does not read
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    @Autowired
+    private KafkaService kafkaService;
+
+    @Autowired
+    private TopicTailer topicTailer;
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("tailSenderExecutor")
+    private Executor tailSenderExecutor;
+
+    @Value("${kafka.tail.slowConsumerPolicy}")
+    private String defaultPolicy;
+
+    @Value("${kafka.tail.sendTimeoutMs}")
+    private long sendTimeoutMs;
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        // /api/topics/{topic}/live/ws
+        String[] path = request.getURI().getPath().split("/");
+        String topic = path[path.length - 3];
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams();
+        LOG.info("live tail WebSocket requested: {}, {}", topic, params);
+
+        try {
+            admissionControl.admit(RequestKind.READ, clientOf(request), topic);
+        } catch (TooManyRequestsException ex) {
+            LOG.debug("live tail WebSocket rejected", ex);
+            response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+            return false;
+        }
+
+        try {
+            Topic.validate(topic);
+            if (!kafkaService.topicExists(topic)) {
+                response.setStatusCode(HttpStatus.NOT_FOUND);
+                return false;
+            }
+            String token = params.getFirst(TOKEN);
+            TailToken.decode(token);
+            int limit = params.containsKey(LIMIT) ? Integer.parseInt(params.getFirst(LIMIT)) : 100;
+            if (limit <= 0 || limit > KafkaReader.MAX_MESSAGE_LIST_CAPACITY) {
+                throw new BadRequestException("Limit must be between 1 and " + KafkaReader.MAX_MESSAGE_LIST_CAPACITY);
+            }
+            attributes.put(TOPIC, topic);
+            if (token != null) {
+                attributes.put(TOKEN, token);
+            }
+            attributes.put(LIMIT, limit);
+            attributes.put(FORMAT, MessageFormat.parse(params.containsKey(FORMAT) ? params.getFirst(FORMAT) : "text"));
+            attributes.put(POLICY, SlowConsumerPolicy.parse(
+                    params.containsKey(POLICY) ? params.getFirst(POLICY) : defaultPolicy));
+            return true;
+        } catch (InvalidTopicException | BadRequestException | NumberFormatException ex) {
+            LOG.debug("live tail WebSocket rejected", ex);
+            response.setStatusCode(HttpStatus.BAD_REQUEST);
+            return false;
+        }
+    }
+
+    private String clientOf(ServerHttpRequest request) {
+        return admissionControl.clientOf(request.getRemoteAddress().getAddress().getHostAddress(),
+                request.getHeaders().getFirst(admissionControl.getClientHeader()));
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+        // nothing to do, the subscription starts once the connection is established
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws IOException {
+        // a stalled client would otherwise hold a sender thread until the connection drops
+        if (session instanceof NativeWebSocketSession) {
+            Session nativeSession = ((NativeWebSocketSession) session).getNativeSession(Session.class);
+            if (nativeSession != null) {
+                nativeSession.getUserProperties().put(BLOCKING_SEND_TIMEOUT, sendTimeoutMs);
+            }
+        }
+
+        Map<String, Object> attributes = session.getAttributes();
+        Sender sender = new Sender(session, (Integer) attributes.get(LIMIT), (MessageFormat) attributes.get(FORMAT));
+        try {
+            TailSubscription subscription = topicTailer.subscribe((String) attributes.get(TOPIC),
+                    (String) attributes.get(TOKEN), (SlowConsumerPolicy) attributes.get(POLICY), sender);
+            attributes.put(SUBSCRIPTION, subscription);
+        } catch (TooManyRequestsException ex) {
+            session.close(CloseStatus.SERVICE_OVERLOAD.withReason(ex.getMessage()));
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        LOG.debug("live tail WebSocket closed: {}", status);
+        TailSubscription subscription = (TailSubscription) session.getAttributes().get(SUBSCRIPTION);
+        if (subscription != null) {
+            subscription.close();
+        }
+    }
+
+    /**
+     * Sends the buffered messages of a subscriber on the sender pool, with at most one send in progress at a time.
+     */
+    private class Sender implements TailSubscription.Listener {
+
+        private final WebSocketSession session;
+        private final int limit;
+        private final MessageFormat format;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Sender(WebSocketSession session, int limit, MessageFormat format) {
+            this.session = session;
+            this.limit = limit;
+            this.format = format;
+        }
+
+        @Override
+        public void onMessages(TailSubscription subscription) {
+            if (scheduled.compareAndSet(false, true)) {
+                tailSenderExecutor.execute(() -> send(subscription));
+            }
+        }
+
+        @Override
+        public void onClosed(TailSubscription subscription, String reason) {
+            try {
+                session.close(CloseStatus.POLICY_VIOLATION.withReason(reason));
+            } catch (IOException ex) {
+                LOG.debug("Closing live tail WebSocket failed", ex);
+            }
+        }
+
+        private void send(TailSubscription subscription) {
+            try {
+                while (subscription.hasMessages() && session.isOpen()) {
+                    byte[] batch = objectMapper.writeValueAsBytes(subscription.drain(limit, format));
+                    session.sendMessage(new TextMessage(batch));
+                }
+            } catch (IOException ex) {
+                LOG.debug("Client stopped receiving live tail of topic {}", subscription.getTopic(), ex);
+                subscription.close();
+            } finally {
+                scheduled.set(false);
+            }
+            // messages which arrived after the last check but before the flag was cleared
+            if (subscription.hasMessages() && session.isOpen()) {
+                onMessages(subscription);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.msgpack.jackson.dataformat.MessagePackFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.trustedanalytics.kafka.adminapi.api.streaming.MessagePackMessageWriter;
+
+/**
+ * Writes and reads the same objects as the JSON converter, encoded as MessagePack.
+ * It is picked when a client sends "Accept: application/x-msgpack", for requests not streamed by
+ * {@link MessagePackMessageWriter}, e.g. partition pages and topic descriptions.
+ */
+public class MessagePackHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(MessagePackMessageWriter.MEDIA_TYPE);
+
+    public MessagePackHttpMessageConverter() {
+        super(new ObjectMapper(new MessagePackFactory()), MEDIA_TYPE);
+    }
+}
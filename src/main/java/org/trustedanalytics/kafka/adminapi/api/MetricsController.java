@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api;
+
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.Metered;
+import com.yammer.metrics.core.Metric;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Sampling;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.stats.Snapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the application metrics in the Prometheus text format.
+ * Metric names are built from the type and name of the Yammer metric, e.g. KafkaWriter.sendLatency becomes
+ * kafka_admin_api_kafka_writer_send_latency_seconds. Per topic metrics carry the topic in the scope label.
+ */
+@Controller
+public class MetricsController {
+
+    private static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String PREFIX = "kafka_admin_api_";
+    private static final double[] QUANTILES = {0.5, 0.75, 0.95, 0.99};
+
+    @Autowired
+    private MetricsRegistry metrics;
+
+    @RequestMapping(method = RequestMethod.GET, value = "/metrics")
+    public ResponseEntity<String> metrics() {
+        SortedMap<String, List<Map.Entry<MetricName, Metric>>> families = new TreeMap<>();
+        for (Map.Entry<MetricName, Metric> metric : metrics.allMetrics().entrySet()) {
+            MetricName name = metric.getKey();
+            String family = PREFIX + snakeCase(name.getType()) + "_" + snakeCase(name.getName());
+            families.computeIfAbsent(family, key -> new ArrayList<>()).add(metric);
+        }
+
+        StringBuilder text = new StringBuilder();
+        families.forEach((family, members) -> {
+            Metric first = members.get(0).getValue();
+            if (first instanceof Timer) {
+                text.append("# TYPE ").append(family).append("_seconds summary\n");
+                members.forEach(member -> writeTimer(text, family + "_seconds", member.getKey(), (Timer) member.getValue()));
+            } else if (first instanceof Metered) {
+                text.append("# TYPE ").append(family).append("_total counter\n");
+                members.forEach(member -> writeSample(text, family + "_total", member.getKey(), null,
+                        ((Metered) member.getValue()).count()));
+            } else if (first instanceof Histogram) {
+                text.append("# TYPE ").append(family).append(" summary\n");
+                members.forEach(member -> writeHistogram(text, family, member.getKey(), (Histogram) member.getValue()));
+            } else if (first instanceof Counter) {
+                text.append("# TYPE ").append(family).append(" gauge\n");
+                members.forEach(member -> writeSample(text, family, member.getKey(), null,
+                        ((Counter) member.getValue()).count()));
+            } else if (first instanceof Gauge) {
+                text.append("# TYPE ").append(family).append(" gauge\n");
+                members.forEach(member -> {
+                    Object value = ((Gauge<?>) member.getValue()).value();
+                    if (value instanceof Number) {
+                        writeSample(text, family, member.getKey(), null, ((Number) value).doubleValue());
+                    }
+                });
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(PROMETHEUS_TEXT)).body(text.toString());
+    }
+
+    private static void writeTimer(StringBuilder text, String family, MetricName name, Timer timer) {
+        double toSeconds = (double) timer.durationUnit().toNanos(1) / TimeUnit.SECONDS.toNanos(1);
+        writeQuantiles(text, family, name, timer, toSeconds);
+        writeSample(text, family + "_sum", name, null, timer.sum() * toSeconds);
+        writeSample(text, family + "_count", name, null, timer.count());
+    }
+
+    private static void writeHistogram(StringBuilder text, String family, MetricName name, Histogram histogram) {
+        writeQuantiles(text, family, name, histogram, 1);
+        writeSample(text, family + "_sum", name, null, histogram.sum());
+        writeSample(text, family + "_count", name, null, histogram.count());
+    }
+
+    private static void writeQuantiles(StringBuilder text, String family, MetricName name, Sampling sampling,
+                                       double scale) {
+        Snapshot snapshot = sampling.getSnapshot();
+        for (double quantile : QUANTILES) {
+            writeSample(text, family, name, "quantile=\"" + quantile + "\"", snapshot.getValue(quantile) * scale);
+        }
+    }
+
+    private static void writeSample(StringBuilder text, String family, MetricName name, String extraLabel,
+                                    double value) {
+        text.append(family);
+        if (name.hasScope() || extraLabel != null) {
+            text.append('{');
+            if (name.hasScope()) {
+                text.append("scope=\"").append(escape(name.getScope())).append('"');
+            }
+            if (extraLabel != null) {
+                text.append(name.hasScope() ? "," : "").append(extraLabel);
+            }
+            text.append('}');
+        }
+        text.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String snakeCase(String name) {
+        StringBuilder snake = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0 && !Character.isUpperCase(name.charAt(i - 1))) {
+                    snake.append('_');
+                }
+                snake.append(Character.toLowerCase(c));
+            } else if (Character.isLetterOrDigit(c)) {
+                snake.append(c);
+            } else {
+                snake.append('_');
+            }
+        }
+        return snake.toString();
+    }
+}
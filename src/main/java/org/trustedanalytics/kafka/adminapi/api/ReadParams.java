@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api;
+
+/**
+ * Query parameters which order and limit the messages of a whole topic read and tell where it starts, see
+ * {@link org.trustedanalytics.kafka.adminapi.kafka.ReadOptions}.
+ */
+public class ReadParams {
+
+    private String order;
+
+    private Long maxMessages;
+
+    private Long maxBytes;
+
+    private String from;
+
+    public String getOrder() {
+        return order;
+    }
+
+    public void setOrder(String order) {
+        this.order = order;
+    }
+
+    public Long getMaxMessages() {
+        return maxMessages;
+    }
+
+    public void setMaxMessages(Long maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+
+    public Long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(Long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public void setFrom(String from) {
+        this.from = from;
+    }
+}
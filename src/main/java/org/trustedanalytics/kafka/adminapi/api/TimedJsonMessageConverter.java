@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * The JSON converter of Spring with a timer of response serialization,
+ * so that it can be told apart from the time spent reading Kafka.
+ */
+public class TimedJsonMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    private final Timer serialization;
+
+    public TimedJsonMessageConverter(ObjectMapper objectMapper, MetricsRegistry metrics) {
+        super(objectMapper);
+        this.serialization = metrics.newTimer(TimedJsonMessageConverter.class, "serialization");
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+        TimerContext context = serialization.time();
+        try {
+            super.writeInternal(object, type, outputMessage);
+        } finally {
+            context.stop();
+        }
+    }
+}
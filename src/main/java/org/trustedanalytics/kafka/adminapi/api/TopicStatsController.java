@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api;
+
+import kafka.common.Topic;
+import kafka.common.UnknownTopicOrPartitionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+import org.trustedanalytics.kafka.adminapi.model.TopicStats;
+import org.trustedanalytics.kafka.adminapi.services.KafkaService;
+import org.trustedanalytics.kafka.adminapi.services.TopicStatsMonitor;
+import org.trustedanalytics.kafka.adminapi.services.admission.RequestKind;
+
+import java.util.List;
+
+@Controller
+@RequestMapping(value = "/api")
+public class TopicStatsController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TopicStatsController.class);
+
+    @Autowired
+    private TopicStatsMonitor topicStatsMonitor;
+
+    @Autowired
+    private KafkaService kafkaService;
+
+    @Value("${kafka.stats.maxSampleSize}")
+    private int maxSampleSize;
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}/stats")
+    @ResponseBody
+    @RateLimited(RequestKind.READ)
+    public TopicStats getStats(@PathVariable String topic) {
+        LOG.info("getStats invoked: {}", topic);
+
+        validateExistingTopic(topic);
+        return topicStatsMonitor.getStats(topic);
+    }
+
+    @RequestMapping(method = RequestMethod.GET, value = "/topics/{topic}/sample")
+    @ResponseBody
+    @RateLimited(RequestKind.READ)
+    public List<Object> sampleTopic(@PathVariable String topic,
+                                    @RequestParam(defaultValue = "10") int n,
+                                    @RequestParam(defaultValue = "text") String format) {
+        LOG.info("sampleTopic invoked: {}, n={}, format={}", topic, n, format);
+
+        validateExistingTopic(topic);
+        if (n <= 0 || n > maxSampleSize) {
+            throw new BadRequestException("Sample size must be between 1 and " + maxSampleSize);
+        }
+        return kafkaService.sampleTopic(topic, n, MessageFormat.parse(format));
+    }
+
+    private void validateExistingTopic(String topic) {
+        Topic.validate(topic);
+        if (!kafkaService.topicExists(topic)) {
+            throw new UnknownTopicOrPartitionException("Topic does not exist: " + topic);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api.streaming;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes messages in a length-prefixed binary framing, copying keys and values straight from the fetched bytes.
+ * Every message is written as (all numbers big-endian):
+ * <pre>
+ * partition: int32
+ * offset: int64
+ * key length: int32, -1 when there is no key
+ * key: bytes
+ * value length: int32, -1 when the value is null
+ * value: bytes
+ * </pre>
+ * A truncated read ends with a frame of partition -1 and offset -1 whose value is the continuation as UTF-8 text.
+ */
+public class BinaryMessageWriter extends MessageStreamWriter {
+
+    public static final String MEDIA_TYPE = "application/octet-stream";
+
+    private final DataOutputStream output;
+
+    public BinaryMessageWriter(OutputStream outputStream) {
+        this.output = new DataOutputStream(outputStream);
+    }
+
+    @Override
+    protected void writeMessage(int partition, long offset, ByteBuffer key, ByteBuffer value) throws IOException {
+        output.writeInt(partition);
+        output.writeLong(offset);
+        writeBytes(key);
+        writeBytes(value);
+    }
+
+    @Override
+    public void writeTruncated(String continuation) throws IOException {
+        writeMessage(-1, -1, null, ByteBuffer.wrap(continuation.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void writeBytes(ByteBuffer buffer) throws IOException {
+        if (buffer == null) {
+            output.writeInt(-1);
+            return;
+        }
+        output.writeInt(buffer.remaining());
+        if (buffer.hasArray()) {
+            output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            output.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api.streaming;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes every message as a separate JSON document.
+ * Keys and values are written straight from the fetched bytes, without decoding them to strings first.
+ */
+public abstract class JsonMessageStreamWriter extends MessageStreamWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    protected final JsonGenerator generator;
+
+    private final MessageFormat format;
+
+    protected JsonMessageStreamWriter(OutputStream outputStream, MessageFormat format) throws IOException {
+        this.generator = JSON_FACTORY.createGenerator(outputStream);
+        // each message is a separate JSON document, we put our own separators between them
+        this.generator.setRootValueSeparator(null);
+        this.format = format;
+    }
+
+    protected void writeJsonMessage(int partition, long offset, ByteBuffer key, ByteBuffer value) throws IOException {
+        if (format == MessageFormat.TEXT) {
+            writeText(value);
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeNumberField("partition", partition);
+        generator.writeNumberField("offset", offset);
+        generator.writeFieldName("key");
+        writeBinary(key);
+        generator.writeFieldName("value");
+        writeBinary(value);
+        generator.writeEndObject();
+    }
+
+    private void writeText(ByteBuffer buffer) throws IOException {
+        if (buffer == null) {
+            generator.writeNull();
+        } else if (buffer.hasArray()) {
+            generator.writeUTF8String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            generator.writeUTF8String(bytes, 0, bytes.length);
+        }
+    }
+
+    private void writeBinary(ByteBuffer buffer) throws IOException {
+        if (buffer == null) {
+            generator.writeNull();
+        } else if (buffer.hasArray()) {
+            generator.writeBinary(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            generator.writeBinary(bytes);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
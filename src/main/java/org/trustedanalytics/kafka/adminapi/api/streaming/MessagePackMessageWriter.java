@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trustedanalytics.kafka.adminapi.api.streaming;
+
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes every message as a separate MessagePack value, one right after another.
+ * Values are self-delimiting, so an unpacker reads the stream message by message.
+ * In the text format a message is just its value as a string, otherwise it is a map of
+ * partition, offset, key and value, with the key and value written as bin straight from the fetched bytes.
+ * A truncated read ends with a map of truncated (true) and continuation.
+ */
+public class MessagePackMessageWriter extends MessageStreamWriter {
+
+    public static final String MEDIA_TYPE = "application/x-msgpack";
+
+    private final MessagePacker packer;
+
+    private final MessageFormat format;
+
+    public MessagePackMessageWriter(OutputStream outputStream, MessageFormat format) {
+        this.packer = MessagePack.newDefaultPacker(outputStream);
+        this.format = format;
+    }
+
+    @Override
+    protected void writeMessage(int partition, long offset, ByteBuffer key, ByteBuffer value) throws IOException {
+        if (format == MessageFormat.TEXT) {
+            if (value == null) {
+                packer.packNil();
+            } else {
+                packer.packRawStringHeader(value.remaining());
+                writePayload(value);
+            }
+            return;
+        }
+        packer.packMapHeader(4);
+        packer.packString("partition").packInt(partition);
+        packer.packString("offset").packLong(offset);
+        packer.packString("key");
+        writeBinary(key);
+        packer.packString("value");
+        writeBinary(value);
+    }
+
+    @Override
+    public void writeTruncated(String continuation) throws IOException {
+        packer.packMapHeader(2);
+        packer.packString("truncated").packBoolean(true);
+        packer.packString("continuation").packString(continuation);
+    }
+
+    private void writeBinary(ByteBuffer buffer) throws IOException {
+        if (buffer == null) {
+            packer.packNil();
+        } else {
+            packer.packBinaryHeader(buffer.remaining());
+            writePayload(buffer);
+        }
+    }
+
+    private void writePayload(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            packer.writePayload(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            // the packer consumes the buffer, which may still be read by others
+            packer.writePayload(buffer.duplicate());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        packer.close();
+    }
+}
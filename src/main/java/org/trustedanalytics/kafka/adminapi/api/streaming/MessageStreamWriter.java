@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api.streaming;
+
+import org.trustedanalytics.kafka.adminapi.kafka.MessageHandler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes messages to the response body as they are read from Kafka.
+ * Writes block when the client does not keep up, which slows down reading from Kafka as well.
+ */
+public abstract class MessageStreamWriter implements MessageHandler {
+
+    @Override
+    public boolean onMessage(int partition, long offset, ByteBuffer key, ByteBuffer value) {
+        try {
+            writeMessage(partition, offset, key, value);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return true;
+    }
+
+    protected abstract void writeMessage(int partition, long offset, ByteBuffer key, ByteBuffer value)
+            throws IOException;
+
+    public void writeEnd() throws IOException {
+        // by default the end of the topic is just the end of the response
+    }
+
+    /**
+     * Marks a read which ended before the end of the topic, before the end of the stream is written.
+     * @param continuation The offsets which continue the read
+     */
+    public void writeTruncated(String continuation) throws IOException {
+        // by default a truncated read is just a shorter stream
+    }
+
+    public void writeError(String error) throws IOException {
+        // by default the stream is just cut off, there is no way to change the response status any more
+    }
+
+    public abstract void close() throws IOException;
+}
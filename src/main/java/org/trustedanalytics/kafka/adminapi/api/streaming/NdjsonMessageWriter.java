@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api.streaming;
+
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes every message as JSON in a separate line (newline delimited JSON).
+ * The output is not flushed after each message, the servlet container sends it whenever its buffer fills up.
+ * A truncated read ends with a {"truncated":true,"continuation":..} line.
+ */
+public class NdjsonMessageWriter extends JsonMessageStreamWriter {
+
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    public NdjsonMessageWriter(OutputStream outputStream, MessageFormat format) throws IOException {
+        super(outputStream, format);
+    }
+
+    @Override
+    protected void writeMessage(int partition, long offset, ByteBuffer key, ByteBuffer value) throws IOException {
+        writeJsonMessage(partition, offset, key, value);
+        generator.writeRaw('\n');
+    }
+
+    @Override
+    public void writeTruncated(String continuation) throws IOException {
+        generator.writeStartObject();
+        generator.writeBooleanField("truncated", true);
+        generator.writeStringField("continuation", continuation);
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.api.streaming;
+
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes every message as a Server-Sent Event with the message encoded as JSON.
+ * Events are flushed one by one so that browsers get them immediately.
+ * The end of the topic is marked with an "end" event and failures with an "error" event,
+ * a truncated read is followed by a "truncated" event with the continuation before its "end" event.
+ */
+public class SseMessageWriter extends JsonMessageStreamWriter {
+
+    public static final String MEDIA_TYPE = "text/event-stream";
+
+    public SseMessageWriter(OutputStream outputStream, MessageFormat format) throws IOException {
+        super(outputStream, format);
+    }
+
+    @Override
+    protected void writeMessage(int partition, long offset, ByteBuffer key, ByteBuffer value) throws IOException {
+        generator.writeRaw("data: ");
+        writeJsonMessage(partition, offset, key, value);
+        generator.writeRaw("\n\n");
+        generator.flush();
+    }
+
+    @Override
+    public void writeTruncated(String continuation) throws IOException {
+        generator.writeRaw("event: truncated\ndata: ");
+        generator.writeString(continuation);
+        generator.writeRaw("\n\n");
+    }
+
+    @Override
+    public void writeError(String error) throws IOException {
+        generator.writeRaw("event: error\ndata: ");
+        generator.writeString(error);
+        generator.writeRaw("\n\n");
+    }
+
+    @Override
+    public void writeEnd() throws IOException {
+        generator.writeRaw("event: end\ndata: \n\n");
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.config;
+
+import com.yammer.metrics.core.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.embedded.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+import org.trustedanalytics.kafka.adminapi.api.CompressionFilter;
+import org.trustedanalytics.kafka.adminapi.api.MessagePackHttpMessageConverter;
+
+import javax.servlet.DispatcherType;
+import java.util.List;
+
+@Configuration
+public class EncodingConfig extends WebMvcConfigurerAdapter {
+
+    @Value("${kafka.http.compression.enabled}")
+    private boolean compressionEnabled;
+
+    @Value("${kafka.http.compression.level}")
+    private int compressionLevel;
+
+    @Value("${kafka.http.compression.minResponseSize}")
+    private int minResponseSize;
+
+    // Tomcat can only gzip whole responses of listed content types, so compression is done by our own filter.
+    // It has to see async dispatches as well, streamed and deferred responses are written in those.
+    @Bean
+    public FilterRegistrationBean compressionFilter(MetricsRegistry metricsRegistry) {
+        FilterRegistrationBean registration =
+                new FilterRegistrationBean(new CompressionFilter(compressionLevel, minResponseSize, metricsRegistry));
+        registration.addUrlPatterns("/api/*");
+        registration.setDispatcherTypes(DispatcherType.REQUEST, DispatcherType.ASYNC);
+        registration.setEnabled(compressionEnabled);
+        return registration;
+    }
+
+    // Added after the default converters rather than as a bean, which Spring Boot would put in front of them:
+    // clients accepting anything have to keep getting JSON
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new MessagePackHttpMessageConverter());
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.config;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.trustedanalytics.kafka.adminapi.exceptions.ServiceUnavailableException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class ExecutorConfig {
+
+    private static final String METRICS_GROUP = "org.trustedanalytics.kafka.adminapi";
+    private static final String READ_EXECUTOR_TYPE = "ReadExecutor";
+    private static final String FETCH_EXECUTOR_TYPE = "FetchExecutor";
+    private static final String ADMIN_EXECUTOR_TYPE = "AdminExecutor";
+    private static final String IMPORT_EXECUTOR_TYPE = "ImportExecutor";
+    private static final String TAIL_EXECUTOR_TYPE = "TailExecutor";
+    private static final String TAIL_POLL_EXECUTOR_TYPE = "TailPollExecutor";
+    private static final String TAIL_SENDER_EXECUTOR_TYPE = "TailSenderExecutor";
+
+    @Value("${kafka.reader.executor.threads}")
+    private int readerThreads;
+
+    @Value("${kafka.reader.executor.queueSize}")
+    private int readerQueueSize;
+
+    @Value("${kafka.reader.fetch.threads}")
+    private int fetchThreads;
+
+    @Value("${kafka.reader.fetch.queueSize}")
+    private int fetchQueueSize;
+
+    @Value("${kafka.admin.executor.threads}")
+    private int adminThreads;
+
+    @Value("${kafka.admin.executor.queueSize}")
+    private int adminQueueSize;
+
+    @Value("${kafka.import.executor.threads}")
+    private int importThreads;
+
+    @Value("${kafka.import.executor.queueSize}")
+    private int importQueueSize;
+
+    @Value("${kafka.tail.maxTopics}")
+    private int maxTailedTopics;
+
+    @Value("${kafka.tail.pollThreads}")
+    private int tailPollThreads;
+
+    @Value("${kafka.tail.pollQueueSize}")
+    private int tailPollQueueSize;
+
+    @Value("${kafka.tail.senderThreads}")
+    private int tailSenderThreads;
+
+    /**
+     * Topic reads block on Kafka I/O, so they get their own bounded pool instead of the common ForkJoinPool.
+     * Reads which don't fit into the queue are rejected with 503 rather than piling up.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor readExecutor(MetricsRegistry metrics) {
+        return boundedExecutor(READ_EXECUTOR_TYPE, "topic-reader-", readerThreads, readerQueueSize, "reads", metrics);
+    }
+
+    /**
+     * Runs the fetches of partitions which topic reads fetch in parallel, shared by all reads.
+     * Fetches which don't fit into the queue fail their read with 503.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor fetchExecutor(MetricsRegistry metrics) {
+        return boundedExecutor(FETCH_EXECUTOR_TYPE, "partition-fetcher-", fetchThreads, fetchQueueSize,
+                "partition fetches", metrics);
+    }
+
+    /**
+     * Runs the Zookeeper writes of bulk admin requests in parallel.
+     * Operations which don't fit into the queue are rejected with 503.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor adminExecutor(MetricsRegistry metrics) {
+        return boundedExecutor(ADMIN_EXECUTOR_TYPE, "topic-admin-", adminThreads, adminQueueSize, "admin operations",
+                metrics);
+    }
+
+    /**
+     * Runs imports off the servlet threads, each of them occupies a thread until its input is written.
+     * Imports which don't fit into the queue are rejected with 503.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor importExecutor(MetricsRegistry metrics) {
+        return boundedExecutor(IMPORT_EXECUTOR_TYPE, "topic-import-", importThreads, importQueueSize, "imports",
+                metrics);
+    }
+
+    /**
+     * Runs the shared consumers of live tailed topics, a thread per tailed topic.
+     * The tailer starts at most kafka.tail.maxTopics tails, so the queue only holds a new tail for the moment
+     * a thread which has just finished a tail is still busy.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor tailExecutor(MetricsRegistry metrics) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                maxTailedTopics, maxTailedTopics, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                namedThreads("topic-tail-"));
+        executor.allowCoreThreadTimeOut(true);
+        return withGauges(TAIL_EXECUTOR_TYPE, executor, metrics);
+    }
+
+    /**
+     * Polls the leader brokers of live tailed topics which have more than one leader in parallel.
+     * Polls which don't fit into the queue fail their fetch round, the tail tries again after a while.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor tailPollExecutor(MetricsRegistry metrics) {
+        return boundedExecutor(TAIL_POLL_EXECUTOR_TYPE, "tail-poller-", tailPollThreads, tailPollQueueSize,
+                "leader polls", metrics);
+    }
+
+    /**
+     * Sends buffered live tail messages to WebSocket subscribers.
+     * Every subscriber has at most one send task at a time, so the queue is bounded by the number of subscribers.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor tailSenderExecutor(MetricsRegistry metrics) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                tailSenderThreads, tailSenderThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                namedThreads("tail-sender-"));
+        executor.allowCoreThreadTimeOut(true);
+        return withGauges(TAIL_SENDER_EXECUTOR_TYPE, executor, metrics);
+    }
+
+    /**
+     * A pool of a fixed number of threads with a bounded queue, tasks which don't fit into it are rejected with 503.
+     * @param tasks What the tasks are, for the rejection meter and message
+     */
+    private static ThreadPoolExecutor boundedExecutor(String type, String threadPrefix, int threads, int queueSize,
+                                                      String tasks, MetricsRegistry metrics) {
+        Meter rejected = metrics.newMeter(new MetricName(METRICS_GROUP, type, "rejected"), tasks, TimeUnit.SECONDS);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                namedThreads(threadPrefix),
+                (runnable, pool) -> {
+                    rejected.mark();
+                    throw new ServiceUnavailableException("Too many concurrent " + tasks + ", try again later");
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return withGauges(type, executor, metrics);
+    }
+
+    private static ThreadPoolExecutor withGauges(String type, ThreadPoolExecutor executor, MetricsRegistry metrics) {
+        metrics.newGauge(new MetricName(METRICS_GROUP, type, "active"), new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return executor.getActiveCount();
+            }
+        });
+        metrics.newGauge(new MetricName(METRICS_GROUP, type, "queued"), new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return executor.getQueue().size();
+            }
+        });
+        return executor;
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
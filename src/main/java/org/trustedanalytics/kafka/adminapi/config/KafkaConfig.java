@@ -16,24 +16,31 @@
 
 package org.trustedanalytics.kafka.adminapi.config;
 
-import kafka.consumer.Consumer;
-import kafka.consumer.ConsumerConfig;
-import kafka.javaapi.consumer.ConsumerConnector;
+import com.yammer.metrics.core.MetricsRegistry;
 import kafka.utils.ZKStringSerializer$;
 import org.I0Itec.zkclient.ZkClient;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.env.Environment;
 import org.trustedanalytics.kafka.adminapi.kafka.KafkaReader;
 import org.trustedanalytics.kafka.adminapi.kafka.KafkaWriter;
+import org.trustedanalytics.kafka.adminapi.kafka.ReadMemory;
+import org.trustedanalytics.kafka.adminapi.kafka.SimpleConsumerPool;
+import org.trustedanalytics.kafka.adminapi.kafka.TopicMeters;
+import org.trustedanalytics.kafka.adminapi.kafka.WriteBatcher;
+import org.trustedanalytics.kafka.adminapi.kafka.WriteSpool;
 
-import java.util.Date;
+import java.util.Arrays;
 import java.util.Properties;
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 
 @Configuration
 public class KafkaConfig {
@@ -49,6 +56,90 @@ public class KafkaConfig {
     @Value("${kafka.brokersUri}")
     private String brokersUri;
 
+    @Value("${kafka.writer.acks}")
+    private String writerAcks;
+
+    @Value("${kafka.writer.lingerMs}")
+    private long writerLingerMs;
+
+    @Value("${kafka.writer.batchSize}")
+    private int writerBatchSize;
+
+    @Value("${kafka.writer.compressionType}")
+    private String writerCompressionType;
+
+    @Value("${kafka.writer.bufferMemory}")
+    private long writerBufferMemory;
+
+    @Value("${kafka.writer.metadataFetchTimeoutMs}")
+    private long writerMetadataFetchTimeoutMs;
+
+    @Value("${kafka.writer.maxInFlightMessages}")
+    private int writerMaxInFlightMessages;
+
+    @Value("${kafka.writer.producers}")
+    private int writerProducers;
+
+    @Value("${kafka.writer.batch.lingerMs}")
+    private long writerBatchLingerMs;
+
+    @Value("${kafka.writer.batch.maxMessages}")
+    private int writerBatchMaxMessages;
+
+    @Value("${kafka.writer.batch.threads}")
+    private int writerBatchThreads;
+
+    @Value("${kafka.writer.spool.enabled}")
+    private boolean spoolEnabled;
+
+    @Value("${kafka.writer.spool.dir}")
+    private String spoolDir;
+
+    @Value("${kafka.writer.spool.segmentBytes}")
+    private int spoolSegmentBytes;
+
+    @Value("${kafka.writer.spool.maxBytes}")
+    private long spoolMaxBytes;
+
+    @Value("${kafka.writer.spool.drainBatchSize}")
+    private int spoolDrainBatchSize;
+
+    @Value("${kafka.writer.spool.retryBackoffMs}")
+    private long spoolRetryBackoffMs;
+
+    @Value("${kafka.reader.pool.maxPerBroker}")
+    private int readerPoolMaxPerBroker;
+
+    @Value("${kafka.reader.pool.maxWaitMs}")
+    private long readerPoolMaxWaitMs;
+
+    @Value("${kafka.reader.pool.idleTimeoutMs}")
+    private long readerPoolIdleTimeoutMs;
+
+    @Value("${kafka.reader.socketTimeoutMs}")
+    private int readerSocketTimeoutMs;
+
+    @Value("${kafka.reader.bufferSize}")
+    private int readerBufferSize;
+
+    @Value("${kafka.reader.fetchSize}")
+    private int readerFetchSize;
+
+    @Value("${kafka.reader.parallelism}")
+    private int readerParallelism;
+
+    @Value("${kafka.reader.memory.maxBytes}")
+    private long readerMemoryMaxBytes;
+
+    @Value("${kafka.reader.memory.maxRequestBytes}")
+    private long readerMemoryMaxRequestBytes;
+
+    @Value("${kafka.metrics.topics}")
+    private String metricsTopics;
+
+    @Value("${kafka.metrics.maxTopics}")
+    private int metricsMaxTopics;
+
     @Bean
     public ZkClient zkClient() {
         // below are default values
@@ -70,27 +161,73 @@ public class KafkaConfig {
     }
 
     @Bean(initMethod = "init", destroyMethod = "destroy")
-    public KafkaWriter writer() {
-        return new KafkaWriter(brokersUri);
+    public KafkaWriter writer(MetricsRegistry metricsRegistry) {
+        return new KafkaWriter(brokersUri, producerSettings(), writerProducers, writerMaxInFlightMessages,
+                writerTopicMeters(metricsRegistry), metricsRegistry);
+    }
+
+    @Bean
+    public TopicMeters writerTopicMeters(MetricsRegistry metricsRegistry) {
+        return new TopicMeters(KafkaWriter.class, metricsTopics(), metricsMaxTopics, metricsRegistry);
+    }
+
+    @Bean
+    public TopicMeters readerTopicMeters(MetricsRegistry metricsRegistry) {
+        return new TopicMeters(KafkaReader.class, metricsTopics(), metricsMaxTopics, metricsRegistry);
+    }
+
+    private Set<String> metricsTopics() {
+        return Arrays.stream(metricsTopics.split(","))
+                .map(String::trim)
+                .filter(topic -> !topic.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    @Bean(initMethod = "init", destroyMethod = "destroy")
+    public WriteBatcher writeBatcher(KafkaWriter writer, MetricsRegistry metricsRegistry) {
+        return new WriteBatcher(writer, writerBatchLingerMs, writerBatchMaxMessages, writerBatchThreads,
+                metricsRegistry);
     }
 
-    private ConsumerConfig consumerConfig() {
-        // to be able to read topics many times we need to randomize the consumer group name
-        Random rnd = new Random();
-        String consumerGroupId = "" + new Date().getTime() + "_"+ rnd.nextInt(10000);
+    @Bean(initMethod = "init", destroyMethod = "destroy")
+    public WriteSpool writeSpool(KafkaWriter writer, MetricsRegistry metricsRegistry) {
+        return new WriteSpool(writer, spoolEnabled, spoolDir, spoolSegmentBytes, spoolMaxBytes, spoolDrainBatchSize,
+                spoolRetryBackoffMs, metricsRegistry);
+    }
 
+    private Properties producerSettings() {
         Properties props = new Properties();
-        props.put("zookeeper.connect", zookeeperUri);
-        props.put("group.id", consumerGroupId);
-        props.put("consumer.timeout.ms", "1000"); // it will throw ConsumerTimeoutException
-        props.put("auto.offset.reset", "smallest"); // when there is no (valid) offset
-        props.put("zookeeper.session.timeout.ms", "1000");
-        props.put("zookeeper.sync.time.ms", "200");
-        props.put("auto.commit.interval.ms", "1000");
-        return new ConsumerConfig(props);
+        props.put(ProducerConfig.ACKS_CONFIG, writerAcks);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, String.valueOf(writerLingerMs));
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, String.valueOf(writerBatchSize));
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, writerCompressionType);
+        // the buffer memory is shared by all producers of the pool
+        props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, String.valueOf(writerBufferMemory / Math.max(1, writerProducers)));
+        // sending to a topic with unknown metadata blocks the caller until the metadata is fetched
+        props.put(ProducerConfig.METADATA_FETCH_TIMEOUT_CONFIG, String.valueOf(writerMetadataFetchTimeoutMs));
+        return props;
+    }
+
+    @Bean(initMethod = "init", destroyMethod = "destroy")
+    public SimpleConsumerPool consumerPool(MetricsRegistry metricsRegistry) {
+        return new SimpleConsumerPool(
+                readerPoolMaxPerBroker,
+                readerPoolMaxWaitMs,
+                readerPoolIdleTimeoutMs,
+                readerSocketTimeoutMs,
+                readerBufferSize,
+                metricsRegistry);
+    }
+
+    @Bean
+    public ReadMemory readMemory(MetricsRegistry metricsRegistry) {
+        return new ReadMemory(readerMemoryMaxBytes, readerMemoryMaxRequestBytes, metricsRegistry);
     }
 
-    public ConsumerConnector connector() {
-        return Consumer.createJavaConsumerConnector(consumerConfig());
+    @Bean
+    public KafkaReader reader(SimpleConsumerPool consumerPool, @Qualifier("fetchExecutor") Executor fetchExecutor,
+                              ReadMemory readMemory, MetricsRegistry metricsRegistry) {
+        return new KafkaReader(brokersUri, consumerPool, readerFetchSize, fetchExecutor, readerParallelism,
+                readMemory, readerTopicMeters(metricsRegistry), metricsRegistry);
     }
 }
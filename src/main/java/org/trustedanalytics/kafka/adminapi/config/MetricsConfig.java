@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.reporting.JmxReporter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.trustedanalytics.kafka.adminapi.api.TimedJsonMessageConverter;
+
+@Configuration
+public class MetricsConfig {
+
+    // Kafka already ships Yammer metrics, so we reuse it instead of pulling in another library.
+    // A dedicated registry keeps our metrics apart from the ones Kafka clients register by default.
+    @Bean(destroyMethod = "shutdown")
+    public MetricsRegistry metricsRegistry() {
+        return new MetricsRegistry();
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    public JmxReporter jmxReporter(MetricsRegistry metricsRegistry) {
+        return new JmxReporter(metricsRegistry);
+    }
+
+    // Spring Boot backs off its own JSON converter when one is defined
+    @Bean
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(
+            ObjectMapper objectMapper, MetricsRegistry metricsRegistry) {
+        return new TimedJsonMessageConverter(objectMapper, metricsRegistry);
+    }
+}
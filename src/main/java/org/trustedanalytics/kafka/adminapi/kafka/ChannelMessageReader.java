@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads messages written by {@link ChannelMessageWriter} back from a channel, through a single buffer
+ * which is refilled as the messages are consumed.
+ * The end frame of a truncated octet-stream read (partition -1, offset -1) is skipped.
+ */
+public class ChannelMessageReader {
+
+    // partition, offset and key length
+    private static final int HEADER_SIZE = 16;
+
+    private final ReadableByteChannel channel;
+    private final ExportFormat format;
+    private final int maxMessageBytes;
+
+    private ByteBuffer buffer;
+    private boolean endOfInput;
+
+    private int partition;
+    private byte[] key;
+    private byte[] value;
+
+    /**
+     * @param bufferSize Initial size of the read buffer
+     * @param maxMessageBytes Max size of a message, larger ones fail the read
+     */
+    public ChannelMessageReader(ReadableByteChannel channel, ExportFormat format, int bufferSize, int maxMessageBytes) {
+        this.channel = channel;
+        this.format = format;
+        this.maxMessageBytes = maxMessageBytes;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.buffer.flip();
+    }
+
+    /**
+     * Moves to the next message.
+     * @return false at the end of the input
+     */
+    public boolean next() {
+        while (true) {
+            boolean read = format == ExportFormat.RAW ? nextFrame() : nextLine();
+            if (!read || partition >= 0 || format == ExportFormat.LINES) {
+                return read;
+            }
+            // the end frame of a truncated read
+        }
+    }
+
+    /**
+     * @return The partition of the current message, -1 for LINES
+     */
+    public int partition() {
+        return partition;
+    }
+
+    public byte[] key() {
+        return key;
+    }
+
+    public byte[] value() {
+        return value;
+    }
+
+    private boolean nextFrame() {
+        if (!fill(HEADER_SIZE)) {
+            return false;
+        }
+        partition = buffer.getInt();
+        buffer.getLong();
+        key = readBytes(buffer.getInt());
+        if (!fill(4)) {
+            throw new BadRequestException("Input ends in the middle of a message");
+        }
+        value = readBytes(buffer.getInt());
+        return true;
+    }
+
+    private byte[] readBytes(int length) {
+        if (length < 0) {
+            return null;
+        }
+        if (length > maxMessageBytes) {
+            throw new BadRequestException("Message of " + length + " bytes is larger than the limit of "
+                    + maxMessageBytes + " bytes");
+        }
+        if (!fill(length)) {
+            throw new BadRequestException("Input ends in the middle of a message");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private boolean nextLine() {
+        partition = -1;
+        key = null;
+        int scanned = 0;
+        while (true) {
+            for (int i = buffer.position() + scanned; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    value = new byte[i - buffer.position()];
+                    buffer.get(value);
+                    buffer.get();
+                    return true;
+                }
+            }
+            scanned = buffer.remaining();
+            if (scanned > maxMessageBytes) {
+                throw new BadRequestException("Line is longer than the limit of " + maxMessageBytes + " bytes");
+            }
+            if (!fill(scanned + 1)) {
+                if (buffer.hasRemaining()) {
+                    // the last line has no newline
+                    value = new byte[buffer.remaining()];
+                    buffer.get(value);
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Reads until the buffer holds at least the given number of bytes.
+     * @return false if the input ends before
+     */
+    private boolean fill(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        if (bytes > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(bytes, 2 * buffer.capacity()));
+            larger.put(buffer);
+            larger.flip();
+            buffer = larger;
+        }
+        buffer.compact();
+        try {
+            while (buffer.position() < bytes && !endOfInput) {
+                if (channel.read(buffer) < 0) {
+                    endOfInput = true;
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            buffer.flip();
+        }
+        return buffer.remaining() >= bytes;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes exported messages to a channel straight from the fetched bytes, the keys and values are neither
+ * copied nor decoded. With a gathering channel, e.g. a file, the frame header, key and value go out
+ * in a single write.
+ * A RAW message is written as (all numbers big-endian):
+ * <pre>
+ * partition: int32
+ * offset: int64
+ * key length: int32, -1 when there is no key
+ * key: bytes
+ * value length: int32, -1 when the value is null
+ * value: bytes
+ * </pre>
+ * A LINES message is its value followed by a newline, values containing newlines cannot be imported again.
+ * Write failures are thrown as {@link UncheckedIOException}.
+ */
+public class ChannelMessageWriter implements MessageHandler {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    private static final byte NEWLINE = '\n';
+
+    private final WritableByteChannel channel;
+    private final ExportFormat format;
+
+    // reused for every message
+    private final ByteBuffer header = ByteBuffer.allocate(16);
+    private final ByteBuffer valueLength = ByteBuffer.allocate(4);
+    private final ByteBuffer newline = ByteBuffer.allocate(1);
+    private final ByteBuffer[] buffers = new ByteBuffer[4];
+
+    private long bytes;
+
+    public ChannelMessageWriter(WritableByteChannel channel, ExportFormat format) {
+        this.channel = channel;
+        this.format = format;
+    }
+
+    @Override
+    public boolean onMessage(int partition, long offset, ByteBuffer key, ByteBuffer value) {
+        if (format == ExportFormat.RAW) {
+            header.clear();
+            header.putInt(partition).putLong(offset).putInt(key == null ? -1 : key.remaining());
+            header.flip();
+            valueLength.clear();
+            valueLength.putInt(value == null ? -1 : value.remaining());
+            valueLength.flip();
+            buffers[0] = header;
+            buffers[1] = key == null ? EMPTY : key.duplicate();
+            buffers[2] = valueLength;
+            buffers[3] = value == null ? EMPTY : value.duplicate();
+        } else {
+            newline.clear();
+            newline.put(NEWLINE);
+            newline.flip();
+            buffers[0] = value == null ? EMPTY : value.duplicate();
+            buffers[1] = newline;
+            buffers[2] = EMPTY;
+            buffers[3] = EMPTY;
+        }
+        write();
+        return true;
+    }
+
+    /**
+     * @return The number of bytes written so far
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    private void write() {
+        try {
+            long remaining = 0;
+            for (ByteBuffer buffer : buffers) {
+                remaining += buffer.remaining();
+            }
+            bytes += remaining;
+            if (channel instanceof GatheringByteChannel) {
+                while (remaining > 0) {
+                    remaining -= ((GatheringByteChannel) channel).write(buffers);
+                }
+            } else {
+                for (ByteBuffer buffer : buffers) {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+
+/**
+ * How exported messages are laid out, see {@link ChannelMessageWriter}.
+ */
+public enum ExportFormat {
+    /** length prefixed frames of partition, offset, key and value, the frames of application/octet-stream reads */
+    RAW("application/octet-stream"),
+    /** the values only, each followed by a newline */
+    LINES("text/plain");
+
+    private final String mediaType;
+
+    ExportFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public static ExportFormat parse(String format) {
+        for (ExportFormat value : values()) {
+            if (value.name().equalsIgnoreCase(format)) {
+                return value;
+            }
+        }
+        throw new BadRequestException("Unknown export format: " + format);
+    }
+}
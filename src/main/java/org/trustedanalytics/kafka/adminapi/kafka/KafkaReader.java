@@ -15,85 +15,1044 @@
  */
 package org.trustedanalytics.kafka.adminapi.kafka;
 
-import kafka.consumer.ConsumerTimeoutException;
-import kafka.consumer.KafkaStream;
-import kafka.javaapi.consumer.ConsumerConnector;
-import kafka.message.MessageAndMetadata;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+import kafka.api.FetchRequest;
+import kafka.api.FetchRequestBuilder;
+import kafka.api.PartitionOffsetRequestInfo;
+import kafka.cluster.Broker;
+import kafka.common.ErrorMapping;
+import kafka.common.LeaderNotAvailableException;
+import kafka.common.MessageSizeTooLargeException;
+import kafka.common.OffsetOutOfRangeException;
+import kafka.common.TopicAndPartition;
+import kafka.common.UnknownTopicOrPartitionException;
+import kafka.javaapi.FetchResponse;
+import kafka.javaapi.OffsetRequest;
+import kafka.javaapi.OffsetResponse;
+import kafka.javaapi.PartitionMetadata;
+import kafka.javaapi.TopicMetadata;
+import kafka.javaapi.TopicMetadataRequest;
+import kafka.javaapi.consumer.SimpleConsumer;
+import kafka.javaapi.message.ByteBufferMessageSet;
+import kafka.message.Message;
+import kafka.message.MessageAndOffset;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.trustedanalytics.kafka.adminapi.exceptions.ServiceUnavailableException;
+import org.trustedanalytics.kafka.adminapi.model.ExportResult;
+import org.trustedanalytics.kafka.adminapi.model.KafkaMessage;
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+import org.trustedanalytics.kafka.adminapi.model.PartitionDetails;
+import org.trustedanalytics.kafka.adminapi.model.PartitionMessages;
+import org.trustedanalytics.kafka.adminapi.model.TopicDetails;
+import org.trustedanalytics.kafka.adminapi.model.TopicMessages;
 
-import java.io.Closeable;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongBinaryOperator;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
-public class KafkaReader implements Closeable {
+public class KafkaReader {
 
     /**
      * Indicates how many messages this reader can consume from a single topic.
      * This is for security reasons against out of memory errors.
      * In case of large topics this constant must be increased.
      */
-    private static final int MAX_MESSAGE_LIST_CAPACITY = 10000;
+    public static final int MAX_MESSAGE_LIST_CAPACITY = 10000;
+
+    // rough per-message overhead of messages kept in memory, on top of their payload
+    private static final int RETAINED_OVERHEAD = 40;
+
+    // offset and size in front of every message of a message set
+    private static final int LOG_OVERHEAD = 12;
+
+    // the smallest fetch of a sampled message, until the average message size is known
+    private static final int MIN_PROBE_BYTES = 1024;
 
     private static final Logger LOG = LoggerFactory.getLogger(KafkaReader.class);
 
-    private final ConsumerConnector connector;
+    private final List<Broker> bootstrapBrokers;
+    private final SimpleConsumerPool consumerPool;
+    private final int fetchSize;
+    private final Executor fetchExecutor;
+    private final int parallelism;
+    private final ReadMemory readMemory;
+    private final TopicMeters topicMeters;
+
+    // time spent in the phases of a read
+    private final Timer metadataRequests;
+    private final Timer offsetRequests;
+    private final Timer fetchRequests;
+    private final Timer firstMessage;
 
-    public KafkaReader(ConsumerConnector connector) {
-        this.connector = connector;
+    private final Meter filteredOut;
+
+    /**
+     * @param fetchExecutor Runs the fetches of partitions read in parallel
+     * @param parallelism How many partitions of a topic read are fetched at a time
+     * @param readMemory Bounds the memory held by reads
+     * @param topicMeters Messages and bytes read per topic
+     */
+    public KafkaReader(String brokersUri, SimpleConsumerPool consumerPool, int fetchSize, Executor fetchExecutor,
+                       int parallelism, ReadMemory readMemory, TopicMeters topicMeters, MetricsRegistry metrics) {
+        this.bootstrapBrokers = parseBrokers(brokersUri);
+        this.consumerPool = consumerPool;
+        this.fetchSize = fetchSize;
+        this.fetchExecutor = fetchExecutor;
+        this.parallelism = parallelism;
+        this.readMemory = readMemory;
+        this.topicMeters = topicMeters;
+        this.metadataRequests = metrics.newTimer(KafkaReader.class, "metadataRequests");
+        this.offsetRequests = metrics.newTimer(KafkaReader.class, "offsetRequests");
+        this.fetchRequests = metrics.newTimer(KafkaReader.class, "fetchRequests");
+        this.firstMessage = metrics.newTimer(KafkaReader.class, "firstMessage");
+        this.filteredOut = metrics.newMeter(KafkaReader.class, "filteredOut", "messages", TimeUnit.SECONDS);
     }
 
-    public List<String> readMessages(String topic) {
-        LOG.info("reading messages from topic: {}", topic);
+    /**
+     * Reads up to {@link #MAX_MESSAGE_LIST_CAPACITY} messages into a list, as many as fit into the memory of a read.
+     * The messages keep their memory reserved, the caller closes the memory lease of the result once it is written.
+     */
+    public TopicMessages readMessages(String topic, MessageFilter filter, ReadOptions options) {
+        List<String> messages = new ArrayList<>();
+        ReadResult result;
+        ReadMemory.Lease memory = readMemory.lease();
         try {
-            List<String> messages = readMessages(createKafkaStream(topic));
-            LOG.debug("Received #{} messages.", messages.size());
-            return messages;
-        } catch (Exception ex) {
+            result = read(topic, filter, options.limitMessages(MAX_MESSAGE_LIST_CAPACITY), memory, true,
+                    (partition, offset, key, value) -> {
+                        messages.add(decode(value));
+                        return true;
+                    });
+        } catch (RuntimeException | Error ex) {
+            memory.close();
+            throw ex;
+        }
+        LOG.debug("Received #{} messages, {}", messages.size(), result);
+        return new TopicMessages(messages, result.isTruncated(), result.isTruncated() ? result.getContinuation() : null,
+                memory);
+    }
+
+    /**
+     * Reads all messages available in the topic at the time of the call and passes the ones matching the filter
+     * to the handler, until the scan budget of the filter or the limits of the read are used up.
+     * Partitions are fetched in parallel and their messages are passed to the handler on the calling thread,
+     * in the order of the options.
+     * Messages are not buffered beyond a fetch ahead per partition, within the memory of a read,
+     * so memory usage does not depend on the number of messages read.
+     */
+    public ReadResult readMessages(String topic, MessageFilter filter, ReadOptions options, MessageHandler handler) {
+        try (ReadMemory.Lease memory = readMemory.lease()) {
+            return read(topic, filter, options, memory, false, handler);
+        }
+    }
+
+    /**
+     * @param retained Whether the handler keeps the messages, their size is then reserved from the memory as well
+     */
+    private ReadResult read(String topic, MessageFilter filter, ReadOptions options, ReadMemory.Lease memory,
+                            boolean retained, MessageHandler handler) {
+        LOG.info("reading messages from topic: {}, {}, {}", topic, filter, options);
+        long start = System.nanoTime();
+        ScanBudget budget = filter.newBudget();
+        long messages = 0;
+        long bytes = 0;
+        long messagesRead = 0;
+        long bytesRead = 0;
+        try (ParallelFetch fetch = openFetch(topic, options, memory)) {
+            // the offset of the first message not passed on of every partition
+            SortedMap<Integer, Long> nextOffsets = new TreeMap<>();
+            fetch.ranges().forEach(range -> nextOffsets.put(range.partition, range.offset));
+            while (fetch.next()) {
+                MessageAndOffset messageAndOffset = fetch.message();
+                Message message = messageAndOffset.message();
+                if (!budget.tryConsume(message.size())) {
+                    LOG.debug("Scan budget used up after {} messages", budget.getMessages());
+                    break;
+                }
+                messagesRead++;
+                bytesRead += message.size();
+                ByteBuffer value = message.payload();
+                if (!filter.matches(value)) {
+                    filteredOut.mark();
+                    nextOffsets.put(fetch.partition(), messageAndOffset.nextOffset());
+                    continue;
+                }
+                value = filter.project(value);
+                int size = value == null ? 0 : value.remaining();
+                if (messages > 0 && bytes + size > options.getMaxBytes()) {
+                    LOG.debug("Byte limit reached after {} messages", messages);
+                    break;
+                }
+                // the first message is kept even when it does not fit, so that a continued read makes progress
+                if (retained && !memory.tryReserve(retainedSize(size)) && messages > 0) {
+                    LOG.debug("Read memory used up after {} messages", messages);
+                    break;
+                }
+                if (messages == 0) {
+                    firstMessage.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                messages++;
+                bytes += size;
+                nextOffsets.put(fetch.partition(), messageAndOffset.nextOffset());
+                if (!handler.onMessage(fetch.partition(), messageAndOffset.offset(), message.key(), value)
+                        || messages >= options.getMaxMessages()) {
+                    break;
+                }
+            }
+            if (fetch.isExhausted() && messagesRead == 0) {
+                throw new ServiceUnavailableException("Not enough memory to read topic " + topic + ", try again later");
+            }
+            boolean truncated = fetch.ranges().stream()
+                    .anyMatch(range -> nextOffsets.get(range.partition) < range.endOffset);
+            return new ReadResult(truncated, nextOffsets);
+        } catch (RuntimeException ex) {
             LOG.error("Error occurred during reading topic", ex);
             throw ex;
+        } finally {
+            topicMeters.mark(topic, messagesRead, bytesRead);
         }
     }
 
-    private List<String> readMessages(KafkaStream<byte[], byte[]> kafkaStream) {
-        List<String> messages = new ArrayList<>();
+    /**
+     * Looks up the range of every partition, with an offset request per leader broker,
+     * and prepares fetching them from their leaders.
+     * A partition starts at its start offset in the options, as far as it is still in the log, or at its earliest offset.
+     */
+    private ParallelFetch openFetch(String topic, ReadOptions options, ReadMemory.Lease memory) {
+        Map<Integer, Broker> leaders = new HashMap<>();
+        List<ParallelFetch.Range> ranges = new ArrayList<>();
+        for (ParallelFetch.Range log : fetchRanges(topic, leaders)) {
+            long startOffset = options.getStartOffsets().getOrDefault(log.partition, log.offset);
+            ranges.add(new ParallelFetch.Range(log.partition,
+                    Math.min(Math.max(startOffset, log.offset), log.endOffset), log.endOffset));
+        }
+
+        return new ParallelFetch(ranges, (partition, offset, endOffset) -> {
+            Broker leader = leaders.get(partition);
+            return consumerPool.withConsumer(leader.host(), leader.port(),
+                    consumer -> fetchChunk(consumer, topic, partition, offset, endOffset));
+        }, fetchExecutor, options.getOrder(), parallelism, memory, fetchSize);
+    }
+
+    /**
+     * Looks up the earliest and latest offset of every partition, with an offset request per leader broker.
+     * @param leaders Receives the leader of every partition
+     * @return The log of every partition, from its earliest to its latest offset, in the order of partition ids
+     */
+    private List<ParallelFetch.Range> fetchRanges(String topic, Map<Integer, Broker> leaders) {
+        Map<Broker, List<TopicAndPartition>> partitionsByLeader = new HashMap<>();
+        for (PartitionMetadata partition : fetchTopicMetadata(topic).partitionsMetadata()) {
+            Broker leader = findLeader(topic, partition);
+            leaders.put(partition.partitionId(), leader);
+            partitionsByLeader.computeIfAbsent(leader, broker -> new ArrayList<>())
+                    .add(new TopicAndPartition(topic, partition.partitionId()));
+        }
+
+        List<ParallelFetch.Range> ranges = new ArrayList<>();
+        partitionsByLeader.forEach((leader, partitions) -> consumerPool.withConsumer(leader.host(), leader.port(), consumer -> {
+            OffsetResponse earliest = fetchOffsets(consumer, partitions, kafka.api.OffsetRequest.EarliestTime());
+            OffsetResponse latest = fetchOffsets(consumer, partitions, kafka.api.OffsetRequest.LatestTime());
+            for (TopicAndPartition partition : partitions) {
+                ErrorMapping.maybeThrowException(earliest.errorCode(topic, partition.partition()));
+                ErrorMapping.maybeThrowException(latest.errorCode(topic, partition.partition()));
+                ranges.add(new ParallelFetch.Range(partition.partition(),
+                        earliest.offsets(topic, partition.partition())[0],
+                        latest.offsets(topic, partition.partition())[0]));
+            }
+            return null;
+        }));
+        ranges.sort(Comparator.comparingInt(range -> range.partition));
+        return ranges;
+    }
+
+    /**
+     * Estimates the heap taken by a message of the given size once it is kept, e.g. decoded into a string.
+     */
+    private static long retainedSize(int size) {
+        return RETAINED_OVERHEAD + 2L * size;
+    }
+
+    /**
+     * Reads at most limit messages from a single partition, starting at the given offset
+     * or at the earliest available one if the offset is null.
+     * Payloads are added as long as their total size stays within maxBytes,
+     * but the first message is always returned so that paging can make progress.
+     * With a filter, the read goes on until limit messages match or the scan budget is used up,
+     * nextOffset is then the first message which was not examined.
+     * The page also ends early when its messages do not fit into the memory of a read.
+     * The messages keep their memory reserved, the caller closes the memory lease of the result once it is written.
+     */
+    public PartitionMessages readPartition(String topic, int partition, Long offset, int limit, int maxBytes,
+                                           MessageFormat format, MessageFilter filter) {
+        LOG.info("reading messages from partition {}-{}, offset: {}, limit: {}, {}", topic, partition, offset, limit, filter);
+        return readPartition(topic, partition, limit, maxBytes, format, filter, false, (earliestOffset, latestOffset) -> {
+            if (offset == null) {
+                return earliestOffset;
+            }
+            if (offset < earliestOffset || offset > latestOffset) {
+                throw new OffsetOutOfRangeException("Offset " + offset + " is out of range ["
+                        + earliestOffset + ", " + latestOffset + "] of partition " + topic + "-" + partition);
+            }
+            return offset;
+        });
+    }
+
+    /**
+     * Reads the last count messages of a single partition, a filter only selects among them.
+     */
+    public PartitionMessages readPartitionTail(String topic, int partition, int count, int maxBytes,
+                                               MessageFormat format, MessageFilter filter) {
+        LOG.info("reading last {} messages from partition {}-{}, {}", count, topic, partition, filter);
+        return readPartition(topic, partition, count, maxBytes, format, filter, true,
+                (earliestOffset, latestOffset) -> Math.max(earliestOffset, latestOffset - count));
+    }
+
+    /**
+     * @param window Whether only the limit messages after the start offset are read, even with a filter
+     */
+    private PartitionMessages readPartition(String topic, int partition, int limit, int maxBytes, MessageFormat format,
+                                            MessageFilter filter, boolean window, LongBinaryOperator startOffset) {
+        Broker leader = findLeader(topic, findPartition(topic, partition));
+        ReadMemory.Lease memory = readMemory.lease();
         try {
-            int consumedMessagesCount = 0;
-            for (MessageAndMetadata<byte[], byte[]> messageAndMetadata : kafkaStream) {
-                String message = new String(messageAndMetadata.message(), StandardCharsets.UTF_8);
-                messages.add(message);
+            if (!memory.tryReserve(fetchSize)) {
+                throw new ServiceUnavailableException("Not enough memory to read partition " + topic + "-" + partition
+                        + ", try again later");
+            }
+            PartitionMessages result = consumerPool.withConsumer(leader.host(), leader.port(), consumer ->
+                    readPartition(consumer, topic, partition, limit, maxBytes, format, filter, window, startOffset,
+                            memory));
+            // only the messages stay reserved until the result is written
+            memory.release(fetchSize);
+            result.setMemory(memory);
+            return result;
+        } catch (RuntimeException | Error ex) {
+            memory.close();
+            throw ex;
+        }
+    }
+
+    private PartitionMessages readPartition(SimpleConsumer consumer, String topic, int partition, int limit,
+                                            int maxBytes, MessageFormat format, MessageFilter filter, boolean window,
+                                            LongBinaryOperator startOffset, ReadMemory.Lease memory) {
+        long earliestOffset = fetchOffset(consumer, topic, partition, kafka.api.OffsetRequest.EarliestTime());
+        long latestOffset = fetchOffset(consumer, topic, partition, kafka.api.OffsetRequest.LatestTime());
+        long offset = startOffset.applyAsLong(earliestOffset, latestOffset);
+        // a filtered range read looks further, until limit messages match
+        long endOffset = filter.selects() && !window ? latestOffset : Math.min(latestOffset, offset + limit);
+
+        List<Object> messages = new ArrayList<>();
+        int[] bytes = {0};
+        ScanBudget budget = filter.newBudget();
+        long nextOffset = fetchRange(consumer, topic, partition, offset, endOffset, messageAndOffset -> {
+            Message message = messageAndOffset.message();
+            if (messages.size() >= limit || !budget.tryConsume(message.size())) {
+                return false;
+            }
+            ByteBuffer value = message.payload();
+            if (!filter.matches(value)) {
+                filteredOut.mark();
+                return true;
+            }
+            value = filter.project(value);
+            int size = value == null ? 0 : value.remaining();
+            if (!messages.isEmpty() && bytes[0] + size > maxBytes) {
+                return false;
+            }
+            // the first message is kept even when it does not fit, so that the next page makes progress
+            if (!memory.tryReserve(retainedSize(size)) && !messages.isEmpty()) {
+                return false;
+            }
+            bytes[0] += size;
+            if (format == MessageFormat.BINARY) {
+                messages.add(new KafkaMessage(partition, messageAndOffset.offset(),
+                        copy(message.key()), copy(value)));
+            } else {
+                messages.add(decode(value));
+            }
+            return true;
+        });
+        LOG.debug("Received #{} messages, {} bytes.", messages.size(), bytes[0]);
+
+        PartitionMessages result = new PartitionMessages();
+        result.setTopic(topic);
+        result.setPartition(partition);
+        result.setOffset(offset);
+        result.setNextOffset(nextOffset);
+        result.setEarliestOffset(earliestOffset);
+        result.setLatestOffset(latestOffset);
+        result.setMessages(messages);
+        return result;
+    }
+
+    /**
+     * Passes the messages of a topic range to the handler as they are fetched, a partition after another,
+     * straight from the fetch responses. A single fetch response is held at a time and the pooled connection
+     * only for the fetch itself, so a slow handler, e.g. writing to a slow client, holds no connection.
+     * The offsets are limited to the log of every partition.
+     * @param partition The partition to export, all partitions if null
+     * @param fromOffset The first offset of every partition, its earliest offset if null
+     * @param toOffset The offset after the last exported one of every partition, its latest offset if null
+     */
+    public ExportResult exportMessages(String topic, Integer partition, Long fromOffset, Long toOffset,
+                                       MessageHandler handler) {
+        LOG.info("exporting messages from topic: {}, partition: {}, offsets: {} to {}",
+                topic, partition, fromOffset, toOffset);
+        List<PartitionMetadata> partitions = new ArrayList<>();
+        if (partition == null) {
+            partitions.addAll(fetchTopicMetadata(topic).partitionsMetadata());
+            partitions.sort(Comparator.comparingInt(PartitionMetadata::partitionId));
+        } else {
+            partitions.add(findPartition(topic, partition));
+        }
 
-                if (++consumedMessagesCount >= MAX_MESSAGE_LIST_CAPACITY) {
-                    LOG.debug("Message list is full. No more reading...");
+        SortedMap<Integer, Long> nextOffsets = new TreeMap<>();
+        long messagesRead = 0;
+        long bytesRead = 0;
+        try (ReadMemory.Lease memory = readMemory.lease()) {
+            if (!memory.tryReserve(fetchSize)) {
+                throw new ServiceUnavailableException("Not enough memory to export topic " + topic + ", try again later");
+            }
+            boolean stopped = false;
+            for (PartitionMetadata partitionMetadata : partitions) {
+                if (stopped) {
                     break;
                 }
+                int id = partitionMetadata.partitionId();
+                Broker leader = findLeader(topic, partitionMetadata);
+                long[] range = consumerPool.withConsumer(leader.host(), leader.port(), consumer -> new long[] {
+                        fetchOffset(consumer, topic, id, kafka.api.OffsetRequest.EarliestTime()),
+                        fetchOffset(consumer, topic, id, kafka.api.OffsetRequest.LatestTime())});
+                long offset = fromOffset == null ? range[0] : Math.min(Math.max(fromOffset, range[0]), range[1]);
+                long endOffset = toOffset == null ? range[1] : Math.min(Math.max(toOffset, offset), range[1]);
+                while (!stopped && offset < endOffset) {
+                    long chunkOffset = offset;
+                    ParallelFetch.Chunk chunk = consumerPool.withConsumer(leader.host(), leader.port(),
+                            consumer -> fetchChunk(consumer, topic, id, chunkOffset, endOffset));
+                    if (chunk.messages.isEmpty()) {
+                        break;
+                    }
+                    for (MessageAndOffset messageAndOffset : chunk.messages) {
+                        Message message = messageAndOffset.message();
+                        messagesRead++;
+                        bytesRead += message.size();
+                        offset = messageAndOffset.nextOffset();
+                        if (!handler.onMessage(id, messageAndOffset.offset(), message.key(), message.payload())) {
+                            stopped = true;
+                            break;
+                        }
+                    }
+                }
+                nextOffsets.put(id, offset);
+            }
+        } finally {
+            topicMeters.mark(topic, messagesRead, bytesRead);
+        }
+
+        ExportResult result = new ExportResult();
+        result.setTopic(topic);
+        result.setMessages(messagesRead);
+        result.setNextOffsets(nextOffsets);
+        return result;
+    }
+
+    /**
+     * Estimates the average size of the messages of every partition from a single small fetch per partition,
+     * with one fetch request per leader broker. The size is the one in the log, i.e. after compression
+     * and with the log overhead of every message.
+     * @param startOffsets Where to fetch every partition from
+     * @param probeBytes Max bytes fetched from a partition
+     * @return The average message size by partition, partitions without messages after their start offset are left out
+     */
+    public Map<Integer, Double> averageMessageSizes(String topic, Map<Integer, Long> startOffsets, int probeBytes) {
+        Map<Broker, List<Integer>> partitionsByLeader = new HashMap<>();
+        for (PartitionMetadata partition : fetchTopicMetadata(topic).partitionsMetadata()) {
+            if (partition.leader() != null && startOffsets.containsKey(partition.partitionId())) {
+                partitionsByLeader.computeIfAbsent(partition.leader(), leader -> new ArrayList<>())
+                        .add(partition.partitionId());
             }
-        } catch (ConsumerTimeoutException ex) {
-            LOG.debug("No more messages", ex);
-            // this exception is thrown if there is no more messages available
-            // we need to ignore it
         }
-        return messages;
+
+        Map<Integer, Double> sizes = new HashMap<>();
+        partitionsByLeader.forEach((leader, partitions) -> consumerPool.withConsumer(leader.host(), leader.port(), consumer -> {
+            FetchRequestBuilder builder = new FetchRequestBuilder().clientId(SimpleConsumerPool.CLIENT_ID);
+            partitions.forEach(partition -> builder.addFetch(topic, partition, startOffsets.get(partition), probeBytes));
+            FetchRequest request = builder.build();
+            FetchResponse response = timed(fetchRequests, () -> consumer.fetch(request));
+            for (int partition : partitions) {
+                if (response.errorCode(topic, partition) != ErrorMapping.NoError()) {
+                    continue;
+                }
+                ByteBufferMessageSet messageSet = response.messageSet(topic, partition);
+                long messages = 0;
+                // compressed messages are counted one by one, their wrapper holds their compressed size
+                for (MessageAndOffset ignored : messageSet) {
+                    messages++;
+                }
+                if (messages > 0) {
+                    sizes.put(partition, (double) messageSet.validBytes() / messages);
+                }
+            }
+            return null;
+        }));
+        return sizes;
     }
 
-    private KafkaStream<byte[], byte[]> createKafkaStream(String topic) {
-        LOG.debug("creating Kafka stream for topic {}", topic);
-        Map<String, Integer> topicsCountMap = new HashMap<String, Integer>() {{
-            put(topic, 1);
-        }};
-        return connector.createMessageStreams(topicsCountMap).get(topic).get(0);
+    /**
+     * Picks count distinct offsets uniformly at random across all partitions and reads the messages at them,
+     * with a small fetch per picked offset which is not already in the previous fetch of the partition.
+     * A fetch is sized to about two messages of the average size seen so far, within maxProbeBytes,
+     * so the cost of a sample depends on its size and the size of its messages, not on the size of the topic.
+     * The sample ends early when its messages do not fit into the memory of a read.
+     * @return Plain strings or {@link KafkaMessage}s, depending on the format, in the order of partitions and offsets
+     */
+    public List<Object> sampleMessages(String topic, int count, int maxProbeBytes, MessageFormat format,
+                                       Random random) {
+        LOG.info("sampling {} messages from topic: {}", count, topic);
+        Map<Integer, Broker> leaders = new HashMap<>();
+        List<ParallelFetch.Range> ranges = fetchRanges(topic, leaders);
+        long total = ranges.stream().mapToLong(range -> range.endOffset - range.offset).sum();
+
+        // Floyd's algorithm: distinct positions among all messages, without materializing them
+        SortedSet<Long> positions = new TreeSet<>();
+        for (long j = total - Math.min(count, total); j < total; j++) {
+            long position = (long) (random.nextDouble() * (j + 1));
+            positions.add(positions.contains(position) ? j : position);
+        }
+
+        List<Object> messages = new ArrayList<>(positions.size());
+        long messagesRead = 0;
+        long bytesRead = 0;
+        try (ReadMemory.Lease memory = readMemory.lease()) {
+            if (!memory.tryReserve(maxProbeBytes)) {
+                throw new ServiceUnavailableException("Not enough memory to sample topic " + topic + ", try again later");
+            }
+            // bytes and messages of the fetches so far, the size of the next fetch is derived from them
+            long[] fetchedBytes = {0};
+            long[] fetchedMessages = {0};
+            long rangeStart = 0;
+            for (ParallelFetch.Range range : ranges) {
+                long rangeEnd = rangeStart + range.endOffset - range.offset;
+                Broker leader = leaders.get(range.partition);
+                List<MessageAndOffset> fetched = Collections.emptyList();
+                int index = 0;
+                for (long position : positions.subSet(rangeStart, rangeEnd)) {
+                    long offset = range.offset + position - rangeStart;
+                    // the previous fetch may already hold the message
+                    while (index < fetched.size() && fetched.get(index).offset() < offset) {
+                        index++;
+                    }
+                    if (index == fetched.size()) {
+                        int probeBytes = fetchedMessages[0] == 0 ? MIN_PROBE_BYTES : (int) Math.min(maxProbeBytes,
+                                Math.max(MIN_PROBE_BYTES, 2 * fetchedBytes[0] / fetchedMessages[0]));
+                        fetched = consumerPool.withConsumer(leader.host(), leader.port(),
+                                consumer -> fetchProbe(consumer, topic, range.partition, offset, range.endOffset,
+                                        Math.min(probeBytes, maxProbeBytes), maxProbeBytes, memory));
+                        index = 0;
+                        if (fetched.isEmpty()) {
+                            break;
+                        }
+                        for (MessageAndOffset probed : fetched) {
+                            fetchedBytes[0] += LOG_OVERHEAD + probed.message().size();
+                        }
+                        fetchedMessages[0] += fetched.size();
+                    }
+                    // in a compacted log the offset may be gone, the next message stands in for it
+                    MessageAndOffset messageAndOffset = fetched.get(index++);
+                    Message message = messageAndOffset.message();
+                    ByteBuffer value = message.payload();
+                    int size = value == null ? 0 : value.remaining();
+                    if (!memory.tryReserve(retainedSize(size))) {
+                        LOG.debug("Read memory used up after {} sampled messages", messages.size());
+                        return messages;
+                    }
+                    messagesRead++;
+                    bytesRead += message.size();
+                    if (format == MessageFormat.BINARY) {
+                        messages.add(new KafkaMessage(range.partition, messageAndOffset.offset(),
+                                copy(message.key()), copy(value)));
+                    } else {
+                        messages.add(decode(value));
+                    }
+                }
+                rangeStart = rangeEnd;
+            }
+            return messages;
+        } finally {
+            topicMeters.mark(topic, messagesRead, bytesRead);
+        }
     }
 
-    @Override
-    public void close() {
-        LOG.debug("closing connection to Kafka");
+    /**
+     * Fetches at most probeBytes from offset. When the message at offset is larger, it is fetched again with
+     * maxProbeBytes, which the read holds already, and then with a whole fetch, which is reserved from the memory
+     * of the read for as long as the sample keeps the fetched messages.
+     */
+    private List<MessageAndOffset> fetchProbe(SimpleConsumer consumer, String topic, int partition, long offset,
+                                              long endOffset, int probeBytes, int maxProbeBytes,
+                                              ReadMemory.Lease memory) {
         try {
-            connector.shutdown();
-        } catch (Exception ex) {
-            LOG.debug("Error during Kafka connection shutdown. Ignoring.", ex);
+            return fetchChunk(consumer, topic, partition, offset, endOffset, probeBytes).messages;
+        } catch (MessageSizeTooLargeException ex) {
+            LOG.debug("Message at {}-{} {} is larger than {} bytes", topic, partition, offset, probeBytes);
+        }
+        if (probeBytes < maxProbeBytes) {
+            try {
+                return fetchChunk(consumer, topic, partition, offset, endOffset, maxProbeBytes).messages;
+            } catch (MessageSizeTooLargeException ex) {
+                LOG.debug("Message at {}-{} {} is larger than {} bytes", topic, partition, offset, maxProbeBytes);
+            }
+        }
+        if (!memory.tryReserve(fetchSize)) {
+            throw new ServiceUnavailableException("Not enough memory to sample topic " + topic + ", try again later");
+        }
+        return fetchChunk(consumer, topic, partition, offset, endOffset, fetchSize).messages;
+    }
+
+    /**
+     * Fetches the messages appended to a topic since the given offsets, with one fetch request per leader broker.
+     * The leaders are polled in parallel on the executor, a single leader on the calling thread, and each holds
+     * the request for up to maxWaitMs while it has no new messages, so tailing an idle topic does not spin.
+     * The leaders are kept by the caller between fetches, they are looked up again when a fetch fails.
+     * Partitions missing from the offsets start at their latest offset, partitions whose offset is no longer
+     * in the log (e.g. because of retention) continue at their earliest offset.
+     * Messages are passed to the handler on the calling thread once all leaders have answered.
+     * Unlike the other reads, the handler cannot stop the fetch, its result is ignored.
+     * @return The offsets to continue from
+     */
+    public Map<Integer, Long> fetchNewMessages(String topic, Map<Integer, Long> offsets, TopicLeaders leaders,
+                                               int maxWaitMs, Executor executor, MessageHandler handler) {
+        boolean[] leaderless = {false};
+        Map<Broker, List<Integer>> partitionsByLeader = leaders.get(() -> {
+            Map<Broker, List<Integer>> byLeader = new HashMap<>();
+            for (PartitionMetadata partition : fetchTopicMetadata(topic).partitionsMetadata()) {
+                if (partition.leader() == null) {
+                    // the partition is skipped until a new leader is elected
+                    LOG.debug("No leader for partition {}-{}", topic, partition.partitionId());
+                    leaderless[0] = true;
+                    continue;
+                }
+                byLeader.computeIfAbsent(partition.leader(), leader -> new ArrayList<>()).add(partition.partitionId());
+            }
+            return byLeader;
+        });
+        if (leaderless[0]) {
+            // looked up again by the next fetch, until every partition has a leader
+            leaders.invalidate();
+        }
+
+        List<CompletableFuture<Map<Integer, ParallelFetch.Chunk>>> polls = new ArrayList<>();
+        Executor pollExecutor = partitionsByLeader.size() > 1 ? executor : Runnable::run;
+        partitionsByLeader.forEach((leader, partitions) -> polls.add(CompletableFuture.supplyAsync(
+                () -> pollLeader(topic, leader, partitions, offsets, maxWaitMs), pollExecutor)));
+
+        Map<Integer, Long> nextOffsets = new HashMap<>(offsets);
+        try {
+            for (CompletableFuture<Map<Integer, ParallelFetch.Chunk>> poll : polls) {
+                poll.join().forEach((partition, chunk) -> {
+                    for (MessageAndOffset messageAndOffset : chunk.messages) {
+                        Message message = messageAndOffset.message();
+                        handler.onMessage(partition, messageAndOffset.offset(), message.key(), message.payload());
+                    }
+                    nextOffsets.put(partition, chunk.nextOffset);
+                });
+            }
+        } catch (CompletionException ex) {
+            leaders.invalidate();
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+        return nextOffsets;
+    }
+
+    /**
+     * @return The messages fetched from every partition led by the broker with the offset to continue from,
+     * a partition whose offset is out of range has no messages and continues at its earliest offset
+     */
+    private Map<Integer, ParallelFetch.Chunk> pollLeader(String topic, Broker leader, List<Integer> partitions,
+                                                         Map<Integer, Long> offsets, int maxWaitMs) {
+        return consumerPool.withConsumer(leader.host(), leader.port(), consumer -> {
+            Map<Integer, Long> fetchOffsets = new HashMap<>();
+            FetchRequestBuilder builder = new FetchRequestBuilder()
+                    .clientId(SimpleConsumerPool.CLIENT_ID)
+                    .maxWait(maxWaitMs)
+                    .minBytes(1);
+            for (int partition : partitions) {
+                Long offset = offsets.get(partition);
+                if (offset == null) {
+                    offset = fetchOffset(consumer, topic, partition, kafka.api.OffsetRequest.LatestTime());
+                }
+                fetchOffsets.put(partition, offset);
+                builder.addFetch(topic, partition, offset, fetchSize);
+            }
+            FetchRequest request = builder.build();
+            FetchResponse response = timed(fetchRequests, () -> consumer.fetch(request));
+
+            Map<Integer, ParallelFetch.Chunk> polled = new HashMap<>();
+            long messagesRead = 0;
+            long bytesRead = 0;
+            for (int partition : partitions) {
+                short errorCode = response.errorCode(topic, partition);
+                if (errorCode == ErrorMapping.OffsetOutOfRangeCode()) {
+                    long earliestOffset = fetchOffset(consumer, topic, partition, kafka.api.OffsetRequest.EarliestTime());
+                    polled.put(partition, new ParallelFetch.Chunk(Collections.emptyList(), earliestOffset, 0));
+                    continue;
+                }
+                ErrorMapping.maybeThrowException(errorCode);
+
+                ByteBufferMessageSet messageSet = response.messageSet(topic, partition);
+                long fetchedFrom = fetchOffsets.get(partition);
+                long offset = fetchedFrom;
+                List<MessageAndOffset> messages = new ArrayList<>();
+                for (MessageAndOffset messageAndOffset : messageSet) {
+                    // a compressed message set can start before the requested offset
+                    if (messageAndOffset.offset() < offset) {
+                        continue;
+                    }
+                    messages.add(messageAndOffset);
+                    offset = messageAndOffset.nextOffset();
+                    messagesRead++;
+                    bytesRead += messageAndOffset.message().size();
+                }
+                if (offset == fetchedFrom && messageSet.sizeInBytes() > 0) {
+                    throw new MessageSizeTooLargeException("Message at offset " + offset + " in " + topic + "-"
+                            + partition + " is larger than the fetch size " + fetchSize);
+                }
+                polled.put(partition, new ParallelFetch.Chunk(messages, offset, messageSet.sizeInBytes()));
+            }
+            topicMeters.mark(topic, messagesRead, bytesRead);
+            return polled;
+        });
+    }
+
+    /**
+     * Describes topics with a single metadata request and two batched offset requests per leader broker,
+     * instead of a round trip per partition.
+     * Partitions whose offsets could not be fetched are reported with an error, they don't fail the others.
+     * @param topics The topics to describe, all topics if empty
+     */
+    public List<TopicDetails> describeTopics(List<String> topics) {
+        LOG.info("describing {} topics", topics.isEmpty() ? "all" : topics.size());
+
+        List<TopicDetails> result = new ArrayList<>();
+        Map<TopicAndPartition, PartitionDetails> partitionDetails = new HashMap<>();
+        // partitions grouped by their leader, so that their offsets are fetched together
+        Map<Broker, List<TopicAndPartition>> partitionsByLeader = new HashMap<>();
+
+        for (TopicMetadata topicMetadata : fetchTopicsMetadata(topics)) {
+            TopicDetails topicDetails = new TopicDetails();
+            topicDetails.setTopic(topicMetadata.topic());
+            result.add(topicDetails);
+            if (topicMetadata.errorCode() != ErrorMapping.NoError()) {
+                topicDetails.setError(errorName(topicMetadata.errorCode()));
+                continue;
+            }
+
+            List<PartitionDetails> partitions = new ArrayList<>();
+            for (PartitionMetadata partitionMetadata : topicMetadata.partitionsMetadata()) {
+                PartitionDetails details = new PartitionDetails();
+                details.setPartition(partitionMetadata.partitionId());
+                details.setReplicas(brokerIds(partitionMetadata.replicas()));
+                details.setIsr(brokerIds(partitionMetadata.isr()));
+                partitions.add(details);
+
+                // other partition errors, like a replica which is not available, don't prevent reading offsets
+                if (partitionMetadata.leader() == null) {
+                    details.setError(errorName(partitionMetadata.errorCode()));
+                    continue;
+                }
+                details.setLeader(partitionMetadata.leader().id());
+                TopicAndPartition topicAndPartition = new TopicAndPartition(topicMetadata.topic(), partitionMetadata.partitionId());
+                partitionDetails.put(topicAndPartition, details);
+                partitionsByLeader.computeIfAbsent(partitionMetadata.leader(), leader -> new ArrayList<>())
+                        .add(topicAndPartition);
+            }
+            partitions.sort(Comparator.comparingInt(PartitionDetails::getPartition));
+            topicDetails.setPartitions(partitions);
+        }
+
+        partitionsByLeader.forEach((leader, partitions) -> {
+            try {
+                consumerPool.withConsumer(leader.host(), leader.port(), consumer -> {
+                    OffsetResponse earliest = fetchOffsets(consumer, partitions, kafka.api.OffsetRequest.EarliestTime());
+                    OffsetResponse latest = fetchOffsets(consumer, partitions, kafka.api.OffsetRequest.LatestTime());
+                    for (TopicAndPartition partition : partitions) {
+                        PartitionDetails details = partitionDetails.get(partition);
+                        short errorCode = earliest.errorCode(partition.topic(), partition.partition());
+                        if (errorCode == ErrorMapping.NoError()) {
+                            errorCode = latest.errorCode(partition.topic(), partition.partition());
+                        }
+                        if (errorCode != ErrorMapping.NoError()) {
+                            details.setError(errorName(errorCode));
+                            continue;
+                        }
+                        long earliestOffset = earliest.offsets(partition.topic(), partition.partition())[0];
+                        long latestOffset = latest.offsets(partition.topic(), partition.partition())[0];
+                        details.setEarliestOffset(earliestOffset);
+                        details.setLatestOffset(latestOffset);
+                        details.setMessages(latestOffset - earliestOffset);
+                    }
+                    return null;
+                });
+            } catch (RuntimeException ex) {
+                LOG.warn("Fetching offsets from broker {} failed", leader.connectionString(), ex);
+                partitions.forEach(partition -> partitionDetails.get(partition).setError(ex.toString()));
+            }
+        });
+
+        for (TopicDetails topicDetails : result) {
+            if (topicDetails.getPartitions() != null) {
+                topicDetails.setMessages(topicDetails.getPartitions().stream()
+                        .filter(partition -> partition.getMessages() != null)
+                        .mapToLong(PartitionDetails::getMessages)
+                        .sum());
+            }
+        }
+        if (topics.isEmpty()) {
+            result.sort(Comparator.comparing(TopicDetails::getTopic));
+        }
+        return result;
+    }
+
+    /**
+     * Fetches just the latest offset of every partition of the topics, with a single metadata request
+     * and one batched offset request per leader broker.
+     * Partitions without a leader or whose offset could not be fetched are left out.
+     */
+    public Map<TopicAndPartition, Long> latestOffsets(List<String> topics) {
+        Map<Broker, List<TopicAndPartition>> partitionsByLeader = new HashMap<>();
+        for (TopicMetadata topicMetadata : fetchTopicsMetadata(topics)) {
+            if (topicMetadata.errorCode() != ErrorMapping.NoError()) {
+                continue;
+            }
+            for (PartitionMetadata partition : topicMetadata.partitionsMetadata()) {
+                if (partition.leader() != null) {
+                    partitionsByLeader.computeIfAbsent(partition.leader(), leader -> new ArrayList<>())
+                            .add(new TopicAndPartition(topicMetadata.topic(), partition.partitionId()));
+                }
+            }
+        }
+
+        Map<TopicAndPartition, Long> offsets = new HashMap<>();
+        partitionsByLeader.forEach((leader, partitions) -> {
+            try {
+                consumerPool.withConsumer(leader.host(), leader.port(), consumer -> {
+                    OffsetResponse latest = fetchOffsets(consumer, partitions, kafka.api.OffsetRequest.LatestTime());
+                    for (TopicAndPartition partition : partitions) {
+                        if (latest.errorCode(partition.topic(), partition.partition()) == ErrorMapping.NoError()) {
+                            offsets.put(partition, latest.offsets(partition.topic(), partition.partition())[0]);
+                        }
+                    }
+                    return null;
+                });
+            } catch (RuntimeException ex) {
+                LOG.warn("Fetching offsets from broker {} failed", leader.connectionString(), ex);
+            }
+        });
+        return offsets;
+    }
+
+    /**
+     * Fetches messages from offset up to endOffset (exclusive) and passes them to the handler
+     * until it refuses a message.
+     * @return The offset of the first message which was not handled
+     */
+    private long fetchRange(SimpleConsumer consumer, String topic, int partition, long offset, long endOffset,
+                            Predicate<MessageAndOffset> handler) {
+        LOG.debug("reading partition {}-{} from offset {} to {}", topic, partition, offset, endOffset);
+
+        long messagesRead = 0;
+        long bytesRead = 0;
+        try {
+            while (offset < endOffset) {
+                ParallelFetch.Chunk chunk = fetchChunk(consumer, topic, partition, offset, endOffset);
+                if (chunk.messages.isEmpty()) {
+                    // nothing more is available yet
+                    break;
+                }
+                for (MessageAndOffset messageAndOffset : chunk.messages) {
+                    if (!handler.test(messageAndOffset)) {
+                        return messageAndOffset.offset();
+                    }
+                    messagesRead++;
+                    bytesRead += messageAndOffset.message().size();
+                }
+                offset = chunk.nextOffset;
+            }
+            return offset;
+        } finally {
+            topicMeters.mark(topic, messagesRead, bytesRead);
+        }
+    }
+
+    /**
+     * Fetches the messages of a partition which fit into a single fetch response, from offset up to endOffset.
+     * @return The fetched messages, none when there are no more messages before endOffset
+     */
+    private ParallelFetch.Chunk fetchChunk(SimpleConsumer consumer, String topic, int partition, long offset,
+                                           long endOffset) {
+        return fetchChunk(consumer, topic, partition, offset, endOffset, fetchSize);
+    }
+
+    private ParallelFetch.Chunk fetchChunk(SimpleConsumer consumer, String topic, int partition, long offset,
+                                           long endOffset, int maxBytes) {
+        FetchRequest request = new FetchRequestBuilder()
+                .clientId(SimpleConsumerPool.CLIENT_ID)
+                .addFetch(topic, partition, offset, maxBytes)
+                .build();
+        FetchResponse response = timed(fetchRequests, () -> consumer.fetch(request));
+        if (response.hasError()) {
+            ErrorMapping.maybeThrowException(response.errorCode(topic, partition));
+        }
+
+        ByteBufferMessageSet messageSet = response.messageSet(topic, partition);
+        List<MessageAndOffset> messages = new ArrayList<>();
+        long nextOffset = offset;
+        boolean complete = false;
+        for (MessageAndOffset messageAndOffset : messageSet) {
+            // a compressed message set can start before the requested offset
+            if (messageAndOffset.offset() < offset) {
+                continue;
+            }
+            complete = true;
+            if (messageAndOffset.offset() >= endOffset) {
+                break;
+            }
+            messages.add(messageAndOffset);
+            nextOffset = messageAndOffset.nextOffset();
+        }
+        if (!complete && messageSet.sizeInBytes() > 0) {
+            throw new MessageSizeTooLargeException("Message at offset " + offset + " in " + topic + "-"
+                    + partition + " is larger than the fetch size " + maxBytes);
+        }
+        return new ParallelFetch.Chunk(messages, nextOffset, messageSet.sizeInBytes());
+    }
+
+    private long fetchOffset(SimpleConsumer consumer, String topic, int partition, long time) {
+        Map<TopicAndPartition, PartitionOffsetRequestInfo> requestInfo = Collections.singletonMap(
+                new TopicAndPartition(topic, partition), new PartitionOffsetRequestInfo(time, 1));
+        OffsetResponse response = timed(offsetRequests, () -> consumer.getOffsetsBefore(new OffsetRequest(
+                requestInfo, kafka.api.OffsetRequest.CurrentVersion(), SimpleConsumerPool.CLIENT_ID)));
+        if (response.hasError()) {
+            ErrorMapping.maybeThrowException(response.errorCode(topic, partition));
+        }
+        return response.offsets(topic, partition)[0];
+    }
+
+    private OffsetResponse fetchOffsets(SimpleConsumer consumer, List<TopicAndPartition> partitions, long time) {
+        Map<TopicAndPartition, PartitionOffsetRequestInfo> requestInfo = new HashMap<>();
+        partitions.forEach(partition -> requestInfo.put(partition, new PartitionOffsetRequestInfo(time, 1)));
+        return timed(offsetRequests, () -> consumer.getOffsetsBefore(new OffsetRequest(
+                requestInfo, kafka.api.OffsetRequest.CurrentVersion(), SimpleConsumerPool.CLIENT_ID)));
+    }
+
+    private TopicMetadata fetchTopicMetadata(String topic) {
+        TopicMetadata metadata = fetchTopicsMetadata(Collections.singletonList(topic)).get(0);
+        ErrorMapping.maybeThrowException(metadata.errorCode());
+        return metadata;
+    }
+
+    /**
+     * @param topics The topics to fetch metadata of, all topics if empty
+     */
+    private List<TopicMetadata> fetchTopicsMetadata(List<String> topics) {
+        RuntimeException lastError = null;
+        for (Broker broker : bootstrapBrokers) {
+            try {
+                return consumerPool.withConsumer(broker.host(), broker.port(),
+                        consumer -> timed(metadataRequests, () -> consumer.send(new TopicMetadataRequest(topics)))
+                                .topicsMetadata());
+            } catch (RuntimeException ex) {
+                LOG.debug("Fetching metadata from broker {} failed", broker.connectionString(), ex);
+                lastError = ex;
+            }
+        }
+        if (lastError == null) {
+            throw new ServiceUnavailableException("No Kafka brokers available");
+        }
+        throw lastError;
+    }
+
+    private PartitionMetadata findPartition(String topic, int partition) {
+        for (PartitionMetadata partitionMetadata : fetchTopicMetadata(topic).partitionsMetadata()) {
+            if (partitionMetadata.partitionId() == partition) {
+                return partitionMetadata;
+            }
+        }
+        throw new UnknownTopicOrPartitionException("Partition does not exist: " + topic + "-" + partition);
+    }
+
+    private static Broker findLeader(String topic, PartitionMetadata partition) {
+        if (partition.leader() == null) {
+            ErrorMapping.maybeThrowException(partition.errorCode());
+            throw new LeaderNotAvailableException("No leader for partition " + topic + "-" + partition.partitionId());
+        }
+        return partition.leader();
+    }
+
+    private static List<Integer> brokerIds(List<Broker> brokers) {
+        List<Integer> ids = new ArrayList<>(brokers.size());
+        brokers.forEach(broker -> ids.add(broker.id()));
+        return ids;
+    }
+
+    private static String errorName(short errorCode) {
+        return ErrorMapping.exceptionFor(errorCode).getClass().getSimpleName();
+    }
+
+    private static <T> T timed(Timer timer, Supplier<T> request) {
+        TimerContext context = timer.time();
+        try {
+            return request.get();
+        } finally {
+            context.stop();
+        }
+    }
+
+    private static String decode(ByteBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+        return StandardCharsets.UTF_8.decode(buffer).toString();
+    }
+
+    private static byte[] copy(ByteBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static List<Broker> parseBrokers(String brokersUri) {
+        List<Broker> brokers = new ArrayList<>();
+        for (String broker : brokersUri.split(",")) {
+            String[] hostAndPort = broker.trim().split(":");
+            brokers.add(new Broker(-1, hostAndPort[0], Integer.parseInt(hostAndPort[1])));
         }
+        return brokers;
     }
 }
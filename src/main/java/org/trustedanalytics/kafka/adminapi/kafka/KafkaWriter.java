@@ -15,44 +15,296 @@
  */
 package org.trustedanalytics.kafka.adminapi.kafka;
 
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+import org.apache.kafka.clients.producer.BufferExhaustedException;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+import org.trustedanalytics.kafka.adminapi.exceptions.ServiceUnavailableException;
+import org.trustedanalytics.kafka.adminapi.exceptions.TooManyRequestsException;
+import org.trustedanalytics.kafka.adminapi.model.ImportResult;
+import org.trustedanalytics.kafka.adminapi.model.MessageRecord;
+import org.trustedanalytics.kafka.adminapi.model.RecordResult;
 
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Writes messages through a pool of producers, each with its own buffer, record accumulator and network thread,
+ * so that concurrent writes do not all serialize on a single producer.
+ * Messages are striped over the producers by topic and partition when the partition is given, otherwise
+ * by topic and key, so the messages of a partition or of a key always go through the same producer and keep
+ * their order. Messages with neither are spread over all producers in turn, as the producer spreads them
+ * over the partitions anyway, so a single busy topic is not limited to one producer.
+ */
 public class KafkaWriter {
 
     private static final Logger LOG = LoggerFactory.getLogger(KafkaWriter.class);
 
     private final String brokersUri;
-    private KafkaProducer<String, String> kafkaProducer;
+    private final Properties producerSettings;
+    private final int producerCount;
+    private final int maxInFlightMessages;
+
+    /**
+     * Limits the number of messages sent but not acknowledged yet.
+     * When it is exhausted requests are rejected instead of waiting for the producer.
+     */
+    private final Semaphore inFlightMessages;
+
+    private final TopicMeters topicMeters;
+    private final MetricsRegistry metrics;
+
+    private final List<KafkaProducer<byte[], byte[]>> kafkaProducers = new ArrayList<>();
 
-    public KafkaWriter(String brokersUri) {
+    // the producer of the next message without partition and key
+    private final AtomicInteger nextStripe = new AtomicInteger();
+
+    private Timer sendLatency;
+    private Meter sendErrors;
+    private final List<Meter> producerMessages = new ArrayList<>();
+
+    /**
+     * @param producerSettings Settings of every producer
+     * @param producerCount The number of producers
+     * @param topicMeters Messages and bytes written per topic
+     */
+    public KafkaWriter(String brokersUri, Properties producerSettings, int producerCount, int maxInFlightMessages,
+                       TopicMeters topicMeters, MetricsRegistry metrics) {
         this.brokersUri = brokersUri;
+        this.producerSettings = producerSettings;
+        this.producerCount = Math.max(1, producerCount);
+        this.maxInFlightMessages = maxInFlightMessages;
+        this.inFlightMessages = new Semaphore(maxInFlightMessages);
+        this.topicMeters = topicMeters;
+        this.metrics = metrics;
     }
 
     public void init() {
         LOG.debug("opening connection to Kafka");
         Properties producerConfig = new Properties();
+        producerConfig.putAll(producerSettings);
         producerConfig.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, brokersUri);
-        producerConfig.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
-        producerConfig.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.StringSerializer");
-        kafkaProducer = new KafkaProducer<>(producerConfig);
+        producerConfig.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.ByteArraySerializer");
+        producerConfig.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, "org.apache.kafka.common.serialization.ByteArraySerializer");
+        // fail fast instead of blocking a request thread when the buffer is full
+        producerConfig.put(ProducerConfig.BLOCK_ON_BUFFER_FULL_CONFIG, "false");
+        for (int i = 0; i < producerCount; i++) {
+            kafkaProducers.add(new KafkaProducer<>(producerConfig));
+            producerMessages.add(metrics.newMeter(KafkaWriter.class, "producerMessages", String.valueOf(i),
+                    "messages", TimeUnit.SECONDS));
+        }
+
+        // from handing a message to the producer until Kafka acknowledges it
+        sendLatency = metrics.newTimer(KafkaWriter.class, "sendLatency");
+        sendErrors = metrics.newMeter(KafkaWriter.class, "sendErrors", "messages", TimeUnit.SECONDS);
+        metrics.newGauge(KafkaWriter.class, "inFlightMessages", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return maxInFlightMessages - inFlightMessages.availablePermits();
+            }
+        });
     }
 
     public void destroy() {
-        kafkaProducer.close();
+        kafkaProducers.forEach(KafkaProducer::close);
         LOG.debug("closing connection to Kafka");
     }
 
-    public void writeMessage(String topic, String message) {
-        LOG.debug("sending message to Kafka: {}, {}", topic, message);
-        kafkaProducer.send(new ProducerRecord<>(topic, message));
-        LOG.debug("message sent");
+    /**
+     * @return A future completed with the partition and offset of the message once Kafka acknowledges it
+     */
+    public CompletableFuture<RecordResult> writeMessage(String topic, byte[] key, byte[] message) {
+        return writeMessage(topic, null, key, message);
     }
 
+    /**
+     * @param partition The partition or null to let the producer choose it
+     * @return A future completed with the partition and offset of the message once Kafka acknowledges it
+     */
+    public CompletableFuture<RecordResult> writeMessage(String topic, Integer partition, byte[] key, byte[] message) {
+        LOG.debug("sending message to Kafka: {}, {} bytes", topic, message.length);
+        acquireInFlight(1);
+        return send(new ProducerRecord<>(topic, partition, key, message));
+    }
+
+    /**
+     * Sends all records in one pass, so that the producer can batch them.
+     * A failure of one record does not stop the others, it is reported in its result.
+     */
+    public CompletableFuture<List<RecordResult>> writeMessages(String topic, List<MessageRecord> records) {
+        LOG.debug("sending {} messages to Kafka: {}", records.size(), topic);
+        if (records.size() > maxInFlightMessages) {
+            throw new BadRequestException("Too many messages in a single request, the limit is " + maxInFlightMessages);
+        }
+        acquireInFlight(records.size());
+
+        List<CompletableFuture<RecordResult>> futures = new ArrayList<>(records.size());
+        for (MessageRecord record : records) {
+            futures.add(send(new ProducerRecord<>(topic, record.getPartition(), toBytes(record.getKey()), toBytes(record.getValue())))
+                    .exceptionally(ex -> RecordResult.failure(ex.getMessage())));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                .thenApply(done -> {
+                    List<RecordResult> results = new ArrayList<>(futures.size());
+                    futures.forEach(future -> results.add(future.join()));
+                    return results;
+                });
+    }
+
+    /**
+     * Writes all messages of the reader, with at most maxInFlight of them waiting for acknowledgement at a time,
+     * so that a large import neither takes all in-flight permits nor fails on them.
+     * A failure of one message does not stop the others, failures are counted in the result.
+     * The import stops early on invalid input, when Kafka still has no room for a message after the own ones
+     * are acknowledged, or at the deadline; the result then tells where in the input it stopped, the messages
+     * sent before are still waited for and counted.
+     * @param keepPartitions Whether messages go to the partition they were exported from rather than one
+     *                       chosen by the producer
+     * @param timeoutMs Time after which no more messages are sent
+     */
+    public ImportResult importMessages(String topic, ChannelMessageReader messages, boolean keepPartitions,
+                                       int maxInFlight, long timeoutMs) {
+        LOG.debug("importing messages to Kafka: {}", topic);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        Semaphore window = new Semaphore(maxInFlight);
+        AtomicLong written = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        AtomicReference<String> firstError = new AtomicReference<>();
+        long sent = 0;
+        String stopError = null;
+        try {
+            while (messages.next()) {
+                if (System.nanoTime() - deadline > 0) {
+                    stopError = "Import did not finish within " + timeoutMs + " ms";
+                    break;
+                }
+                Integer partition = keepPartitions && messages.partition() >= 0 ? messages.partition() : null;
+                window.acquireUninterruptibly();
+                CompletableFuture<RecordResult> result;
+                try {
+                    result = writeMessage(topic, partition, messages.key(), messages.value());
+                } catch (TooManyRequestsException ex) {
+                    // other writes hold the in-flight messages, wait for the own ones and try once more
+                    window.release();
+                    window.acquireUninterruptibly(maxInFlight);
+                    window.release(maxInFlight - 1);
+                    try {
+                        result = writeMessage(topic, partition, messages.key(), messages.value());
+                    } catch (TooManyRequestsException retryEx) {
+                        window.release();
+                        stopError = retryEx.getMessage();
+                        break;
+                    }
+                }
+                sent++;
+                result.whenComplete((recordResult, throwable) -> {
+                    window.release();
+                    if (throwable == null) {
+                        written.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                        firstError.compareAndSet(null, throwable.getMessage());
+                    }
+                });
+            }
+        } catch (BadRequestException | UncheckedIOException ex) {
+            stopError = ex.getMessage();
+        }
+        // all acknowledged
+        window.acquireUninterruptibly(maxInFlight);
 
+        ImportResult result = new ImportResult();
+        result.setTopic(topic);
+        result.setMessages(written.get());
+        result.setFailed(failed.get());
+        if (stopError != null) {
+            LOG.info("import to {} stopped after {} messages: {}", topic, sent, stopError);
+            result.setStoppedAt(sent);
+            result.setError(stopError);
+        } else {
+            result.setError(firstError.get());
+        }
+        return result;
+    }
+
+    private static byte[] toBytes(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void acquireInFlight(int messages) {
+        if (!inFlightMessages.tryAcquire(messages)) {
+            throw new TooManyRequestsException("Too many messages waiting for Kafka acknowledgement");
+        }
+    }
+
+    private CompletableFuture<RecordResult> send(ProducerRecord<byte[], byte[]> record) {
+        CompletableFuture<RecordResult> result = new CompletableFuture<>();
+        int stripe = stripe(record);
+        producerMessages.get(stripe).mark();
+        TimerContext timer = sendLatency.time();
+        try {
+            kafkaProducers.get(stripe).send(record, (metadata, exception) -> {
+                inFlightMessages.release();
+                timer.stop();
+                if (exception != null) {
+                    LOG.debug("message not sent", exception);
+                    sendErrors.mark();
+                    result.completeExceptionally(exception);
+                } else {
+                    markWritten(record);
+                    result.complete(RecordResult.success(metadata.partition(), metadata.offset()));
+                }
+            });
+        } catch (BufferExhaustedException ex) {
+            inFlightMessages.release();
+            sendErrors.mark();
+            result.completeExceptionally(new ServiceUnavailableException("Kafka producer buffer is full"));
+        } catch (KafkaException | IllegalArgumentException ex) {
+            // e.g. a partition which does not exist, the callback is not called in this case
+            inFlightMessages.release();
+            sendErrors.mark();
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    private int stripe(ProducerRecord<byte[], byte[]> record) {
+        int hash;
+        if (record.partition() != null) {
+            hash = 31 * record.topic().hashCode() + record.partition();
+        } else if (record.key() != null) {
+            hash = 31 * record.topic().hashCode() + Arrays.hashCode(record.key());
+        } else {
+            hash = nextStripe.getAndIncrement();
+        }
+        return Math.floorMod(hash, producerCount);
+    }
+
+    private void markWritten(ProducerRecord<byte[], byte[]> record) {
+        int bytes = length(record.key()) + length(record.value());
+        topicMeters.mark(record.topic(), 1, bytes);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+
+/**
+ * The order in which the messages of partitions read in parallel are passed on.
+ */
+public enum MergeOrder {
+    /** all messages of a partition, then all of the next one, in the order of partition ids */
+    PARTITION,
+    /** interleaved, the lowest offset among the next messages of all partitions first */
+    OFFSET,
+    /** interleaved, in the order the fetches complete, which never waits for a slow partition */
+    ARRIVAL;
+
+    public static MergeOrder parse(String order) {
+        for (MergeOrder value : values()) {
+            if (value.name().equalsIgnoreCase(order)) {
+                return value;
+            }
+        }
+        throw new BadRequestException("Unknown order: " + order);
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.filter.FilteringParserDelegate;
+import com.fasterxml.jackson.core.filter.JsonPointerBasedFilter;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Selects and projects messages while they are fetched, so that messages which don't match are never
+ * decoded or buffered. All given conditions must match:
+ * <ul>
+ *     <li>contains - the value contains the UTF-8 bytes of the text, checked on the raw bytes</li>
+ *     <li>regex - the value, decoded as UTF-8, contains a match of the regular expression</li>
+ *     <li>field and value - the value is a JSON document with the given scalar value at the field path</li>
+ * </ul>
+ * The projection replaces a JSON value by an object of the requested field paths and their values.
+ * Field paths are JSON pointers (/a/b/0) or the simple JSONPath form ($.a.b[0] or a.b[0]).
+ * The scan budget limits how many messages and bytes a filtered read may examine. A regex may in addition look at
+ * the characters of a single message only so many times, a pattern which backtracks beyond it fails the read.
+ */
+public final class MessageFilter {
+
+    public static final MessageFilter NONE = new MessageFilter(null, null, null, null, Collections.emptyList(),
+            Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // characters a regex may look at per character of the value, but at least the minimum, before it is given up
+    private static final long REGEX_STEPS_PER_CHAR = 100;
+    private static final long REGEX_MIN_STEPS = 100_000;
+
+    private static final Pattern PATH_SEGMENT = Pattern.compile("\\.?([^.\\[\\]]+)|\\[(\\d+)]");
+
+    private final String contains;
+    private final String regex;
+    private final String field;
+    private final String value;
+    private final List<String> fields;
+    private final long maxScanMessages;
+    private final long maxScanBytes;
+
+    private final byte[] containsBytes;
+    private final Pattern pattern;
+    private final JsonPointer fieldPointer;
+    private final List<JsonPointer> fieldPointers;
+
+    private MessageFilter(String contains, String regex, String field, String value, List<String> fields,
+                          long maxScanMessages, long maxScanBytes) {
+        this.contains = contains;
+        this.regex = regex;
+        this.field = field;
+        this.value = value;
+        this.fields = fields;
+        this.maxScanMessages = maxScanMessages;
+        this.maxScanBytes = maxScanBytes;
+        this.containsBytes = contains == null ? null : contains.getBytes(StandardCharsets.UTF_8);
+        this.pattern = regex == null ? null : compileRegex(regex);
+        this.fieldPointer = field == null ? null : toPointer(field);
+        List<JsonPointer> pointers = new ArrayList<>(fields.size());
+        fields.forEach(path -> pointers.add(toPointer(path)));
+        this.fieldPointers = pointers;
+    }
+
+    /**
+     * @throws BadRequestException if the filter is not valid
+     */
+    public static MessageFilter of(String contains, String regex, String field, String value, List<String> fields,
+                                   long maxScanMessages, long maxScanBytes) {
+        if ((field == null) != (value == null)) {
+            throw new BadRequestException("Field and value must be given together");
+        }
+        if (maxScanMessages <= 0 || maxScanBytes <= 0) {
+            throw new BadRequestException("Scan limits must be larger than 0");
+        }
+        return new MessageFilter(contains, regex, field, value, fields == null ? Collections.emptyList() : fields,
+                maxScanMessages, maxScanBytes);
+    }
+
+    /**
+     * @return true if the filter neither selects nor projects messages
+     */
+    public boolean isEmpty() {
+        return !selects() && fieldPointers.isEmpty();
+    }
+
+    public boolean selects() {
+        return containsBytes != null || pattern != null || fieldPointer != null;
+    }
+
+    /**
+     * @return A budget for a single read
+     */
+    public ScanBudget newBudget() {
+        // unfiltered reads are limited by their own limits, as they always were
+        return selects() ? new ScanBudget(maxScanMessages, maxScanBytes) : new ScanBudget(Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    public boolean matches(ByteBuffer message) {
+        if (message == null) {
+            return !selects();
+        }
+        if (containsBytes != null && indexOf(message, containsBytes) < 0) {
+            return false;
+        }
+        if (pattern != null && !findPattern(StandardCharsets.UTF_8.decode(message.duplicate()))) {
+            return false;
+        }
+        return fieldPointer == null || value.equals(scalarAt(message, fieldPointer));
+    }
+
+    /**
+     * @return The projected message, or the message itself if there is no projection
+     */
+    public ByteBuffer project(ByteBuffer message) {
+        if (fieldPointers.isEmpty() || message == null) {
+            return message;
+        }
+        ByteArrayBuilder projected = new ByteArrayBuilder();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(projected)) {
+            generator.writeStartObject();
+            for (int i = 0; i < fieldPointers.size(); i++) {
+                try (JsonParser parser = filteringParser(message, fieldPointers.get(i))) {
+                    if (parser.nextToken() != null) {
+                        generator.writeFieldName(fields.get(i));
+                        generator.copyCurrentStructure(parser);
+                    }
+                } catch (IOException ex) {
+                    // not JSON, the field is just missing in the projection
+                }
+            }
+            generator.writeEndObject();
+        } catch (IOException ex) {
+            throw new IllegalStateException("Projection failed", ex);
+        }
+        return ByteBuffer.wrap(projected.toByteArray());
+    }
+
+    private static String scalarAt(ByteBuffer message, JsonPointer pointer) {
+        try (JsonParser parser = filteringParser(message, pointer)) {
+            JsonToken token = parser.nextToken();
+            if (token == null || !token.isScalarValue() || token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            return parser.getText();
+        } catch (IOException ex) {
+            // not JSON, so it does not match
+            return null;
+        }
+    }
+
+    private static JsonParser filteringParser(ByteBuffer message, JsonPointer pointer) throws IOException {
+        JsonParser parser;
+        if (message.hasArray()) {
+            parser = JSON_FACTORY.createParser(message.array(), message.arrayOffset() + message.position(),
+                    message.remaining());
+        } else {
+            byte[] bytes = new byte[message.remaining()];
+            message.duplicate().get(bytes);
+            parser = JSON_FACTORY.createParser(bytes);
+        }
+        // only the matching value is reported, the parser stops looking at the rest of the document once it is found
+        return new FilteringParserDelegate(parser, new JsonPointerBasedFilter(pointer), false, false);
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] bytes) {
+        int start = buffer.position();
+        int end = buffer.limit() - bytes.length;
+        outer:
+        for (int i = start; i <= end; i++) {
+            for (int j = 0; j < bytes.length; j++) {
+                if (buffer.get(i + j) != bytes[j]) {
+                    continue outer;
+                }
+            }
+            return i - start;
+        }
+        return -1;
+    }
+
+    private boolean findPattern(CharSequence text) {
+        long steps = Math.max(REGEX_MIN_STEPS, REGEX_STEPS_PER_CHAR * text.length());
+        try {
+            return pattern.matcher(new BoundedCharSequence(text, new long[]{steps})).find();
+        } catch (RegexBudgetExceededException ex) {
+            throw new BadRequestException("Regex " + regex + " takes too long to match a message of "
+                    + text.length() + " characters");
+        }
+    }
+
+    private static Pattern compileRegex(String regex) {
+        try {
+            return Pattern.compile(regex);
+        } catch (PatternSyntaxException ex) {
+            throw new BadRequestException("Invalid regex: " + ex.getMessage());
+        }
+    }
+
+    static JsonPointer toPointer(String path) {
+        try {
+            if (path.startsWith("/")) {
+                return JsonPointer.compile(path);
+            }
+            String expression = path.startsWith("$") ? path.substring(1) : path;
+            StringBuilder pointer = new StringBuilder();
+            Matcher segments = PATH_SEGMENT.matcher(expression);
+            int end = 0;
+            while (segments.find() && segments.start() == end) {
+                String segment = segments.group(1) != null ? segments.group(1) : segments.group(2);
+                pointer.append('/').append(segment.replace("~", "~0").replace("/", "~1"));
+                end = segments.end();
+            }
+            if (end != expression.length() || pointer.length() == 0) {
+                throw new IllegalArgumentException(path);
+            }
+            return JsonPointer.compile(pointer.toString());
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Invalid field path: " + path);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MessageFilter other = (MessageFilter) o;
+        return maxScanMessages == other.maxScanMessages
+                && maxScanBytes == other.maxScanBytes
+                && Objects.equals(contains, other.contains)
+                && Objects.equals(regex, other.regex)
+                && Objects.equals(field, other.field)
+                && Objects.equals(value, other.value)
+                && fields.equals(other.fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(contains, regex, field, value, fields, maxScanMessages, maxScanBytes);
+    }
+
+    @Override
+    public String toString() {
+        return "MessageFilter{" +
+                "contains='" + contains + '\'' +
+                ", regex='" + regex + '\'' +
+                ", field='" + field + '\'' +
+                ", value='" + value + '\'' +
+                ", fields=" + fields +
+                ", maxScanMessages=" + maxScanMessages +
+                ", maxScanBytes=" + maxScanBytes +
+                '}';
+    }
+
+    /**
+     * Counts every character the regex engine looks at and stops it when the shared budget runs out,
+     * so that a backtracking pattern cannot hold a read thread for long.
+     */
+    private static final class BoundedCharSequence implements CharSequence {
+        private final CharSequence text;
+        private final long[] steps;
+
+        BoundedCharSequence(CharSequence text, long[] steps) {
+            this.text = text;
+            this.steps = steps;
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (--steps[0] < 0) {
+                throw new RegexBudgetExceededException();
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new BoundedCharSequence(text.subSequence(start, end), steps);
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+
+    private static final class RegexBudgetExceededException extends RuntimeException {
+        RegexBudgetExceededException() {
+            // thrown in a tight loop, the stack trace is of no use
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives messages one by one, as soon as the reader fetches them.
+ * The buffers point directly into the fetched data, they are only valid during the call
+ * and must be copied if the message is kept.
+ */
+@FunctionalInterface
+public interface MessageHandler {
+
+    /**
+     * @param partition The partition the message was read from
+     * @param offset The offset of the message
+     * @param key The message key or null if the message has no key
+     * @param value The message value or null if the value is null
+     * @return true to continue reading, false to stop
+     */
+    boolean onMessage(int partition, long offset, ByteBuffer key, ByteBuffer value);
+}
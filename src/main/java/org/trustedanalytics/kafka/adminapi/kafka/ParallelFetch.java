@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import kafka.message.MessageAndOffset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Fetches the partitions of a topic in parallel and passes their messages to a single reading thread
+ * in the requested {@link MergeOrder}.
+ * Every partition being read keeps one fetch running ahead of the reader, so the reader only waits for
+ * a partition it has caught up with. Up to parallelism fetches run at a time in every order.
+ * Offset order has to know the next message of every partition: all partitions are fetched once to start with,
+ * parallelism at a time, after that a partition is fetched again only when the reader has passed on its messages.
+ * Every fetch reserves the fetch size from the memory lease of the read and holds the size of its response
+ * until its messages are passed on. A fetch ahead which does not fit is skipped, a fetch the reader waits for
+ * which does not fit ends the read, see {@link #isExhausted()}.
+ * Not thread safe, it is used by the reading thread only.
+ */
+class ParallelFetch implements AutoCloseable {
+
+    /**
+     * Fetches the next messages of a partition. An empty chunk means that there are no more messages.
+     */
+    @FunctionalInterface
+    interface ChunkFetcher {
+        Chunk fetch(int partition, long offset, long endOffset);
+    }
+
+    /**
+     * The messages of a single fetch response, within the requested range.
+     */
+    static final class Chunk {
+        final List<MessageAndOffset> messages;
+        final long nextOffset;
+        // the size of the whole response, which the messages point into
+        final int bytes;
+
+        Chunk(List<MessageAndOffset> messages, long nextOffset, int bytes) {
+            this.messages = messages;
+            this.nextOffset = nextOffset;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Offsets of a partition to read, from offset up to endOffset (exclusive).
+     */
+    static final class Range {
+        final int partition;
+        final long offset;
+        final long endOffset;
+
+        Range(int partition, long offset, long endOffset) {
+            this.partition = partition;
+            this.offset = offset;
+            this.endOffset = endOffset;
+        }
+    }
+
+    private final List<Range> ranges;
+    private final ChunkFetcher fetcher;
+    private final Executor executor;
+    private final MergeOrder order;
+    private final int parallelism;
+    private final ReadMemory.Lease memory;
+    private final int fetchBytes;
+
+    private final List<Cursor> cursors = new ArrayList<>();
+
+    // partition order: the cursor being read; arrival order: the next cursor to start
+    private int cursorIndex;
+    // arrival order: partitions started and not finished yet
+    private int activeCursors;
+    private final BlockingQueue<Cursor> fetched = new LinkedBlockingQueue<>();
+    // offset order: partitions by their next message
+    private final PriorityQueue<Cursor> byOffset = new PriorityQueue<>(
+            Comparator.<Cursor>comparingLong(cursor -> cursor.head.offset()).thenComparingInt(cursor -> cursor.partition));
+
+    private Cursor current;
+    private boolean started;
+    private boolean exhausted;
+
+    /**
+     * @param ranges The partitions to read, in the order of partition ids
+     * @param fetchBytes Max size of a fetch response, reserved before every fetch
+     */
+    ParallelFetch(List<Range> ranges, ChunkFetcher fetcher, Executor executor, MergeOrder order, int parallelism,
+                  ReadMemory.Lease memory, int fetchBytes) {
+        this.ranges = ranges;
+        this.fetcher = fetcher;
+        this.executor = executor;
+        this.order = order;
+        this.parallelism = Math.max(1, parallelism);
+        this.memory = memory;
+        this.fetchBytes = fetchBytes;
+        for (Range range : ranges) {
+            if (range.offset < range.endOffset) {
+                cursors.add(new Cursor(range));
+            }
+        }
+    }
+
+    /**
+     * Moves to the next message, waiting for it to be fetched if needed.
+     * @return false when all partitions are read or the memory of the read is exhausted
+     */
+    boolean next() {
+        if (!started) {
+            started = true;
+            start();
+        }
+        if (exhausted) {
+            return false;
+        }
+        switch (order) {
+            case OFFSET:
+                return nextByOffset();
+            case ARRIVAL:
+                return nextArrived();
+            default:
+                return nextByPartition();
+        }
+    }
+
+    int partition() {
+        return current.partition;
+    }
+
+    MessageAndOffset message() {
+        return current.head;
+    }
+
+    /**
+     * @return Whether the read ended early, because a fetch did not fit into the memory of the read
+     */
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    List<Range> ranges() {
+        return ranges;
+    }
+
+    private void start() {
+        if (order == MergeOrder.ARRIVAL) {
+            startArrivals();
+            return;
+        }
+        for (int i = 0; i < Math.min(parallelism, cursors.size()); i++) {
+            cursors.get(i).fetchAhead();
+        }
+        if (order == MergeOrder.OFFSET) {
+            startByOffset();
+        }
+    }
+
+    /**
+     * Waits for the first messages of every partition, the next partition starts when one of the first fetches is done.
+     */
+    private void startByOffset() {
+        for (int i = 0; i < cursors.size(); i++) {
+            Cursor cursor = cursors.get(i);
+            if (cursor.advance()) {
+                byOffset.add(cursor);
+            } else if (exhausted) {
+                return;
+            }
+            if (i + parallelism < cursors.size()) {
+                cursors.get(i + parallelism).fetchAhead();
+            }
+        }
+    }
+
+    private boolean nextByPartition() {
+        while (cursorIndex < cursors.size()) {
+            current = cursors.get(cursorIndex);
+            current.fetchAhead();
+            if (current.advance()) {
+                return true;
+            }
+            if (exhausted) {
+                return false;
+            }
+            // the partition is done, the next one not fetched yet starts
+            cursorIndex++;
+            if (cursorIndex + parallelism - 1 < cursors.size()) {
+                cursors.get(cursorIndex + parallelism - 1).fetchAhead();
+            }
+        }
+        return false;
+    }
+
+    private boolean nextByOffset() {
+        if (current != null && current.advance()) {
+            byOffset.add(current);
+        }
+        if (exhausted) {
+            return false;
+        }
+        current = byOffset.poll();
+        return current != null;
+    }
+
+    private boolean nextArrived() {
+        while (true) {
+            if (current != null) {
+                if (current.messages.hasNext()) {
+                    current.head = current.messages.next();
+                    return true;
+                }
+                current.releaseChunk();
+                if (current.pending == null && !current.fetchNeeded()) {
+                    if (exhausted) {
+                        return false;
+                    }
+                    // the partition is done, the next ones not fetched yet start
+                    activeCursors--;
+                    startArrivals();
+                    if (exhausted) {
+                        return false;
+                    }
+                }
+                // otherwise it is queued again once its fetch completes
+                current = null;
+            }
+            if (activeCursors == 0) {
+                return false;
+            }
+            current = takeFetched();
+            current.awaitChunk();
+        }
+    }
+
+    /**
+     * Starts partitions up to parallelism, as far as their fetches fit into memory.
+     * A partition which does not fit waits until a running one is done and releases its memory.
+     */
+    private void startArrivals() {
+        while (cursorIndex < cursors.size() && activeCursors < parallelism) {
+            Cursor cursor = cursors.get(cursorIndex);
+            cursor.fetchAhead();
+            if (cursor.pending == null) {
+                // with nothing running no memory is going to be released
+                exhausted = activeCursors == 0;
+                return;
+            }
+            cursorIndex++;
+            activeCursors++;
+        }
+    }
+
+    private Cursor takeFetched() {
+        try {
+            return fetched.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a fetch", ex);
+        }
+    }
+
+    /**
+     * Fetches which are still running are not interrupted, their results are just dropped.
+     */
+    @Override
+    public void close() {
+        for (Cursor cursor : cursors) {
+            if (cursor.pending != null) {
+                cursor.pending.cancel(false);
+                cursor.pending = null;
+            }
+            cursor.messages = Collections.emptyIterator();
+        }
+        fetched.clear();
+    }
+
+    private final class Cursor {
+
+        private final int partition;
+        private final long endOffset;
+
+        // where the next fetch starts
+        private long fetchOffset;
+        private CompletableFuture<Chunk> pending;
+        private Iterator<MessageAndOffset> messages = Collections.emptyIterator();
+        private MessageAndOffset head;
+        // reserved for the pending fetch and held by the chunk being read
+        private int pendingBytes;
+        private int chunkBytes;
+
+        Cursor(Range range) {
+            this.partition = range.partition;
+            this.fetchOffset = range.offset;
+            this.endOffset = range.endOffset;
+        }
+
+        /**
+         * Starts the next fetch unless one is running, the partition is done or the fetch does not fit into memory.
+         */
+        void fetchAhead() {
+            if (pending != null || fetchOffset >= endOffset || !memory.tryReserve(fetchBytes)) {
+                return;
+            }
+            pendingBytes = fetchBytes;
+            long offset = fetchOffset;
+            pending = CompletableFuture.supplyAsync(() -> fetcher.fetch(partition, offset, endOffset), executor);
+            if (order == MergeOrder.ARRIVAL) {
+                pending.whenComplete((chunk, throwable) -> fetched.add(this));
+            }
+        }
+
+        /**
+         * Moves to the messages of the fetch ahead, waiting for it if needed, and starts the next one
+         * unless the order is offset order, whose partitions are fetched only when they run out of messages.
+         */
+        void awaitChunk() {
+            Chunk chunk;
+            try {
+                chunk = pending.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw ex;
+            }
+            pending = null;
+            memory.release(pendingBytes - chunk.bytes);
+            chunkBytes = Math.min(chunk.bytes, pendingBytes);
+            pendingBytes = 0;
+            messages = chunk.messages.iterator();
+            fetchOffset = chunk.messages.isEmpty() ? endOffset : chunk.nextOffset;
+            if (order != MergeOrder.OFFSET) {
+                fetchAhead();
+            }
+        }
+
+        /**
+         * @return false when the partition is done or the fetch it waits for does not fit into memory
+         */
+        boolean advance() {
+            while (!messages.hasNext()) {
+                releaseChunk();
+                if (pending == null && !fetchNeeded()) {
+                    head = null;
+                    return false;
+                }
+                awaitChunk();
+            }
+            head = messages.next();
+            return true;
+        }
+
+        /**
+         * Starts a fetch the reader is about to wait for, the fetch ahead may have been skipped for lack of memory.
+         * @return false when the partition is done or the fetch does not fit
+         */
+        boolean fetchNeeded() {
+            if (fetchOffset >= endOffset) {
+                return false;
+            }
+            fetchAhead();
+            if (pending == null) {
+                exhausted = true;
+                return false;
+            }
+            return true;
+        }
+
+        void releaseChunk() {
+            memory.release(chunkBytes);
+            chunkBytes = 0;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the bytes held by reads: fetch responses not passed on yet and messages collected for a response.
+ * Every read takes a {@link Lease} with its own limit, all leases together share a global limit.
+ * Reservations never wait, a read which cannot reserve more memory ends early instead.
+ */
+public class ReadMemory {
+
+    private final long maxBytes;
+    private final long maxRequestBytes;
+
+    private final AtomicLong heldBytes = new AtomicLong();
+
+    private final Meter requestExhausted;
+    private final Meter globalExhausted;
+
+    /**
+     * @param maxBytes Max bytes held by all reads together
+     * @param maxRequestBytes Max bytes held by a single read
+     */
+    public ReadMemory(long maxBytes, long maxRequestBytes, MetricsRegistry metrics) {
+        this.maxBytes = maxBytes;
+        this.maxRequestBytes = maxRequestBytes;
+        this.requestExhausted = metrics.newMeter(ReadMemory.class, "exhausted", "request", "reads", TimeUnit.SECONDS);
+        this.globalExhausted = metrics.newMeter(ReadMemory.class, "exhausted", "global", "reads", TimeUnit.SECONDS);
+        metrics.newGauge(ReadMemory.class, "heldBytes", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return heldBytes.get();
+            }
+        });
+    }
+
+    public long getMaxRequestBytes() {
+        return maxRequestBytes;
+    }
+
+    public Lease lease() {
+        return new Lease();
+    }
+
+    private boolean tryReserve(long bytes) {
+        while (true) {
+            long held = heldBytes.get();
+            if (held + bytes > maxBytes) {
+                return false;
+            }
+            if (heldBytes.compareAndSet(held, held + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * The memory held by a single read. It is reserved by one read thread at a time.
+     * A result which keeps its messages after the read, e.g. until it is written to the client or while it is cached,
+     * keeps the lease as well: every holder takes a reference with {@link #retain()} and closes it when done,
+     * closing the last reference releases whatever the read still holds.
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private long held;
+        private boolean exhausted;
+
+        private Lease() {
+        }
+
+        /**
+         * Takes another reference to the memory, for a holder which closes it on its own.
+         * @return false if the lease is closed already, its memory is then no longer accounted for
+         */
+        public boolean retain() {
+            while (true) {
+                int current = references.get();
+                if (current <= 0) {
+                    return false;
+                }
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return false if the bytes fit neither into the limit of the read nor into the global one
+         */
+        public synchronized boolean tryReserve(long bytes) {
+            if (held + bytes > maxRequestBytes) {
+                markExhausted(requestExhausted);
+                return false;
+            }
+            if (!ReadMemory.this.tryReserve(bytes)) {
+                markExhausted(globalExhausted);
+                return false;
+            }
+            held += bytes;
+            return true;
+        }
+
+        public synchronized void release(long bytes) {
+            long released = Math.min(bytes, held);
+            held -= released;
+            heldBytes.addAndGet(-released);
+        }
+
+        /**
+         * @return Whether a reservation of the read was rejected
+         */
+        public boolean isExhausted() {
+            return exhausted;
+        }
+
+        private void markExhausted(Meter meter) {
+            if (!exhausted) {
+                exhausted = true;
+                meter.mark();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (references.decrementAndGet() == 0) {
+                release(held);
+            }
+        }
+    }
+}
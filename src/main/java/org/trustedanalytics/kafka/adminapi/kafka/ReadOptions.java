@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * How a whole topic is read: the order of messages across partitions, limits of the whole read
+ * and the offsets to start from.
+ * Limits count messages passed on after filtering and the bytes of their (projected) values,
+ * the first message is passed on even when it is larger than maxBytes.
+ */
+public final class ReadOptions {
+
+    public static final ReadOptions DEFAULT = new ReadOptions(MergeOrder.PARTITION, Long.MAX_VALUE, Long.MAX_VALUE,
+            Collections.emptySortedMap());
+
+    private final MergeOrder order;
+    private final long maxMessages;
+    private final long maxBytes;
+    private final SortedMap<Integer, Long> startOffsets;
+
+    private ReadOptions(MergeOrder order, long maxMessages, long maxBytes, SortedMap<Integer, Long> startOffsets) {
+        this.order = order;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.startOffsets = startOffsets;
+    }
+
+    public static ReadOptions of(MergeOrder order, Long maxMessages, Long maxBytes) {
+        return of(order, maxMessages, maxBytes, null);
+    }
+
+    /**
+     * @param maxMessages Max messages read, no limit if null
+     * @param maxBytes Max bytes read, no limit if null
+     * @param from Offsets to start from in the format of {@link ReadResult#getContinuation()},
+     *             partitions which are not listed start at their earliest offset
+     */
+    public static ReadOptions of(MergeOrder order, Long maxMessages, Long maxBytes, String from) {
+        if (maxMessages != null && maxMessages <= 0) {
+            throw new BadRequestException("Max messages must be positive");
+        }
+        if (maxBytes != null && maxBytes <= 0) {
+            throw new BadRequestException("Max bytes must be positive");
+        }
+        return new ReadOptions(order,
+                maxMessages == null ? Long.MAX_VALUE : maxMessages,
+                maxBytes == null ? Long.MAX_VALUE : maxBytes,
+                from == null ? Collections.emptySortedMap() : parseOffsets(from));
+    }
+
+    /**
+     * Parses partition offsets formatted as partition:offset pairs separated by commas, e.g. 0:120,1:98.
+     */
+    static SortedMap<Integer, Long> parseOffsets(String offsets) {
+        SortedMap<Integer, Long> parsed = new TreeMap<>();
+        for (String pair : offsets.split(",")) {
+            String[] parts = pair.trim().split(":");
+            try {
+                if (parts.length != 2 || parsed.put(Integer.valueOf(parts[0]), Long.valueOf(parts[1])) != null) {
+                    throw new NumberFormatException();
+                }
+            } catch (NumberFormatException ex) {
+                throw new BadRequestException("Invalid offsets: " + offsets
+                        + ", expected partition:offset pairs separated by commas");
+            }
+        }
+        return Collections.unmodifiableSortedMap(parsed);
+    }
+
+    static String formatOffsets(Map<Integer, Long> offsets) {
+        StringBuilder formatted = new StringBuilder();
+        offsets.forEach((partition, offset) -> {
+            if (formatted.length() > 0) {
+                formatted.append(',');
+            }
+            formatted.append(partition).append(':').append(offset);
+        });
+        return formatted.toString();
+    }
+
+    public MergeOrder getOrder() {
+        return order;
+    }
+
+    public long getMaxMessages() {
+        return maxMessages;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return The offsets to start from by partition, partitions missing from it start at their earliest offset
+     */
+    public SortedMap<Integer, Long> getStartOffsets() {
+        return startOffsets;
+    }
+
+    /**
+     * @return The same options with at most maxMessages messages
+     */
+    public ReadOptions limitMessages(long maxMessages) {
+        return maxMessages < this.maxMessages ? new ReadOptions(order, maxMessages, maxBytes, startOffsets) : this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ReadOptions other = (ReadOptions) o;
+        return maxMessages == other.maxMessages
+                && maxBytes == other.maxBytes
+                && order == other.order
+                && startOffsets.equals(other.startOffsets);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(order, maxMessages, maxBytes, startOffsets);
+    }
+
+    @Override
+    public String toString() {
+        return "ReadOptions{" +
+                "order=" + order +
+                ", maxMessages=" + maxMessages +
+                ", maxBytes=" + maxBytes +
+                ", startOffsets=" + startOffsets +
+                '}';
+    }
+}
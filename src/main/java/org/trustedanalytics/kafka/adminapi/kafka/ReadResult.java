@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import java.util.Collections;
+import java.util.SortedMap;
+
+/**
+ * How far a whole topic read got. A read is truncated when it ended before the latest offset of some partition,
+ * because of a limit of the read, its scan budget or its memory.
+ */
+public final class ReadResult {
+
+    private final boolean truncated;
+    private final SortedMap<Integer, Long> nextOffsets;
+
+    ReadResult(boolean truncated, SortedMap<Integer, Long> nextOffsets) {
+        this.truncated = truncated;
+        this.nextOffsets = Collections.unmodifiableSortedMap(nextOffsets);
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return The offset of the first message which was not passed on, by partition
+     */
+    public SortedMap<Integer, Long> getNextOffsets() {
+        return nextOffsets;
+    }
+
+    /**
+     * @return The next offsets as partition:offset pairs separated by commas, e.g. 0:120,1:98,
+     *         which continue the read when passed as the start offsets of {@link ReadOptions}
+     */
+    public String getContinuation() {
+        return ReadOptions.formatOffsets(nextOffsets);
+    }
+
+    @Override
+    public String toString() {
+        return "ReadResult{" +
+                "truncated=" + truncated +
+                ", nextOffsets=" + nextOffsets +
+                '}';
+    }
+}
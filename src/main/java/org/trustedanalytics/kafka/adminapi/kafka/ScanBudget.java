@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+/**
+ * Counts the messages and bytes a single read examines. It is used by one read thread at a time.
+ */
+public class ScanBudget {
+
+    private final long maxMessages;
+    private final long maxBytes;
+
+    private long messages;
+    private long bytes;
+
+    ScanBudget(long maxMessages, long maxBytes) {
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Accounts for a message about to be examined. The first message is always allowed, so that reads make progress.
+     * @return false if the message does not fit into the budget any more
+     */
+    public boolean tryConsume(int size) {
+        if (messages > 0 && (messages >= maxMessages || bytes + size > maxBytes)) {
+            return false;
+        }
+        messages++;
+        bytes += size;
+        return true;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import kafka.javaapi.consumer.SimpleConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.kafka.adminapi.exceptions.ServiceUnavailableException;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Keeps warm {@link SimpleConsumer} connections to Kafka brokers.
+ * Simple consumers talk to a broker directly, so reading a topic needs neither a consumer group
+ * registration in Zookeeper nor a rebalance. Connections are bounded per broker and closed
+ * after staying idle for longer than the configured timeout.
+ */
+public class SimpleConsumerPool {
+
+    public static final String CLIENT_ID = "kafka-admin-api";
+
+    private static final Logger LOG = LoggerFactory.getLogger(SimpleConsumerPool.class);
+
+    private final int maxPerBroker;
+    private final long maxWaitMs;
+    private final long idleTimeoutMs;
+    private final int socketTimeoutMs;
+    private final int bufferSize;
+
+    private final ConcurrentMap<String, BrokerPool> pools = new ConcurrentHashMap<>();
+
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter waits;
+    private final Meter timeouts;
+    private final Meter evictions;
+
+    private ScheduledExecutorService evictor;
+
+    public SimpleConsumerPool(int maxPerBroker, long maxWaitMs, long idleTimeoutMs, int socketTimeoutMs,
+                              int bufferSize, MetricsRegistry metrics) {
+        this.maxPerBroker = maxPerBroker;
+        this.maxWaitMs = maxWaitMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.socketTimeoutMs = socketTimeoutMs;
+        this.bufferSize = bufferSize;
+
+        hits = metrics.newMeter(SimpleConsumerPool.class, "hits", "borrows", TimeUnit.SECONDS);
+        misses = metrics.newMeter(SimpleConsumerPool.class, "misses", "borrows", TimeUnit.SECONDS);
+        waits = metrics.newMeter(SimpleConsumerPool.class, "waits", "borrows", TimeUnit.SECONDS);
+        timeouts = metrics.newMeter(SimpleConsumerPool.class, "timeouts", "borrows", TimeUnit.SECONDS);
+        evictions = metrics.newMeter(SimpleConsumerPool.class, "evictions", "consumers", TimeUnit.SECONDS);
+        metrics.newGauge(SimpleConsumerPool.class, "idle", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return pools.values().stream().mapToInt(pool -> pool.idle.size()).sum();
+            }
+        });
+        metrics.newGauge(SimpleConsumerPool.class, "active", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return pools.values().stream().mapToInt(pool -> maxPerBroker - pool.permits.availablePermits()).sum();
+            }
+        });
+    }
+
+    public void init() {
+        LOG.debug("starting idle consumer evictor");
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "simple-consumer-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(idleTimeoutMs / 2, 1);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void destroy() {
+        LOG.debug("closing pooled consumers");
+        evictor.shutdownNow();
+        pools.values().forEach(pool -> {
+            PooledConsumer pooled;
+            while ((pooled = pool.idle.pollFirst()) != null) {
+                close(pooled.consumer);
+            }
+        });
+    }
+
+    /**
+     * Runs the action with a consumer connected to the given broker.
+     * The consumer goes back to the pool when the action succeeds. When the action fails
+     * the connection state is unknown, so the consumer is closed instead of being reused.
+     */
+    public <T> T withConsumer(String host, int port, Function<SimpleConsumer, T> action) {
+        BrokerPool pool = pools.computeIfAbsent(host + ":" + port, key -> new BrokerPool(host, port));
+        SimpleConsumer consumer = pool.borrow();
+        T result;
+        try {
+            result = action.apply(consumer);
+        } catch (RuntimeException ex) {
+            pool.invalidate(consumer);
+            throw ex;
+        }
+        pool.release(consumer);
+        return result;
+    }
+
+    private void evictIdle() {
+        long expiry = System.currentTimeMillis() - idleTimeoutMs;
+        pools.values().forEach(pool -> {
+            // the oldest consumers are at the tail, since released ones are pushed to the head
+            Iterator<PooledConsumer> iterator = pool.idle.descendingIterator();
+            while (iterator.hasNext()) {
+                PooledConsumer pooled = iterator.next();
+                if (pooled.lastUsed < expiry && pool.idle.removeLastOccurrence(pooled)) {
+                    LOG.debug("evicting idle consumer for {}:{}", pool.host, pool.port);
+                    close(pooled.consumer);
+                    evictions.mark();
+                }
+            }
+        });
+    }
+
+    private static void close(SimpleConsumer consumer) {
+        try {
+            consumer.close();
+        } catch (Exception ex) {
+            LOG.debug("Error during Kafka connection shutdown. Ignoring.", ex);
+        }
+    }
+
+    private static class PooledConsumer {
+        private final SimpleConsumer consumer;
+        private final long lastUsed;
+
+        PooledConsumer(SimpleConsumer consumer) {
+            this.consumer = consumer;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    private class BrokerPool {
+        private final String host;
+        private final int port;
+        private final Semaphore permits = new Semaphore(maxPerBroker);
+        private final Deque<PooledConsumer> idle = new ConcurrentLinkedDeque<>();
+
+        BrokerPool(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        SimpleConsumer borrow() {
+            if (!permits.tryAcquire()) {
+                waits.mark();
+                try {
+                    if (!permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                        timeouts.mark();
+                        throw new ServiceUnavailableException("No free connection to Kafka broker " + host + ":" + port);
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new ServiceUnavailableException("Interrupted while waiting for Kafka broker " + host + ":" + port);
+                }
+            }
+            PooledConsumer pooled = idle.pollFirst();
+            if (pooled != null) {
+                hits.mark();
+                return pooled.consumer;
+            }
+            misses.mark();
+            LOG.debug("opening connection to Kafka broker {}:{}", host, port);
+            return new SimpleConsumer(host, port, socketTimeoutMs, bufferSize, CLIENT_ID);
+        }
+
+        void release(SimpleConsumer consumer) {
+            idle.offerFirst(new PooledConsumer(consumer));
+            permits.release();
+        }
+
+        void invalidate(SimpleConsumer consumer) {
+            close(consumer);
+            permits.release();
+        }
+    }
+}
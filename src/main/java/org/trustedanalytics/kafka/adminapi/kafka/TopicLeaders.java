@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import kafka.cluster.Broker;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The partitions of a single topic grouped by their leader brokers, kept by a caller which fetches the topic
+ * over and over, e.g. a live tail, so that it does not send a metadata request before every fetch.
+ * They are looked up again after a failed fetch, e.g. because a leader moved, and after {@link #MAX_AGE_MS},
+ * so that partitions added to the topic are picked up.
+ * Not thread safe, it is used by a single fetching thread.
+ */
+public final class TopicLeaders {
+
+    static final long MAX_AGE_MS = 30_000;
+
+    private Map<Broker, List<Integer>> partitionsByLeader;
+    private long loadedAt;
+
+    Map<Broker, List<Integer>> get(Supplier<Map<Broker, List<Integer>>> loader) {
+        long now = System.currentTimeMillis();
+        if (partitionsByLeader == null || now - loadedAt > MAX_AGE_MS) {
+            partitionsByLeader = loader.get();
+            loadedAt = now;
+        }
+        return partitionsByLeader;
+    }
+
+    void invalidate() {
+        partitionsByLeader = null;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages and bytes meters per topic, with the topic as the scope. To keep the number of metrics bounded,
+ * only the allowed topics get their own meters, or without an allow-list the first maxTopics topics seen.
+ * The other topics are counted together under the {@link #OTHER_TOPICS} scope.
+ * The meters of a topic are removed when the topic is deleted.
+ */
+public class TopicMeters {
+
+    // not a valid topic name, so it cannot clash with a topic
+    public static final String OTHER_TOPICS = "(other)";
+
+    private final Class<?> owner;
+    private final Set<String> allowedTopics;
+    private final int maxTopics;
+    private final MetricsRegistry metrics;
+
+    private final ConcurrentMap<String, Meter[]> meters = new ConcurrentHashMap<>();
+    private final Meter[] otherMeters;
+
+    /**
+     * @param owner The class the meters are registered for
+     * @param allowedTopics The topics which get their own meters, empty to let the first maxTopics topics have them
+     * @param maxTopics Max topics with their own meters when there is no allow-list
+     */
+    public TopicMeters(Class<?> owner, Set<String> allowedTopics, int maxTopics, MetricsRegistry metrics) {
+        this.owner = owner;
+        this.allowedTopics = allowedTopics;
+        this.maxTopics = maxTopics;
+        this.metrics = metrics;
+        this.otherMeters = newMeters(OTHER_TOPICS);
+    }
+
+    public void mark(String topic, long messages, long bytes) {
+        Meter[] topicMeters = meters.get(topic);
+        if (topicMeters == null) {
+            topicMeters = register(topic);
+        }
+        topicMeters[0].mark(messages);
+        topicMeters[1].mark(bytes);
+    }
+
+    /**
+     * Unregisters the meters of a deleted topic, which frees its place for another topic.
+     */
+    public synchronized void remove(String topic) {
+        if (meters.remove(topic) != null) {
+            metrics.removeMetric(owner, "messages", topic);
+            metrics.removeMetric(owner, "bytes", topic);
+        }
+    }
+
+    private synchronized Meter[] register(String topic) {
+        Meter[] topicMeters = meters.get(topic);
+        if (topicMeters != null) {
+            return topicMeters;
+        }
+        boolean own = allowedTopics.isEmpty() ? meters.size() < maxTopics : allowedTopics.contains(topic);
+        if (!own) {
+            return otherMeters;
+        }
+        topicMeters = newMeters(topic);
+        meters.put(topic, topicMeters);
+        return topicMeters;
+    }
+
+    private Meter[] newMeters(String scope) {
+        return new Meter[] {
+                metrics.newMeter(owner, "messages", scope, "messages", TimeUnit.SECONDS),
+                metrics.newMeter(owner, "bytes", scope, "bytes", TimeUnit.SECONDS)};
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.kafka.adminapi.model.RecordResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Collects single message writes to a topic which arrive within lingerMs of each other and hands them
+ * to the writer in one pass from a single thread, instead of every request thread contending for the producer.
+ * A batch is sent lingerMs after its first message or as soon as it holds maxMessages.
+ * Every message still gets its own result, with lingerMs 0 messages are written right away.
+ * The producer may block a send while it waits for the metadata of a topic, so batches are sent by a pool
+ * of sender threads rather than by the thread which closes them, one batch of a topic at a time:
+ * a topic whose sends block holds at most one sender thread and its batches keep their order.
+ */
+public class WriteBatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBatcher.class);
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private final KafkaWriter writer;
+    private final long lingerMs;
+    private final int maxMessages;
+    private final int threads;
+    private final MetricsRegistry metrics;
+
+    private final ConcurrentMap<String, Batch> openBatches = new ConcurrentHashMap<>();
+
+    // the last batch handed to the senders of every topic, the next one is sent after it
+    private final ConcurrentMap<String, CompletableFuture<Void>> sendingBatches = new ConcurrentHashMap<>();
+
+    // closes batches once they have waited lingerMs
+    private ScheduledExecutorService flusher;
+    private ExecutorService senders;
+
+    private Histogram batchSizes;
+    private Timer queueTime;
+
+    /**
+     * @param lingerMs How long a batch waits for more messages, 0 disables batching
+     * @param maxMessages Max messages in a batch
+     * @param threads Number of threads sending batches
+     */
+    public WriteBatcher(KafkaWriter writer, long lingerMs, int maxMessages, int threads, MetricsRegistry metrics) {
+        this.writer = writer;
+        this.lingerMs = lingerMs;
+        this.maxMessages = maxMessages;
+        this.threads = threads;
+        this.metrics = metrics;
+    }
+
+    public void init() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "write-batch-sender-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        batchSizes = metrics.newHistogram(WriteBatcher.class, "batchSize", true);
+        // from the arrival of a message until its batch is handed to the writer
+        queueTime = metrics.newTimer(WriteBatcher.class, "queueTime");
+        metrics.newGauge(WriteBatcher.class, "openBatches", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return openBatches.size();
+            }
+        });
+        metrics.newGauge(WriteBatcher.class, "sendingTopics", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return sendingBatches.size();
+            }
+        });
+    }
+
+    /**
+     * Sends what is collected so far and waits a while for the batches being sent.
+     */
+    public void destroy() {
+        LOG.debug("sending {} open batches", openBatches.size());
+        flusher.shutdownNow();
+        openBatches.values().forEach(this::send);
+        senders.shutdown();
+        try {
+            if (!senders.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOG.warn("{} topics still sending batches at shutdown", sendingBatches.size());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return A future completed with the partition and offset of the message once Kafka acknowledges it
+     */
+    public CompletableFuture<RecordResult> writeMessage(String topic, byte[] key, byte[] message) {
+        if (lingerMs <= 0) {
+            return writer.writeMessage(topic, key, message);
+        }
+        PendingWrite write = new PendingWrite(key, message);
+        while (true) {
+            Batch batch = openBatches.get(topic);
+            if (batch == null) {
+                Batch created = new Batch(topic);
+                batch = openBatches.putIfAbsent(topic, created);
+                if (batch == null) {
+                    batch = created;
+                    flusher.schedule(() -> send(created), lingerMs, TimeUnit.MILLISECONDS);
+                }
+            }
+            int size = batch.add(write);
+            if (size < 0) {
+                // the batch has just been sent, the message goes into the next one
+                continue;
+            }
+            if (size == maxMessages) {
+                send(batch);
+            }
+            return write.result;
+        }
+    }
+
+    /**
+     * Closes the batch and hands it to the senders, after the batch of its topic being sent.
+     */
+    private void send(Batch batch) {
+        // removed first, so that writers arriving from now on open a new batch
+        openBatches.remove(batch.topic, batch);
+        List<PendingWrite> writes = batch.close();
+        if (writes == null) {
+            // already sent because it was full
+            return;
+        }
+        batchSizes.update(writes.size());
+        CompletableFuture<Void> sending;
+        try {
+            sending = sendingBatches.compute(batch.topic, (topic, previous) ->
+                    (previous == null ? CompletableFuture.<Void>completedFuture(null) : previous)
+                            .handleAsync((done, throwable) -> {
+                                write(topic, writes);
+                                return null;
+                            }, senders));
+        } catch (RejectedExecutionException ex) {
+            fail(writes, ex);
+            return;
+        }
+        sending.whenComplete((done, throwable) -> {
+            sendingBatches.remove(batch.topic, sending);
+            if (throwable != null) {
+                // the senders are shut down
+                fail(writes, throwable);
+            }
+        });
+    }
+
+    private static void fail(List<PendingWrite> writes, Throwable throwable) {
+        writes.forEach(write -> write.result.completeExceptionally(throwable));
+    }
+
+    private void write(String topic, List<PendingWrite> writes) {
+        long now = System.nanoTime();
+        for (PendingWrite write : writes) {
+            queueTime.update(now - write.queuedAt, TimeUnit.NANOSECONDS);
+            try {
+                writer.writeMessage(topic, write.key, write.message).whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        write.result.completeExceptionally(throwable);
+                    } else {
+                        write.result.complete(result);
+                    }
+                });
+            } catch (RuntimeException ex) {
+                // e.g. too many messages waiting for acknowledgement, it fails this message only
+                write.result.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private static class PendingWrite {
+        private final byte[] key;
+        private final byte[] message;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<RecordResult> result = new CompletableFuture<>();
+
+        PendingWrite(byte[] key, byte[] message) {
+            this.key = key;
+            this.message = message;
+        }
+    }
+
+    private static class Batch {
+        private final String topic;
+        private List<PendingWrite> writes = new ArrayList<>();
+
+        Batch(String topic) {
+            this.topic = topic;
+        }
+
+        /**
+         * @return The number of messages in the batch or -1 if it has already been sent
+         */
+        synchronized int add(PendingWrite write) {
+            if (writes == null) {
+                return -1;
+            }
+            writes.add(write);
+            return writes.size();
+        }
+
+        /**
+         * @return The messages of the batch or null if it has already been closed
+         */
+        synchronized List<PendingWrite> close() {
+            List<PendingWrite> closed = writes;
+            writes = null;
+            return closed;
+        }
+    }
+}
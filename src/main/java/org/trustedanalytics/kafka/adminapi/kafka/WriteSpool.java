@@ -0,0 +1,729 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.trustedanalytics.kafka.adminapi.kafka;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.apache.kafka.common.errors.RetriableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.kafka.adminapi.exceptions.ServiceUnavailableException;
+import org.trustedanalytics.kafka.adminapi.exceptions.TooManyRequestsException;
+import org.trustedanalytics.kafka.adminapi.model.MessageRecord;
+import org.trustedanalytics.kafka.adminapi.model.RecordResult;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps messages on the local disk while Kafka is unavailable or the producer is backpressured,
+ * and replays them into Kafka, in the order they were spooled, once it recovers.
+ * While the spool holds messages, new messages are spooled as well, so that they do not overtake the spooled ones.
+ * A message which Kafka fails only after the producer took it is spooled when the failure is reported,
+ * so messages written in the meantime may reach Kafka before it.
+ * A message is acknowledged once its segment is forced to disk. Segments are forced by a single syncer thread,
+ * all messages appended while it forces are forced together by its next pass.
+ *
+ * The spool is a sequence of memory mapped segment files of segmentBytes each, named by their sequence number.
+ * Every record is a frame, all integers big endian:
+ *
+ *     int32 body length | int32 CRC32 of the body | int64 spooled at ms | int16 topic length | topic
+ *     | int32 partition | int32 key length | key | int32 value length | value
+ *
+ * with a partition of -1 when the producer chooses it and a length of -1 for a null key or value.
+ * A body length of 0 ends the data of a segment. The drain index file holds the segment and position
+ * the drainer has reached, so that a restart neither loses nor replays drained messages
+ * (apart from the last window, messages are delivered at least once).
+ */
+public class WriteSpool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteSpool.class);
+
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String INDEX_FILE = "drain.index";
+    // body length and CRC
+    private static final int FRAME_HEADER_SIZE = 8;
+    // segment number, position and CRC
+    private static final int INDEX_SIZE = 16;
+
+    private final KafkaWriter writer;
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final int drainBatchSize;
+    private final long retryBackoffMs;
+    private final MetricsRegistry metrics;
+
+    // guards the segments, the write position and the active flag
+    private final Object lock = new Object();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private volatile boolean active;
+    // completed once the messages appended so far are forced to disk
+    private List<CompletableFuture<Void>> unforced = new ArrayList<>();
+    private final AtomicBoolean syncScheduled = new AtomicBoolean();
+
+    private MappedByteBuffer index;
+    // only used by the drainer thread
+    private Segment drainSegment;
+    private int drainPosition;
+
+    private final AtomicLong spooledMessages = new AtomicLong();
+    private final AtomicLong spooledBytes = new AtomicLong();
+    private volatile long oldestSpooledAt;
+
+    private ScheduledExecutorService drainer;
+    private ExecutorService syncer;
+
+    private Meter spooled;
+    private Meter drained;
+    private Meter dropped;
+    private Meter corrupt;
+    private Meter drainFailures;
+
+    /**
+     * @param enabled Whether messages are spooled at all, without it writes fail when Kafka is unavailable
+     * @param segmentBytes Size of a segment file, the largest message which can be spooled is a little smaller
+     * @param maxBytes Max disk space of all segments, messages are rejected when it is used up
+     * @param drainBatchSize Max messages replayed into Kafka at a time
+     * @param retryBackoffMs How long the drainer waits after Kafka rejected replayed messages
+     */
+    public WriteSpool(KafkaWriter writer, boolean enabled, String directory, int segmentBytes, long maxBytes,
+                      int drainBatchSize, long retryBackoffMs, MetricsRegistry metrics) {
+        this.writer = writer;
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.drainBatchSize = drainBatchSize;
+        this.retryBackoffMs = retryBackoffMs;
+        this.metrics = metrics;
+    }
+
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        spooled = metrics.newMeter(WriteSpool.class, "spooled", "messages", TimeUnit.SECONDS);
+        drained = metrics.newMeter(WriteSpool.class, "drained", "messages", TimeUnit.SECONDS);
+        dropped = metrics.newMeter(WriteSpool.class, "dropped", "messages", TimeUnit.SECONDS);
+        corrupt = metrics.newMeter(WriteSpool.class, "corrupt", "records", TimeUnit.SECONDS);
+        drainFailures = metrics.newMeter(WriteSpool.class, "drainFailures", "windows", TimeUnit.SECONDS);
+        metrics.newGauge(WriteSpool.class, "messages", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return spooledMessages.get();
+            }
+        });
+        metrics.newGauge(WriteSpool.class, "bytes", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return spooledBytes.get();
+            }
+        });
+        metrics.newGauge(WriteSpool.class, "diskBytes", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                synchronized (lock) {
+                    return (long) segments.size() * segmentBytes;
+                }
+            }
+        });
+        metrics.newGauge(WriteSpool.class, "oldestMessageAgeMs", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                long oldest = oldestSpooledAt;
+                return oldest == 0 ? 0 : System.currentTimeMillis() - oldest;
+            }
+        });
+
+        Files.createDirectories(directory);
+        recover();
+
+        syncer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-spool-syncer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-spool-drainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainer.scheduleWithFixedDelay(this::drain, 0, retryBackoffMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Spooled messages stay on disk, they are replayed after a restart.
+     */
+    public void destroy() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        drainer.shutdownNow();
+        syncer.shutdownNow();
+        synchronized (lock) {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+                segment.channel.close();
+            }
+            index.force();
+            unforced.forEach(future -> future.complete(null));
+            unforced.clear();
+        }
+        LOG.debug("write spool closed with {} messages", spooledMessages.get());
+    }
+
+    /**
+     * @return Whether the spool holds messages which are not in Kafka yet
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Writes a message through the given send, or into the spool when the spool holds messages already
+     * or the send fails because Kafka is unavailable or backpressured.
+     * @return A future completed with the partition and offset of the message or with a spooled result
+     */
+    public CompletableFuture<RecordResult> write(String topic, byte[] key, byte[] message,
+                                                 Supplier<CompletableFuture<RecordResult>> send) {
+        if (!enabled) {
+            return send.get();
+        }
+        if (active) {
+            return append(topic, null, key, message);
+        }
+        CompletableFuture<RecordResult> sent;
+        try {
+            sent = send.get();
+        } catch (RuntimeException ex) {
+            if (!isUnavailable(ex)) {
+                throw ex;
+            }
+            return append(topic, null, key, message);
+        }
+        CompletableFuture<RecordResult> result = new CompletableFuture<>();
+        sent.whenComplete((written, throwable) -> {
+            if (throwable == null) {
+                result.complete(written);
+            } else if (isUnavailable(unwrap(throwable))) {
+                LOG.debug("spooling message to {} which Kafka did not take", topic, throwable);
+                append(topic, null, key, message).whenComplete((spooledResult, spoolFailure) -> {
+                    if (spoolFailure != null) {
+                        result.completeExceptionally(spoolFailure);
+                    } else {
+                        result.complete(spooledResult);
+                    }
+                });
+            } else {
+                result.completeExceptionally(throwable);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Writes a batch of messages through the given send, or into the spool when the spool holds messages already
+     * or the send rejects the whole batch because Kafka is backpressured.
+     * Messages of a sent batch which fail are reported in their results, they are not spooled.
+     */
+    public CompletableFuture<List<RecordResult>> writeAll(String topic, List<MessageRecord> records,
+                                                          Supplier<CompletableFuture<List<RecordResult>>> send) {
+        if (!enabled) {
+            return send.get();
+        }
+        if (!active) {
+            try {
+                return send.get();
+            } catch (RuntimeException ex) {
+                if (!isUnavailable(ex)) {
+                    throw ex;
+                }
+            }
+        }
+        List<CompletableFuture<RecordResult>> futures = new ArrayList<>(records.size());
+        for (MessageRecord record : records) {
+            futures.add(append(topic, record.getPartition(), toBytes(record.getKey()), toBytes(record.getValue()))
+                    .exceptionally(ex -> RecordResult.failure(unwrap(ex).getMessage())));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                .thenApply(done -> {
+                    List<RecordResult> results = new ArrayList<>(futures.size());
+                    futures.forEach(future -> results.add(future.join()));
+                    return results;
+                });
+    }
+
+    /**
+     * Spools a message, it is acknowledged once it is forced to disk.
+     * @param partition The partition or null to let the producer choose it
+     * @return A future completed with a spooled result or failed when the spool is full
+     */
+    public CompletableFuture<RecordResult> append(String topic, Integer partition, byte[] key, byte[] message) {
+        try {
+            return append(encode(topic, partition, key, message)).thenApply(forced -> RecordResult.spooled());
+        } catch (ServiceUnavailableException | UncheckedIOException ex) {
+            CompletableFuture<RecordResult> result = new CompletableFuture<>();
+            result.completeExceptionally(ex);
+            return result;
+        }
+    }
+
+    /**
+     * Whether a failure means Kafka could not take the message for now, rather than that the message is wrong.
+     */
+    public static boolean isUnavailable(Throwable throwable) {
+        return throwable instanceof RetriableException
+                || throwable instanceof ServiceUnavailableException
+                || throwable instanceof TooManyRequestsException;
+    }
+
+    /**
+     * @return A future completed once the message is forced to disk
+     */
+    private CompletableFuture<Void> append(byte[] body) {
+        int frameSize = FRAME_HEADER_SIZE + body.length;
+        // the frame is followed by the end of data marker
+        if (frameSize + 4 > segmentBytes) {
+            throw new ServiceUnavailableException("Message of " + body.length + " bytes does not fit into the write spool");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        CompletableFuture<Void> forced = new CompletableFuture<>();
+        synchronized (lock) {
+            Segment segment = segments.peekLast();
+            if (segment == null || segment.writePosition + frameSize + 4 > segmentBytes) {
+                segment = newSegment(segment == null ? 0 : segment.number + 1);
+            }
+            ByteBuffer buffer = segment.buffer;
+            int position = segment.writePosition;
+            // the end of data marker goes first, so that a torn frame is never mistaken for data
+            buffer.putInt(position + frameSize, 0);
+            buffer.putInt(position + 4, (int) crc.getValue());
+            ByteBuffer target = buffer.duplicate();
+            target.position(position + FRAME_HEADER_SIZE);
+            target.put(body);
+            buffer.putInt(position, body.length);
+            segment.writePosition = position + frameSize;
+            segment.dirty = true;
+            unforced.add(forced);
+
+            spooledMessages.incrementAndGet();
+            spooledBytes.addAndGet(frameSize);
+            if (!active) {
+                active = true;
+                oldestSpooledAt = System.currentTimeMillis();
+                LOG.warn("Kafka is unavailable, spooling messages to {}", directory);
+            }
+        }
+        spooled.mark();
+        if (syncScheduled.compareAndSet(false, true)) {
+            syncer.execute(this::sync);
+        }
+        return forced;
+    }
+
+    /**
+     * Forces the segments written since the last pass and acknowledges their messages.
+     */
+    private void sync() {
+        // cleared first, so that messages appended from now on schedule the next pass
+        syncScheduled.set(false);
+        List<CompletableFuture<Void>> waiting;
+        List<Segment> dirty = new ArrayList<>();
+        synchronized (lock) {
+            waiting = unforced;
+            unforced = new ArrayList<>();
+            for (Segment segment : segments) {
+                if (segment.dirty) {
+                    segment.dirty = false;
+                    dirty.add(segment);
+                }
+            }
+        }
+        try {
+            dirty.forEach(segment -> segment.buffer.force());
+            waiting.forEach(future -> future.complete(null));
+        } catch (RuntimeException ex) {
+            LOG.error("Forcing the write spool to disk failed", ex);
+            waiting.forEach(future -> future.completeExceptionally(
+                    new ServiceUnavailableException("Write spool could not be written to disk")));
+        }
+    }
+
+    private Segment newSegment(long number) {
+        if ((long) (segments.size() + 1) * segmentBytes > maxBytes) {
+            throw new ServiceUnavailableException("Write spool is full, Kafka is unavailable");
+        }
+        try {
+            Segment segment = openSegment(number, true);
+            // the new file itself has to survive a crash, not only the data written into it
+            segment.channel.force(true);
+            segments.addLast(segment);
+            return segment;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Segment openSegment(long number, boolean create) throws IOException {
+        Path path = directory.resolve(String.format("%020d", number) + SEGMENT_SUFFIX);
+        FileChannel channel = create
+                ? FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // mapping beyond the end of the file extends it, a new segment starts with zeros, i.e. the end of data
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        return new Segment(number, path, channel, buffer);
+    }
+
+    private static byte[] encode(String topic, Integer partition, byte[] key, byte[] message) {
+        byte[] topicBytes = topic.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(8 + 2 + topicBytes.length + 4 + 4 + length(key) + 4 + length(message));
+        body.putLong(System.currentTimeMillis());
+        body.putShort((short) topicBytes.length);
+        body.put(topicBytes);
+        body.putInt(partition == null ? -1 : partition);
+        putBytes(body, key);
+        putBytes(body, message);
+        return body.array();
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static byte[] toBytes(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Opens the segments left by a previous run and finds the end of their data.
+     */
+    private void recover() throws IOException {
+        FileChannel indexChannel = FileChannel.open(directory.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_SIZE);
+        indexChannel.close();
+        long indexSegment = index.getLong(0);
+        int indexPosition = index.getInt(8);
+        CRC32 indexCrc = new CRC32();
+        indexCrc.update(indexPosition(indexSegment, indexPosition));
+        if ((int) indexCrc.getValue() != index.getInt(12)) {
+            // never written or torn, the segments are drained from their start
+            indexSegment = -1;
+            indexPosition = 0;
+        }
+
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                numbers.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        numbers.sort(Long::compare);
+
+        synchronized (lock) {
+            for (long number : numbers) {
+                if (number < indexSegment) {
+                    // fully drained, the drainer stopped before deleting it
+                    Files.deleteIfExists(directory.resolve(String.format("%020d", number) + SEGMENT_SUFFIX));
+                    continue;
+                }
+                Segment segment = openSegment(number, false);
+                int start = number == indexSegment ? indexPosition : 0;
+                int position = start;
+                long messages = 0;
+                while (true) {
+                    int next = nextFrame(segment, position, Integer.MAX_VALUE);
+                    if (next < 0) {
+                        break;
+                    }
+                    position = next;
+                    messages++;
+                }
+                segment.writePosition = position;
+                segments.addLast(segment);
+                spooledMessages.addAndGet(messages);
+                spooledBytes.addAndGet(position - start);
+            }
+            if (!segments.isEmpty()) {
+                drainSegment = segments.peekFirst();
+                drainPosition = drainSegment.number == indexSegment ? indexPosition : 0;
+            }
+            active = spooledMessages.get() > 0;
+        }
+        if (active) {
+            LOG.info("Write spool holds {} messages from a previous run", spooledMessages.get());
+        }
+    }
+
+    /**
+     * @return The position after the frame at the given position, or -1 at the end of data
+     * or when the frame is corrupt
+     */
+    private int nextFrame(Segment segment, int position, int limit) {
+        if (position + FRAME_HEADER_SIZE > Math.min(segmentBytes, limit)) {
+            return -1;
+        }
+        int length = segment.buffer.getInt(position);
+        if (length <= 0 || position + FRAME_HEADER_SIZE + length > Math.min(segmentBytes, limit)) {
+            return -1;
+        }
+        ByteBuffer body = segment.buffer.duplicate();
+        body.position(position + FRAME_HEADER_SIZE);
+        body.limit(position + FRAME_HEADER_SIZE + length);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != segment.buffer.getInt(position + 4)) {
+            // the rest of the segment cannot be trusted, e.g. a write torn by a crash
+            LOG.warn("Corrupt record at {} of spool segment {}, dropping the rest of the segment",
+                    position, segment.path);
+            corrupt.mark();
+            return -1;
+        }
+        return position + FRAME_HEADER_SIZE + length;
+    }
+
+    /**
+     * Replays spooled messages into Kafka, a window at a time, until the spool is empty or Kafka fails.
+     */
+    private void drain() {
+        try {
+            while (drainWindow()) {
+                // next window
+            }
+        } catch (RuntimeException ex) {
+            drainFailures.mark();
+            LOG.error("Draining the write spool failed", ex);
+        }
+    }
+
+    /**
+     * @return Whether the drainer should go on right away
+     */
+    private boolean drainWindow() {
+        int limit;
+        boolean lastSegment;
+        synchronized (lock) {
+            if (drainSegment == null) {
+                drainSegment = segments.peekFirst();
+                drainPosition = 0;
+                if (drainSegment == null) {
+                    return false;
+                }
+            }
+            limit = drainSegment.writePosition;
+            lastSegment = drainSegment == segments.peekLast();
+            if (drainPosition < limit && nextFrame(drainSegment, drainPosition, limit) < 0) {
+                // frames after a corrupt one cannot be found, they are lost
+                drainPosition = limit;
+            }
+            if (drainPosition >= limit) {
+                if (lastSegment) {
+                    // everything is in Kafka, writes go to Kafka directly from now on
+                    if (active) {
+                        LOG.info("Write spool drained");
+                    }
+                    active = false;
+                    oldestSpooledAt = 0;
+                    spooledMessages.set(0);
+                    spooledBytes.set(0);
+                    return false;
+                }
+                // a later segment has been started, so this one is complete
+                deleteDrainedSegment();
+                return true;
+            }
+        }
+
+        List<SpooledMessage> window = new ArrayList<>();
+        int position = drainPosition;
+        while (window.size() < drainBatchSize) {
+            int next = nextFrame(drainSegment, position, limit);
+            if (next < 0) {
+                break;
+            }
+            window.add(decode(drainSegment, position, next));
+            position = next;
+        }
+        oldestSpooledAt = window.get(0).spooledAt;
+
+        List<CompletableFuture<RecordResult>> futures = new ArrayList<>(window.size());
+        for (SpooledMessage message : window) {
+            CompletableFuture<RecordResult> future;
+            try {
+                future = writer.writeMessage(message.topic, message.partition, message.key, message.value);
+            } catch (RuntimeException ex) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(ex);
+            }
+            futures.add(future);
+        }
+        boolean retry = false;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).join();
+            } catch (CompletionException ex) {
+                Throwable cause = unwrap(ex);
+                if (isUnavailable(cause)) {
+                    retry = true;
+                } else {
+                    // e.g. a message too large or a topic which is gone, retrying would block the spool forever
+                    LOG.error("Dropping spooled message to {}: {}", window.get(i).topic, cause.getMessage());
+                    dropped.mark();
+                }
+            }
+        }
+        if (retry) {
+            // the whole window is replayed, messages of it which did reach Kafka are written twice
+            drainFailures.mark();
+            LOG.warn("Kafka is still unavailable, {} spooled messages wait for it", spooledMessages.get());
+            return false;
+        }
+
+        spooledMessages.addAndGet(-window.size());
+        spooledBytes.addAndGet(-(position - drainPosition));
+        drained.mark(window.size());
+        drainPosition = position;
+        writeIndex(drainSegment.number, drainPosition);
+        return true;
+    }
+
+    private void deleteDrainedSegment() {
+        Segment segment = segments.pollFirst();
+        try {
+            segment.channel.close();
+            Files.deleteIfExists(segment.path);
+        } catch (IOException ex) {
+            LOG.warn("Could not delete drained spool segment {}", segment.path, ex);
+        }
+        drainSegment = segments.peekFirst();
+        drainPosition = 0;
+        writeIndex(drainSegment.number, 0);
+    }
+
+    private void writeIndex(long segment, int position) {
+        CRC32 crc = new CRC32();
+        crc.update(indexPosition(segment, position));
+        index.putLong(0, segment);
+        index.putInt(8, position);
+        index.putInt(12, (int) crc.getValue());
+        // a restart continues from here, so drained messages are not replayed again
+        index.force();
+    }
+
+    private static byte[] indexPosition(long segment, int position) {
+        return ByteBuffer.allocate(12).putLong(segment).putInt(position).array();
+    }
+
+    private static SpooledMessage decode(Segment segment, int position, int end) {
+        ByteBuffer body = segment.buffer.duplicate();
+        body.position(position + FRAME_HEADER_SIZE);
+        body.limit(end);
+        long spooledAt = body.getLong();
+        byte[] topic = new byte[body.getShort()];
+        body.get(topic);
+        int partition = body.getInt();
+        byte[] key = getBytes(body);
+        byte[] value = getBytes(body);
+        return new SpooledMessage(spooledAt, new String(topic, StandardCharsets.UTF_8),
+                partition < 0 ? null : partition, key, value);
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause() : throwable;
+    }
+
+    private static class Segment {
+        private final long number;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        // written under the lock, read by the drainer under the lock as well
+        private int writePosition;
+        // written since the syncer forced the segment, guarded by the lock
+        private boolean dirty;
+
+        Segment(long number, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private static class SpooledMessage {
+        private final long spooledAt;
+        private final String topic;
+        private final Integer partition;
+        private final byte[] key;
+        private final byte[] value;
+
+        SpooledMessage(long spooledAt, String topic, Integer partition, byte[] key, byte[] value) {
+            this.spooledAt = spooledAt;
+            this.topic = topic;
+            this.partition = partition;
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import java.util.List;
+
+/**
+ * A snapshot of the lag of a consumer group, taken at the given time.
+ */
+public class ConsumerGroupLag {
+
+    private String group;
+
+    private long timestamp;
+
+    private long totalLag;
+
+    private List<PartitionLag> partitions;
+
+    public String getGroup() {
+        return group;
+    }
+
+    public void setGroup(String group) {
+        this.group = group;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public long getTotalLag() {
+        return totalLag;
+    }
+
+    public void setTotalLag(long totalLag) {
+        this.totalLag = totalLag;
+    }
+
+    public List<PartitionLag> getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(List<PartitionLag> partitions) {
+        this.partitions = partitions;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsumerGroupLag{" +
+                "group='" + group + '\'' +
+                ", timestamp=" + timestamp +
+                ", totalLag=" + totalLag +
+                ", partitions=" + partitions.size() +
+                '}';
+    }
+}
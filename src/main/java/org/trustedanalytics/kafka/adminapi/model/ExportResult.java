@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.SortedMap;
+
+/**
+ * How much of a topic an export wrote and where it ended.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ExportResult {
+
+    private String topic;
+
+    /**
+     * The file the messages were written to, null when they were streamed in the response.
+     */
+    private String file;
+
+    private long messages;
+
+    private long bytes;
+
+    /**
+     * The offset of the first message which was not exported, by partition.
+     */
+    private SortedMap<Integer, Long> nextOffsets;
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public void setMessages(long messages) {
+        this.messages = messages;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    public SortedMap<Integer, Long> getNextOffsets() {
+        return nextOffsets;
+    }
+
+    public void setNextOffsets(SortedMap<Integer, Long> nextOffsets) {
+        this.nextOffsets = nextOffsets;
+    }
+
+    @Override
+    public String toString() {
+        return "ExportResult{" +
+                "topic='" + topic + '\'' +
+                ", file='" + file + '\'' +
+                ", messages=" + messages +
+                ", bytes=" + bytes +
+                ", nextOffsets=" + nextOffsets +
+                '}';
+    }
+}
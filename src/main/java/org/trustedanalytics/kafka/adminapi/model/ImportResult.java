@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * How many messages of an import were written and how many failed, and where it stopped if it did not finish.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImportResult {
+
+    private String topic;
+
+    private long messages;
+
+    private long failed;
+
+    /**
+     * Why the import stopped early, otherwise the error of the first message which failed.
+     */
+    private String error;
+
+    /**
+     * How many messages of the input were sent before the import stopped early, the input can be resumed
+     * after them; null when the whole input was imported.
+     */
+    private Long stoppedAt;
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public void setMessages(long messages) {
+        this.messages = messages;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public Long getStoppedAt() {
+        return stoppedAt;
+    }
+
+    public void setStoppedAt(Long stoppedAt) {
+        this.stoppedAt = stoppedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult{" +
+                "topic='" + topic + '\'' +
+                ", messages=" + messages +
+                ", failed=" + failed +
+                ", error='" + error + '\'' +
+                ", stoppedAt=" + stoppedAt +
+                '}';
+    }
+}
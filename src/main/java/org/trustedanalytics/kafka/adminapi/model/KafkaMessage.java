@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+/**
+ * A message read from a topic. Jackson writes the key and the value as base64 strings.
+ */
+public class KafkaMessage {
+
+    private int partition;
+
+    private long offset;
+
+    private byte[] key;
+
+    private byte[] value;
+
+    public KafkaMessage() {
+    }
+
+    public KafkaMessage(int partition, long offset, byte[] key, byte[] value) {
+        this.partition = partition;
+        this.offset = offset;
+        this.key = key;
+        this.value = value;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public void setPartition(int partition) {
+        this.partition = partition;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public byte[] getKey() {
+        return key;
+    }
+
+    public void setKey(byte[] key) {
+        this.key = key;
+    }
+
+    public byte[] getValue() {
+        return value;
+    }
+
+    public void setValue(byte[] value) {
+        this.value = value;
+    }
+
+    @Override
+    public String toString() {
+        return "KafkaMessage{" +
+                "partition=" + partition +
+                ", offset=" + offset +
+                ", key=" + (key == null ? null : key.length + " bytes") +
+                ", value=" + (value == null ? null : value.length + " bytes") +
+                '}';
+    }
+}
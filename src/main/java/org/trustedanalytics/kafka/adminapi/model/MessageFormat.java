@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+
+/**
+ * How read messages are represented in JSON responses.
+ */
+public enum MessageFormat {
+
+    /**
+     * Only the message value, as a UTF-8 string.
+     */
+    TEXT,
+
+    /**
+     * The partition, offset, key and value of the message, the key and the value are base64 encoded.
+     */
+    BINARY;
+
+    public static MessageFormat parse(String format) {
+        for (MessageFormat value : values()) {
+            if (value.name().equalsIgnoreCase(format)) {
+                return value;
+            }
+        }
+        throw new BadRequestException("Unknown message format: " + format);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Layout and size of a single partition. Offsets are null when they could not be fetched,
+ * in that case error says why.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PartitionDetails {
+
+    private int partition;
+
+    private Integer leader;
+
+    private List<Integer> replicas;
+
+    private List<Integer> isr;
+
+    private Long earliestOffset;
+
+    private Long latestOffset;
+
+    private Long messages;
+
+    private String error;
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public void setPartition(int partition) {
+        this.partition = partition;
+    }
+
+    public Integer getLeader() {
+        return leader;
+    }
+
+    public void setLeader(Integer leader) {
+        this.leader = leader;
+    }
+
+    public List<Integer> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(List<Integer> replicas) {
+        this.replicas = replicas;
+    }
+
+    public List<Integer> getIsr() {
+        return isr;
+    }
+
+    public void setIsr(List<Integer> isr) {
+        this.isr = isr;
+    }
+
+    public Long getEarliestOffset() {
+        return earliestOffset;
+    }
+
+    public void setEarliestOffset(Long earliestOffset) {
+        this.earliestOffset = earliestOffset;
+    }
+
+    public Long getLatestOffset() {
+        return latestOffset;
+    }
+
+    public void setLatestOffset(Long latestOffset) {
+        this.latestOffset = latestOffset;
+    }
+
+    public Long getMessages() {
+        return messages;
+    }
+
+    public void setMessages(Long messages) {
+        this.messages = messages;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionDetails{" +
+                "partition=" + partition +
+                ", leader=" + leader +
+                ", replicas=" + replicas +
+                ", isr=" + isr +
+                ", earliestOffset=" + earliestOffset +
+                ", latestOffset=" + latestOffset +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The committed offset of a consumer group in a single partition compared with the log end offset.
+ * The log end offset and the lag are null when the partition has no leader.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PartitionLag {
+
+    private String topic;
+
+    private int partition;
+
+    private long committedOffset;
+
+    private Long logEndOffset;
+
+    private Long lag;
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public void setPartition(int partition) {
+        this.partition = partition;
+    }
+
+    public long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    public void setCommittedOffset(long committedOffset) {
+        this.committedOffset = committedOffset;
+    }
+
+    public Long getLogEndOffset() {
+        return logEndOffset;
+    }
+
+    public void setLogEndOffset(Long logEndOffset) {
+        this.logEndOffset = logEndOffset;
+    }
+
+    public Long getLag() {
+        return lag;
+    }
+
+    public void setLag(Long lag) {
+        this.lag = lag;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionLag{" +
+                "topic='" + topic + '\'' +
+                ", partition=" + partition +
+                ", committedOffset=" + committedOffset +
+                ", logEndOffset=" + logEndOffset +
+                ", lag=" + lag +
+                '}';
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.trustedanalytics.kafka.adminapi.kafka.ReadMemory;
+
+import java.util.List;
+
+/**
+ * A page of messages read from a single partition.
+ * To read the next page pass nextOffset as the offset of the next request.
+ * Messages are plain strings or {@link KafkaMessage}s, depending on the requested {@link MessageFormat}.
+ * The read memory they take stays reserved until its holders close the memory lease.
+ */
+public class PartitionMessages {
+
+    private String topic;
+
+    private int partition;
+
+    private long offset;
+
+    private long nextOffset;
+
+    private long earliestOffset;
+
+    private long latestOffset;
+
+    private List<?> messages;
+
+    private ReadMemory.Lease memory;
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public void setPartition(int partition) {
+        this.partition = partition;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    public void setNextOffset(long nextOffset) {
+        this.nextOffset = nextOffset;
+    }
+
+    public long getEarliestOffset() {
+        return earliestOffset;
+    }
+
+    public void setEarliestOffset(long earliestOffset) {
+        this.earliestOffset = earliestOffset;
+    }
+
+    public long getLatestOffset() {
+        return latestOffset;
+    }
+
+    public void setLatestOffset(long latestOffset) {
+        this.latestOffset = latestOffset;
+    }
+
+    public List<?> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<?> messages) {
+        this.messages = messages;
+    }
+
+    @JsonIgnore
+    public ReadMemory.Lease getMemory() {
+        return memory;
+    }
+
+    public void setMemory(ReadMemory.Lease memory) {
+        this.memory = memory;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionMessages{" +
+                "topic='" + topic + '\'' +
+                ", partition=" + partition +
+                ", offset=" + offset +
+                ", nextOffset=" + nextOffset +
+                ", earliestOffset=" + earliestOffset +
+                ", latestOffset=" + latestOffset +
+                ", messages=" + messages.size() +
+                '}';
+    }
+}
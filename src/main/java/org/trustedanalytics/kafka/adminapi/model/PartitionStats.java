@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Map;
+
+/**
+ * Size and throughput of a single partition. Sizes are estimated from the messages at the end of the partition,
+ * rates are derived from the latest offsets sampled in the background and are null until there are enough samples.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PartitionStats {
+
+    private int partition;
+
+    private Long earliestOffset;
+
+    private Long latestOffset;
+
+    private Long messages;
+
+    private Double averageMessageBytes;
+
+    private Long estimatedBytes;
+
+    /**
+     * Messages appended per second, by window, e.g. 60s.
+     */
+    private Map<String, Double> messagesPerSecond;
+
+    private String error;
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public void setPartition(int partition) {
+        this.partition = partition;
+    }
+
+    public Long getEarliestOffset() {
+        return earliestOffset;
+    }
+
+    public void setEarliestOffset(Long earliestOffset) {
+        this.earliestOffset = earliestOffset;
+    }
+
+    public Long getLatestOffset() {
+        return latestOffset;
+    }
+
+    public void setLatestOffset(Long latestOffset) {
+        this.latestOffset = latestOffset;
+    }
+
+    public Long getMessages() {
+        return messages;
+    }
+
+    public void setMessages(Long messages) {
+        this.messages = messages;
+    }
+
+    public Double getAverageMessageBytes() {
+        return averageMessageBytes;
+    }
+
+    public void setAverageMessageBytes(Double averageMessageBytes) {
+        this.averageMessageBytes = averageMessageBytes;
+    }
+
+    public Long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public void setEstimatedBytes(Long estimatedBytes) {
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    public Map<String, Double> getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    public void setMessagesPerSecond(Map<String, Double> messagesPerSecond) {
+        this.messagesPerSecond = messagesPerSecond;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionStats{" +
+                "partition=" + partition +
+                ", earliestOffset=" + earliestOffset +
+                ", latestOffset=" + latestOffset +
+                ", messages=" + messages +
+                ", estimatedBytes=" + estimatedBytes +
+                ", messagesPerSecond=" + messagesPerSecond +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The outcome of writing a single message: either its partition and offset, an error,
+ * or that it has been spooled locally to be written once Kafka is available.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RecordResult {
+
+    private Integer partition;
+
+    private Long offset;
+
+    private String error;
+
+    private Boolean spooled;
+
+    public static RecordResult success(int partition, long offset) {
+        RecordResult result = new RecordResult();
+        result.setPartition(partition);
+        result.setOffset(offset);
+        return result;
+    }
+
+    public static RecordResult failure(String error) {
+        RecordResult result = new RecordResult();
+        result.setError(error);
+        return result;
+    }
+
+    public static RecordResult spooled() {
+        RecordResult result = new RecordResult();
+        result.setSpooled(true);
+        return result;
+    }
+
+    public Integer getPartition() {
+        return partition;
+    }
+
+    public void setPartition(Integer partition) {
+        this.partition = partition;
+    }
+
+    public Long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(Long offset) {
+        this.offset = offset;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public Boolean getSpooled() {
+        return spooled;
+    }
+
+    public void setSpooled(Boolean spooled) {
+        this.spooled = spooled;
+    }
+
+    @Override
+    public String toString() {
+        return "RecordResult{" +
+                "partition=" + partition +
+                ", offset=" + offset +
+                ", error='" + error + '\'' +
+                ", spooled=" + spooled +
+                '}';
+    }
+}
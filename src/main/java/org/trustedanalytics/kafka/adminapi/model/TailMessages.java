@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import java.util.List;
+
+/**
+ * Messages which arrived in a topic since the previous batch of a live tail.
+ * To continue where the batch ends pass the token with the next request.
+ * Messages are plain strings or {@link KafkaMessage}s, depending on the requested {@link MessageFormat}.
+ */
+public class TailMessages {
+
+    private String topic;
+
+    private String token;
+
+    /**
+     * Messages which were skipped because the subscriber did not keep up with the topic.
+     */
+    private long dropped;
+
+    private List<?> messages;
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public long getDropped() {
+        return dropped;
+    }
+
+    public void setDropped(long dropped) {
+        this.dropped = dropped;
+    }
+
+    public List<?> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<?> messages) {
+        this.messages = messages;
+    }
+
+    @Override
+    public String toString() {
+        return "TailMessages{" +
+                "topic='" + topic + '\'' +
+                ", token='" + token + '\'' +
+                ", dropped=" + dropped +
+                ", messages=" + messages.size() +
+                '}';
+    }
+}
@@ -16,6 +16,9 @@
 
 package org.trustedanalytics.kafka.adminapi.model;
 
+import java.util.Collections;
+import java.util.Map;
+
 public class TopicDescription {
 
     public static final int DEFAULT_PARTITION_NUMBER = 2;
@@ -25,8 +28,15 @@ public class TopicDescription {
 
     private int partitions;
 
+    private int replicationFactor;
+
+    // topic level overrides of the broker configuration, e.g. retention.ms
+    private Map<String, String> config;
+
     public TopicDescription() {
         this.partitions = DEFAULT_PARTITION_NUMBER;
+        this.replicationFactor = DEFAULT_REPLICATION_FACTOR;
+        this.config = Collections.emptyMap();
     }
 
     public String getTopic() {
@@ -45,11 +55,29 @@ public class TopicDescription {
         this.partitions = partitions;
     }
 
+    public int getReplicationFactor() {
+        return replicationFactor;
+    }
+
+    public void setReplicationFactor(int replicationFactor) {
+        this.replicationFactor = replicationFactor;
+    }
+
+    public Map<String, String> getConfig() {
+        return config;
+    }
+
+    public void setConfig(Map<String, String> config) {
+        this.config = config == null ? Collections.emptyMap() : config;
+    }
+
     @Override
     public String toString() {
         return "TopicDescription{" +
                 "topic='" + topic + '\'' +
                 ", partitions=" + partitions +
+                ", replicationFactor=" + replicationFactor +
+                ", config=" + config +
                 '}';
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Partitions of a topic with their leaders, replicas and offsets.
+ * The message count is the sum over all partitions of the messages currently retained.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TopicDetails {
+
+    private String topic;
+
+    private List<PartitionDetails> partitions;
+
+    private Long messages;
+
+    private String error;
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public List<PartitionDetails> getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(List<PartitionDetails> partitions) {
+        this.partitions = partitions;
+    }
+
+    public Long getMessages() {
+        return messages;
+    }
+
+    public void setMessages(Long messages) {
+        this.messages = messages;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "TopicDetails{" +
+                "topic='" + topic + '\'' +
+                ", partitions=" + partitions +
+                ", messages=" + messages +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import org.trustedanalytics.kafka.adminapi.kafka.ReadMemory;
+
+import java.util.List;
+
+/**
+ * Messages read from a whole topic into a list.
+ * When the read is truncated, continuation is the value of the from parameter which reads the rest.
+ * The read memory the messages take stays reserved until its holders close the memory lease.
+ */
+public class TopicMessages {
+
+    private List<String> messages;
+
+    private boolean truncated;
+
+    private String continuation;
+
+    private ReadMemory.Lease memory;
+
+    public TopicMessages() {
+    }
+
+    public TopicMessages(List<String> messages, boolean truncated, String continuation, ReadMemory.Lease memory) {
+        this.messages = messages;
+        this.truncated = truncated;
+        this.continuation = continuation;
+        this.memory = memory;
+    }
+
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<String> messages) {
+        this.messages = messages;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
+    public String getContinuation() {
+        return continuation;
+    }
+
+    public void setContinuation(String continuation) {
+        this.continuation = continuation;
+    }
+
+    public ReadMemory.Lease getMemory() {
+        return memory;
+    }
+
+    public void setMemory(ReadMemory.Lease memory) {
+        this.memory = memory;
+    }
+
+    @Override
+    public String toString() {
+        return "TopicMessages{" +
+                "messages=" + messages.size() +
+                ", truncated=" + truncated +
+                ", continuation='" + continuation + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The outcome of an operation on a single topic of a bulk request.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TopicResult {
+
+    public enum Status {
+        CREATED,
+        EXISTS,
+        UPDATED,
+        UNCHANGED,
+        // brokers delete the topic on their own, once all of them are available
+        MARKED_FOR_DELETION,
+        FAILED
+    }
+
+    private String topic;
+
+    private Status status;
+
+    private String error;
+
+    public static TopicResult of(String topic, Status status) {
+        TopicResult result = new TopicResult();
+        result.setTopic(topic);
+        result.setStatus(status);
+        return result;
+    }
+
+    public static TopicResult failure(String topic, String error) {
+        TopicResult result = of(topic, Status.FAILED);
+        result.setError(error);
+        return result;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "TopicResult{" +
+                "topic='" + topic + '\'' +
+                ", status=" + status +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Size and throughput of a topic, the sums of its partitions which could be read.
+ */
+public class TopicStats {
+
+    private String topic;
+
+    private long messages;
+
+    private long estimatedBytes;
+
+    /**
+     * Messages appended per second, by window, e.g. 60s. Empty until there are enough offset samples.
+     */
+    private Map<String, Double> messagesPerSecond;
+
+    private List<PartitionStats> partitions;
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public void setMessages(long messages) {
+        this.messages = messages;
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public void setEstimatedBytes(long estimatedBytes) {
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    public Map<String, Double> getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    public void setMessagesPerSecond(Map<String, Double> messagesPerSecond) {
+        this.messagesPerSecond = messagesPerSecond;
+    }
+
+    public List<PartitionStats> getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(List<PartitionStats> partitions) {
+        this.partitions = partitions;
+    }
+
+    @Override
+    public String toString() {
+        return "TopicStats{" +
+                "topic='" + topic + '\'' +
+                ", messages=" + messages +
+                ", estimatedBytes=" + estimatedBytes +
+                ", messagesPerSecond=" + messagesPerSecond +
+                ", partitions=" + partitions.size() +
+                '}';
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.model;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Changes of an existing topic. Only what is given is changed.
+ */
+public class TopicUpdate {
+
+    private String topic;
+
+    // the new number of partitions, partitions can only be added
+    private Integer partitions;
+
+    // topic level overrides to set, a null value removes the override
+    private Map<String, String> config;
+
+    public TopicUpdate() {
+        this.config = Collections.emptyMap();
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    public Integer getPartitions() {
+        return partitions;
+    }
+
+    public void setPartitions(Integer partitions) {
+        this.partitions = partitions;
+    }
+
+    public Map<String, String> getConfig() {
+        return config;
+    }
+
+    public void setConfig(Map<String, String> config) {
+        this.config = config == null ? Collections.emptyMap() : config;
+    }
+
+    @Override
+    public String toString() {
+        return "TopicUpdate{" +
+                "topic='" + topic + '\'' +
+                ", partitions=" + partitions +
+                ", config=" + config +
+                '}';
+    }
+}
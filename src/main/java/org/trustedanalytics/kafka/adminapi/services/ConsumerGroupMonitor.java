@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.services;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+import kafka.common.TopicAndPartition;
+import kafka.utils.ZkUtils;
+import org.I0Itec.zkclient.IZkChildListener;
+import org.I0Itec.zkclient.IZkDataListener;
+import org.I0Itec.zkclient.IZkStateListener;
+import org.I0Itec.zkclient.ZkClient;
+import org.apache.zookeeper.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.kafka.adminapi.kafka.KafkaReader;
+import org.trustedanalytics.kafka.adminapi.model.ConsumerGroupLag;
+import org.trustedanalytics.kafka.adminapi.model.PartitionLag;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a snapshot of the lag of every consumer group which commits its offsets to Zookeeper.
+ * The committed offsets are kept current by Zookeeper watches on the groups, their topics and partitions and
+ * the offsets themselves, so only offsets which changed are read again. Watch events can be lost while the
+ * Zookeeper session is being re-established, so all groups are read again after a new session.
+ * The snapshot is refreshed in the background, requests never reach Zookeeper or the brokers.
+ * A refresh only fetches the latest offsets of all consumed topics, with batched requests per broker.
+ */
+@Component
+public class ConsumerGroupMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConsumerGroupMonitor.class);
+
+    @Autowired
+    private ZkClient zkClient;
+
+    @Autowired
+    private KafkaReader reader;
+
+    @Autowired
+    private TopicMetadataCache metadataCache;
+
+    @Autowired
+    private MetricsRegistry metrics;
+
+    @Value("${kafka.consumerGroups.pollIntervalMs}")
+    private long pollIntervalMs;
+
+    // replaced as a whole after every poll, so a request never sees a partially updated snapshot
+    private volatile Map<String, ConsumerGroupLag> snapshot = Collections.emptyMap();
+
+    // group -> committed offsets, guarded by this monitor, updated by the watches
+    private final Map<String, GroupOffsets> groups = new HashMap<>();
+
+    private final GroupsListener groupsListener = new GroupsListener();
+    private final TopicsListener topicsListener = new TopicsListener();
+    private final PartitionsListener partitionsListener = new PartitionsListener();
+    private final OffsetListener offsetListener = new OffsetListener();
+    private final SessionListener sessionListener = new SessionListener();
+
+    private volatile boolean reloadNeeded = true;
+    private volatile long lastSuccessfulPoll;
+
+    private ScheduledExecutorService poller;
+
+    private Timer polls;
+    private Meter failures;
+    private Meter offsetReads;
+
+    @PostConstruct
+    protected void init() {
+        polls = metrics.newTimer(ConsumerGroupMonitor.class, "polls");
+        failures = metrics.newMeter(ConsumerGroupMonitor.class, "failures", "polls", TimeUnit.SECONDS);
+        offsetReads = metrics.newMeter(ConsumerGroupMonitor.class, "offsetReads", "reads", TimeUnit.SECONDS);
+        metrics.newGauge(ConsumerGroupMonitor.class, "groups", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return snapshot.size();
+            }
+        });
+        lastSuccessfulPoll = System.currentTimeMillis();
+        metrics.newGauge(ConsumerGroupMonitor.class, "snapshotAgeMs", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                // grows while polls fail, whether there are groups or not
+                return System.currentTimeMillis() - lastSuccessfulPoll;
+            }
+        });
+
+        zkClient.subscribeStateChanges(sessionListener);
+
+        LOG.debug("starting consumer group poller");
+        poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "consumer-group-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        poller.shutdownNow();
+        zkClient.unsubscribeStateChanges(sessionListener);
+        unwatchAll();
+    }
+
+    public List<String> listGroups() {
+        return new ArrayList<>(new TreeSet<>(snapshot.keySet()));
+    }
+
+    /**
+     * @return The last lag snapshot of the group or null if the group is not known
+     */
+    public ConsumerGroupLag getLag(String group) {
+        return snapshot.get(group);
+    }
+
+    private void poll() {
+        TimerContext timer = polls.time();
+        try {
+            if (reloadNeeded) {
+                reloadNeeded = false;
+                reload();
+            }
+            Map<String, Map<TopicAndPartition, Long>> committedOffsets = copyCommittedOffsets();
+            Map<TopicAndPartition, Long> logEndOffsets = fetchLogEndOffsets(committedOffsets.values().stream()
+                    .flatMap(offsets -> offsets.keySet().stream())
+                    .map(TopicAndPartition::topic)
+                    .collect(Collectors.toSet()));
+
+            long now = System.currentTimeMillis();
+            Map<String, ConsumerGroupLag> updated = new HashMap<>();
+            committedOffsets.forEach((group, offsets) -> updated.put(group, lag(group, offsets, logEndOffsets, now)));
+            snapshot = updated;
+            lastSuccessfulPoll = now;
+            LOG.debug("Consumer group lag refreshed: {} groups", updated.size());
+        } catch (RuntimeException ex) {
+            // the previous snapshot is kept, it is refreshed again on the next poll
+            failures.mark();
+            LOG.warn("Refreshing consumer group lag failed", ex);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Drops all watches and reads all groups again, subscribing to them as they are read.
+     */
+    private synchronized void reload() {
+        LOG.debug("Reading all consumer groups");
+        try {
+            unwatchAll();
+            updateGroups(zkClient.subscribeChildChanges(ZkUtils.ConsumersPath(), groupsListener));
+        } catch (RuntimeException ex) {
+            reloadNeeded = true;
+            throw ex;
+        }
+    }
+
+    private synchronized void unwatchAll() {
+        zkClient.unsubscribeChildChanges(ZkUtils.ConsumersPath(), groupsListener);
+        new ArrayList<>(groups.keySet()).forEach(this::removeGroup);
+    }
+
+    private synchronized Map<String, Map<TopicAndPartition, Long>> copyCommittedOffsets() {
+        Map<String, Map<TopicAndPartition, Long>> copy = new HashMap<>();
+        groups.forEach((group, offsets) -> copy.put(group, new HashMap<>(offsets.committed)));
+        return copy;
+    }
+
+    // /consumers/{group}/offsets/{topic}/{partition} holds the committed offset
+
+    private synchronized void updateGroups(List<String> children) {
+        Set<String> current = children == null ? Collections.emptySet() : new HashSet<>(children);
+        new ArrayList<>(groups.keySet()).stream().filter(group -> !current.contains(group)).forEach(this::removeGroup);
+        for (String group : current) {
+            if (!groups.containsKey(group)) {
+                groups.put(group, new GroupOffsets());
+                updateTopics(group, zkClient.subscribeChildChanges(offsetsPath(group), topicsListener));
+            }
+        }
+    }
+
+    private synchronized void updateTopics(String group, List<String> children) {
+        GroupOffsets offsets = groups.get(group);
+        if (offsets == null) {
+            return;
+        }
+        Set<String> current = children == null ? Collections.emptySet() : new HashSet<>(children);
+        new ArrayList<>(offsets.partitions.keySet()).stream().filter(topic -> !current.contains(topic))
+                .forEach(topic -> removeTopic(group, offsets, topic));
+        for (String topic : current) {
+            if (!offsets.partitions.containsKey(topic)) {
+                offsets.partitions.put(topic, new HashSet<>());
+                updatePartitions(group, topic,
+                        zkClient.subscribeChildChanges(offsetsPath(group) + "/" + topic, partitionsListener));
+            }
+        }
+    }
+
+    private synchronized void updatePartitions(String group, String topic, List<String> children) {
+        GroupOffsets offsets = groups.get(group);
+        Set<Integer> partitions = offsets == null ? null : offsets.partitions.get(topic);
+        if (partitions == null) {
+            return;
+        }
+        Set<Integer> current = new HashSet<>();
+        if (children != null) {
+            for (String partition : children) {
+                try {
+                    current.add(Integer.valueOf(partition));
+                } catch (NumberFormatException ex) {
+                    LOG.warn("Skipping offset node with an invalid partition: {}/{}", topic, partition);
+                }
+            }
+        }
+        for (Integer partition : new ArrayList<>(partitions)) {
+            if (!current.contains(partition)) {
+                removePartition(group, offsets, topic, partition);
+            }
+        }
+        for (Integer partition : current) {
+            if (partitions.add(partition)) {
+                String path = offsetsPath(group) + "/" + topic + "/" + partition;
+                zkClient.subscribeDataChanges(path, offsetListener);
+                updateOffset(path, zkClient.readData(path, true));
+            }
+        }
+    }
+
+    private synchronized void updateOffset(String path, Object data) {
+        offsetReads.mark();
+        // /consumers/{group}/offsets/{topic}/{partition}
+        String[] segments = path.split("/");
+        GroupOffsets offsets = groups.get(segments[2]);
+        if (offsets == null) {
+            return;
+        }
+        TopicAndPartition partition = new TopicAndPartition(segments[4], Integer.parseInt(segments[5]));
+        if (data == null) {
+            offsets.committed.remove(partition);
+            return;
+        }
+        try {
+            offsets.committed.put(partition, Long.parseLong(((String) data).trim()));
+        } catch (NumberFormatException ex) {
+            // written by some other client, the partition has no known offset until it is valid again
+            LOG.warn("Skipping invalid offset '{}' of {}", data, path);
+            offsets.committed.remove(partition);
+        }
+    }
+
+    private void removeGroup(String group) {
+        GroupOffsets offsets = groups.remove(group);
+        zkClient.unsubscribeChildChanges(offsetsPath(group), topicsListener);
+        if (offsets != null) {
+            new ArrayList<>(offsets.partitions.keySet()).forEach(topic -> removeTopic(group, offsets, topic));
+        }
+    }
+
+    private void removeTopic(String group, GroupOffsets offsets, String topic) {
+        zkClient.unsubscribeChildChanges(offsetsPath(group) + "/" + topic, partitionsListener);
+        Set<Integer> partitions = offsets.partitions.remove(topic);
+        if (partitions != null) {
+            new ArrayList<>(partitions).forEach(partition -> removePartition(group, offsets, topic, partition));
+        }
+    }
+
+    private void removePartition(String group, GroupOffsets offsets, String topic, Integer partition) {
+        zkClient.unsubscribeDataChanges(offsetsPath(group) + "/" + topic + "/" + partition, offsetListener);
+        Set<Integer> partitions = offsets.partitions.get(topic);
+        if (partitions != null) {
+            partitions.remove(partition);
+        }
+        offsets.committed.remove(new TopicAndPartition(topic, partition));
+    }
+
+    private Map<TopicAndPartition, Long> fetchLogEndOffsets(Set<String> topics) {
+        // brokers create the topics named in a metadata request, so topics which are gone must be left out
+        List<String> existing = topics.stream().filter(metadataCache::topicExists).collect(Collectors.toList());
+        if (existing.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return reader.latestOffsets(existing);
+    }
+    private static ConsumerGroupLag lag(String group, Map<TopicAndPartition, Long> committedOffsets,
+                                        Map<TopicAndPartition, Long> logEndOffsets, long timestamp) {
+        List<PartitionLag> partitions = new ArrayList<>(committedOffsets.size());
+        long totalLag = 0;
+        for (Map.Entry<TopicAndPartition, Long> committed : committedOffsets.entrySet()) {
+            PartitionLag partitionLag = new PartitionLag();
+            partitionLag.setTopic(committed.getKey().topic());
+            partitionLag.setPartition(committed.getKey().partition());
+            partitionLag.setCommittedOffset(committed.getValue());
+            Long logEndOffset = logEndOffsets.get(committed.getKey());
+            if (logEndOffset != null) {
+                // the log can be truncated below the committed offset, a negative lag would be meaningless
+                long lag = Math.max(0, logEndOffset - committed.getValue());
+                partitionLag.setLogEndOffset(logEndOffset);
+                partitionLag.setLag(lag);
+                totalLag += lag;
+            }
+            partitions.add(partitionLag);
+        }
+        partitions.sort(Comparator.comparing(PartitionLag::getTopic).thenComparingInt(PartitionLag::getPartition));
+
+        ConsumerGroupLag groupLag = new ConsumerGroupLag();
+        groupLag.setGroup(group);
+        groupLag.setTimestamp(timestamp);
+        groupLag.setTotalLag(totalLag);
+        groupLag.setPartitions(partitions);
+        return groupLag;
+    }
+
+    private static String offsetsPath(String group) {
+        return ZkUtils.ConsumersPath() + "/" + group + "/offsets";
+    }
+
+    /**
+     * The watched topics and partitions of a group and their committed offsets.
+     */
+    private static class GroupOffsets {
+        private final Map<String, Set<Integer>> partitions = new HashMap<>();
+        private final Map<TopicAndPartition, Long> committed = new HashMap<>();
+    }
+
+    private class GroupsListener implements IZkChildListener {
+        @Override
+        public void handleChildChange(String parentPath, List<String> children) {
+            LOG.debug("Consumer groups changed");
+            updateGroups(children);
+        }
+    }
+
+    private class TopicsListener implements IZkChildListener {
+        @Override
+        public void handleChildChange(String parentPath, List<String> children) {
+            // /consumers/{group}/offsets
+            updateTopics(parentPath.split("/")[2], children);
+        }
+    }
+
+    private class PartitionsListener implements IZkChildListener {
+        @Override
+        public void handleChildChange(String parentPath, List<String> children) {
+            // /consumers/{group}/offsets/{topic}
+            String[] segments = parentPath.split("/");
+            updatePartitions(segments[2], segments[4], children);
+        }
+    }
+
+    private class OffsetListener implements IZkDataListener {
+        @Override
+        public void handleDataChange(String dataPath, Object data) {
+            updateOffset(dataPath, data);
+        }
+
+        @Override
+        public void handleDataDeleted(String dataPath) {
+            updateOffset(dataPath, null);
+        }
+    }
+
+    private class SessionListener implements IZkStateListener {
+        @Override
+        public void handleStateChanged(Watcher.Event.KeeperState state) {
+            // nothing to do, ZkClient re-registers the watches by itself
+        }
+
+        @Override
+        public void handleNewSession() {
+            LOG.info("New Zookeeper session, consumer group events might have been lost");
+            reloadNeeded = true;
+        }
+
+        @Override
+        public void handleSessionEstablishmentError(Throwable error) {
+            LOG.warn("Zookeeper session could not be established", error);
+        }
+    }
+}
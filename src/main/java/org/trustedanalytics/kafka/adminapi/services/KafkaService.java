@@ -16,32 +16,89 @@
 
 package org.trustedanalytics.kafka.adminapi.services;
 
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
 import kafka.admin.AdminUtils;
-import kafka.consumer.ConsumerConfig;
+import kafka.common.TopicExistsException;
+import kafka.common.UnknownTopicOrPartitionException;
+import kafka.log.LogConfig;
+import kafka.utils.ZkUtils;
 import org.I0Itec.zkclient.ZkClient;
 import org.I0Itec.zkclient.exception.ZkInterruptedException;
+import org.I0Itec.zkclient.exception.ZkNodeExistsException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Bean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.trustedanalytics.kafka.adminapi.config.KafkaConfig;
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+import org.trustedanalytics.kafka.adminapi.exceptions.ServiceUnavailableException;
+import org.trustedanalytics.kafka.adminapi.kafka.ChannelMessageReader;
+import org.trustedanalytics.kafka.adminapi.kafka.ChannelMessageWriter;
+import org.trustedanalytics.kafka.adminapi.kafka.ExportFormat;
 import org.trustedanalytics.kafka.adminapi.kafka.KafkaReader;
 import org.trustedanalytics.kafka.adminapi.kafka.KafkaWriter;
+import org.trustedanalytics.kafka.adminapi.kafka.MessageFilter;
+import org.trustedanalytics.kafka.adminapi.kafka.MessageHandler;
+import org.trustedanalytics.kafka.adminapi.kafka.ReadOptions;
+import org.trustedanalytics.kafka.adminapi.kafka.ReadResult;
+import org.trustedanalytics.kafka.adminapi.kafka.WriteBatcher;
+import org.trustedanalytics.kafka.adminapi.kafka.WriteSpool;
+import org.trustedanalytics.kafka.adminapi.model.ExportResult;
+import org.trustedanalytics.kafka.adminapi.model.ImportResult;
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+import org.trustedanalytics.kafka.adminapi.model.MessageRecord;
+import org.trustedanalytics.kafka.adminapi.model.PartitionMessages;
+import org.trustedanalytics.kafka.adminapi.model.RecordResult;
 import org.trustedanalytics.kafka.adminapi.model.TopicDescription;
-import scala.collection.JavaConverters;
+import org.trustedanalytics.kafka.adminapi.model.TopicDetails;
+import org.trustedanalytics.kafka.adminapi.model.TopicMessages;
+import org.trustedanalytics.kafka.adminapi.model.TopicResult;
+import org.trustedanalytics.kafka.adminapi.model.TopicUpdate;
+import org.trustedanalytics.kafka.adminapi.services.admission.AdmissionControl;
+import org.trustedanalytics.kafka.adminapi.services.admission.ConsumerSession;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Service
 public class KafkaService {
 
     private static final Logger LOG = LoggerFactory.getLogger(KafkaService.class);
 
+    // export files are named without any path, so that they stay in the export directory
+    private static final Pattern FILE_NAME = Pattern.compile("[A-Za-z0-9_-][A-Za-z0-9._-]*");
+    private static final int IMPORT_BUFFER_SIZE = 64 * 1024;
+
     @Autowired
     private ZkClient zkClient;
 
@@ -49,17 +106,84 @@ public class KafkaService {
     private KafkaWriter writer;
 
     @Autowired
-    private KafkaConfig config;
+    private WriteBatcher writeBatcher;
 
-    public List<String> listTopics() {
-        LOG.info("Listing topics");
+    @Autowired
+    private WriteSpool writeSpool;
+
+    @Autowired
+    private KafkaReader reader;
+
+    @Autowired
+    private TopicMetadataCache metadataCache;
+
+    @Autowired
+    private ReadCoalescer readCoalescer;
+
+    @Autowired
+    private AdmissionControl admissionControl;
+
+    @Autowired
+    private MetricsRegistry metrics;
+
+    @Autowired
+    @Qualifier("adminExecutor")
+    private Executor adminExecutor;
+
+    @Value("${kafka.export.dir}")
+    private String exportDir;
+
+    @Value("${kafka.import.maxInFlightMessages}")
+    private int importMaxInFlightMessages;
+
+    @Value("${kafka.import.timeoutMs}")
+    private long importTimeoutMs;
+
+    @Value("${kafka.reader.fetchSize}")
+    private int fetchSize;
+
+    @Value("${kafka.stats.probeBytes}")
+    private int probeBytes;
+
+    private OperationMetrics listOperation;
+    private OperationMetrics createOperation;
+    private OperationMetrics configOperation;
+    private OperationMetrics updateOperation;
+    private OperationMetrics deleteOperation;
+    private OperationMetrics existsOperation;
+    private OperationMetrics describeOperation;
+    private OperationMetrics readOperation;
+    private OperationMetrics streamOperation;
+    private OperationMetrics readPartitionOperation;
+    private OperationMetrics writeOperation;
+    private OperationMetrics writeBatchOperation;
+    private OperationMetrics exportOperation;
+    private OperationMetrics importOperation;
+    private OperationMetrics sampleOperation;
 
-        List<String> resultTopicList = new ArrayList<>();
+    @PostConstruct
+    protected void init() {
+        listOperation = new OperationMetrics("listTopics");
+        createOperation = new OperationMetrics("createTopic");
+        configOperation = new OperationMetrics("getTopicConfig");
+        updateOperation = new OperationMetrics("updateTopic");
+        deleteOperation = new OperationMetrics("deleteTopic");
+        existsOperation = new OperationMetrics("topicExists");
+        describeOperation = new OperationMetrics("describeTopics");
+        readOperation = new OperationMetrics("readTopic");
+        streamOperation = new OperationMetrics("streamTopic");
+        readPartitionOperation = new OperationMetrics("readPartition");
+        writeOperation = new OperationMetrics("writeMessage");
+        writeBatchOperation = new OperationMetrics("writeMessages");
+        exportOperation = new OperationMetrics("exportMessages");
+        importOperation = new OperationMetrics("importMessages");
+        sampleOperation = new OperationMetrics("sampleTopic");
+    }
 
-        java.util.Map<String, Properties> topicsWithConfigs = JavaConverters.mapAsJavaMapConverter(AdminUtils.fetchAllTopicConfigs(zkClient)).asJava();
-        LOG.debug("topicsWithConfigs: {}", topicsWithConfigs);
+    public List<String> listTopics(boolean refresh) {
+        LOG.info("Listing topics");
 
-        resultTopicList.addAll(topicsWithConfigs.keySet());
+        List<String> resultTopicList = listOperation.time(() -> metadataCache.listTopics(refresh));
 
         LOG.debug("Topics found: {}", resultTopicList);
         return resultTopicList;
@@ -68,28 +192,422 @@ public class KafkaService {
     public void createTopic(TopicDescription topicDescription) {
         LOG.info("Topic creation: {}", topicDescription);
 
-        Properties topicConfig = new Properties();
-        AdminUtils.createTopic(zkClient, topicDescription.getTopic(), topicDescription.getPartitions(), TopicDescription.DEFAULT_REPLICATION_FACTOR, topicConfig);
+        validateTopics(Collections.singletonList(topicDescription));
+        doCreateTopic(topicDescription);
 
         LOG.debug("Topic created");
     }
 
+    /**
+     * Creates the topics in parallel. All of them are validated first, so that an invalid request creates nothing.
+     * @param ifAbsent Whether a topic which already exists is reported as EXISTS rather than FAILED
+     * @return A future completed with the result of every topic, in the order of the request
+     */
+    public CompletableFuture<List<TopicResult>> createTopics(List<TopicDescription> topicDescriptions,
+                                                             boolean ifAbsent) {
+        LOG.info("Bulk topic creation: {} topics, ifAbsent={}", topicDescriptions.size(), ifAbsent);
+
+        validateTopics(topicDescriptions);
+
+        List<CompletableFuture<TopicResult>> futures = new ArrayList<>(topicDescriptions.size());
+        for (TopicDescription topicDescription : topicDescriptions) {
+            futures.add(submitAdmin(topicDescription.getTopic(), () -> {
+                try {
+                    doCreateTopic(topicDescription);
+                    return TopicResult.of(topicDescription.getTopic(), TopicResult.Status.CREATED);
+                } catch (TopicExistsException ex) {
+                    if (ifAbsent) {
+                        return TopicResult.of(topicDescription.getTopic(), TopicResult.Status.EXISTS);
+                    }
+                    return TopicResult.failure(topicDescription.getTopic(), ex.getMessage());
+                }
+            }));
+        }
+        return allResults(futures);
+    }
+
+    /**
+     * @return The topic level overrides of the broker configuration
+     */
+    public Map<String, String> getTopicConfig(String topic) {
+        LOG.info("getTopicConfig: {}", topic);
+
+        Properties config = configOperation.time(() -> metadataCache.getConfig(topic));
+        Map<String, String> result = new TreeMap<>();
+        config.stringPropertyNames().forEach(name -> result.put(name, config.getProperty(name)));
+        return result;
+    }
+
+    /**
+     * @return UPDATED, or UNCHANGED if the topic already had the given config and partitions
+     */
+    public TopicResult.Status updateTopic(TopicUpdate topicUpdate) {
+        LOG.info("Topic update: {}", topicUpdate);
+
+        validateUpdates(Collections.singletonList(topicUpdate));
+        TopicResult.Status status = doUpdateTopic(topicUpdate);
+
+        LOG.debug("Topic update done: {}", status);
+        return status;
+    }
+
+    /**
+     * Updates the topics in parallel, so that their Zookeeper requests are pipelined over the session rather than
+     * waiting for each other. All of them are validated first, so that an invalid request changes nothing.
+     * @return A future completed with the result of every topic, in the order of the request
+     */
+    public CompletableFuture<List<TopicResult>> updateTopics(List<TopicUpdate> topicUpdates) {
+        LOG.info("Bulk topic update: {} topics", topicUpdates.size());
+
+        validateUpdates(topicUpdates);
+
+        List<CompletableFuture<TopicResult>> futures = new ArrayList<>(topicUpdates.size());
+        for (TopicUpdate topicUpdate : topicUpdates) {
+            futures.add(submitAdmin(topicUpdate.getTopic(),
+                    () -> TopicResult.of(topicUpdate.getTopic(), doUpdateTopic(topicUpdate))));
+        }
+        return allResults(futures);
+    }
+
+    /**
+     * Marks the topic for deletion, the brokers delete it if they run with delete.topic.enable=true.
+     */
+    public void deleteTopic(String topic) {
+        LOG.info("Topic deletion: {}", topic);
+
+        doDeleteTopic(topic);
+
+        LOG.debug("Topic marked for deletion");
+    }
+
+    /**
+     * Marks the topics for deletion in parallel, like {@link #updateTopics(List)}.
+     * @return A future completed with the result of every topic, in the order of the request
+     */
+    public CompletableFuture<List<TopicResult>> deleteTopics(List<String> topics) {
+        LOG.info("Bulk topic deletion: {} topics", topics.size());
+
+        List<CompletableFuture<TopicResult>> futures = new ArrayList<>(topics.size());
+        for (String topic : topics) {
+            futures.add(submitAdmin(topic, () -> {
+                doDeleteTopic(topic);
+                return TopicResult.of(topic, TopicResult.Status.MARKED_FOR_DELETION);
+            }));
+        }
+        return allResults(futures);
+    }
+
     public boolean topicExists(String topic) {
-        return AdminUtils.topicExists(zkClient, topic);
+        return existsOperation.time(() -> metadataCache.topicExists(topic));
+    }
+
+    public TopicDetails describeTopic(String topic) {
+        LOG.info("describeTopic: {}", topic);
+        return describeOperation.time(() -> reader.describeTopics(Collections.singletonList(topic)).get(0));
+    }
+
+    /**
+     * @param topics The topics to describe, all topics if empty
+     */
+    public List<TopicDetails> describeTopics(List<String> topics) {
+        LOG.info("describeTopics: {}", topics);
+        if (topics.isEmpty()) {
+            return describeOperation.time(() -> reader.describeTopics(topics));
+        }
+
+        // brokers create the topics named in a metadata request when they don't exist, so unknown ones are left out
+        List<String> existing = topics.stream().filter(metadataCache::topicExists).collect(Collectors.toList());
+        Map<String, TopicDetails> described = new HashMap<>();
+        if (!existing.isEmpty()) {
+            describeOperation.time(() -> reader.describeTopics(existing))
+                    .forEach(details -> described.put(details.getTopic(), details));
+        }
+
+        List<TopicDetails> result = new ArrayList<>(topics.size());
+        for (String topic : topics) {
+            TopicDetails details = described.get(topic);
+            if (details == null) {
+                details = new TopicDetails();
+                details.setTopic(topic);
+                details.setError(UnknownTopicOrPartitionException.class.getSimpleName());
+            }
+            result.add(details);
+        }
+        return result;
     }
 
-    public List<String> readTopic(String topic) {
+    public TopicMessages readTopic(String topic, MessageFilter filter, ReadOptions options) {
         LOG.info("readTopic: {}", topic);
-        List<String> messages;
-        try (KafkaReader reader = new KafkaReader(config.connector())) {
-            messages = reader.readMessages(topic);
+        // a whole topic read always ends at the latest offset, so a read already in flight is as good as a new one
+        return readOperation.time(() ->
+                readCoalescer.read(ReadCoalescer.key("topic", topic, filter, options),
+                        () -> inConsumerSession(() -> reader.readMessages(topic, filter, options))));
+    }
+
+    /**
+     * Unlike other reads it does not open a consumer session, a streamed response has to take one
+     * before it is committed, see {@link AdmissionControl#openConsumerSession()}.
+     */
+    public ReadResult readTopic(String topic, MessageFilter filter, ReadOptions options, MessageHandler handler) {
+        LOG.info("readTopic streaming: {}", topic);
+        return streamOperation.time(() -> reader.readMessages(topic, filter, options, handler));
+    }
+
+    public PartitionMessages readPartition(String topic, int partition, Long offset, int limit, int maxBytes,
+                                           MessageFormat format, MessageFilter filter) {
+        LOG.info("readPartition: {}-{}", topic, partition);
+        return readPartitionOperation.time(() ->
+                readCoalescer.read(ReadCoalescer.key("range", topic, partition, offset, limit, maxBytes, format, filter),
+                        () -> inConsumerSession(() ->
+                                reader.readPartition(topic, partition, offset, limit, maxBytes, format, filter))));
+    }
+
+    public PartitionMessages readPartitionTail(String topic, int partition, int count, int maxBytes,
+                                               MessageFormat format, MessageFilter filter) {
+        LOG.info("readPartitionTail: {}-{}", topic, partition);
+        return readPartitionOperation.time(() ->
+                readCoalescer.read(ReadCoalescer.key("tail", topic, partition, count, maxBytes, format, filter),
+                        () -> inConsumerSession(() ->
+                                reader.readPartitionTail(topic, partition, count, maxBytes, format, filter))));
+    }
+
+    /**
+     * @return Up to count messages picked at random across all partitions
+     */
+    public List<Object> sampleTopic(String topic, int count, MessageFormat format) {
+        LOG.info("sampleTopic: {}, count={}", topic, count);
+        return sampleOperation.time(() -> inConsumerSession(() ->
+                reader.sampleMessages(topic, count, probeBytes, format, ThreadLocalRandom.current())));
+    }
+
+    public CompletableFuture<RecordResult> writeMessage(String topic, byte[] key, byte[] message) {
+        LOG.debug("writeMessage to Kafka: topic={}, {} bytes", topic, message.length);
+        // concurrent single message writes to a topic are sent together, spooled while Kafka is unavailable
+        return writeOperation.timeAsync(() -> writeSpool.write(topic, key, message,
+                () -> writeBatcher.writeMessage(topic, key, message)));
+    }
+
+    public CompletableFuture<List<RecordResult>> writeMessages(String topic, List<MessageRecord> records) {
+        LOG.debug("writeMessages to Kafka: topic={}, count={}", topic, records.size());
+        return writeBatchOperation.timeAsync(() -> writeSpool.writeAll(topic, records,
+                () -> writer.writeMessages(topic, records)));
+    }
+
+    /**
+     * Writes a topic range to the channel, straight from the fetched data.
+     * Like a streaming read it does not open a consumer session, the caller has to.
+     */
+    public ExportResult exportMessages(String topic, Integer partition, Long fromOffset, Long toOffset,
+                                       ExportFormat format, WritableByteChannel channel) {
+        LOG.info("exportMessages: {}, partition={}, format={}", topic, partition, format);
+        ChannelMessageWriter messageWriter = new ChannelMessageWriter(channel, format);
+        ExportResult result = exportOperation.time(() ->
+                reader.exportMessages(topic, partition, fromOffset, toOffset, messageWriter));
+        result.setBytes(messageWriter.getBytes());
+        return result;
+    }
+
+    /**
+     * Writes a topic range to a new file of the export directory.
+     */
+    public ExportResult exportMessagesToFile(String topic, Integer partition, Long fromOffset, Long toOffset,
+                                             ExportFormat format, String file) {
+        Path path = exportFile(file);
+        try {
+            Files.createDirectories(path.getParent());
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ExportResult result = inConsumerSession(() ->
+                        exportMessages(topic, partition, fromOffset, toOffset, format, channel));
+                result.setFile(file);
+                return result;
+            } catch (RuntimeException ex) {
+                // a partial export would be mistaken for a complete one
+                Files.deleteIfExists(path);
+                throw ex;
+            }
+        } catch (FileAlreadyExistsException ex) {
+            throw new BadRequestException("Export file already exists: " + file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes the messages read from the channel to the topic, as fast as Kafka acknowledges them.
+     * An import which stops early returns where it stopped instead of failing, see {@link ImportResult}.
+     */
+    public ImportResult importMessages(String topic, ExportFormat format, boolean keepPartitions,
+                                       ReadableByteChannel channel) {
+        LOG.info("importMessages: {}, format={}, keepPartitions={}", topic, format, keepPartitions);
+        ChannelMessageReader messages = new ChannelMessageReader(channel, format, IMPORT_BUFFER_SIZE, fetchSize);
+        return importOperation.time(() ->
+                writer.importMessages(topic, messages, keepPartitions, importMaxInFlightMessages, importTimeoutMs));
+    }
+
+    /**
+     * Writes the messages of a file of the export directory to the topic.
+     */
+    public ImportResult importMessagesFromFile(String topic, ExportFormat format, boolean keepPartitions,
+                                               String file) {
+        try (FileChannel channel = FileChannel.open(exportFile(file), StandardOpenOption.READ)) {
+            return importMessages(topic, format, keepPartitions, channel);
+        } catch (NoSuchFileException ex) {
+            throw new BadRequestException("Export file does not exist: " + file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private Path exportFile(String file) {
+        if (!FILE_NAME.matcher(file).matches()) {
+            throw new BadRequestException("Invalid export file name: " + file);
+        }
+        return Paths.get(exportDir).resolve(file);
+    }
+
+    /**
+     * A shared read takes a single session, however many requests wait for it.
+     */
+    private <T> T inConsumerSession(Supplier<T> read) {
+        try (ConsumerSession session = admissionControl.openConsumerSession()) {
+            return read.get();
+        }
+    }
+
+    private void doCreateTopic(TopicDescription topicDescription) {
+        createOperation.time(() -> {
+            AdminUtils.createTopic(zkClient, topicDescription.getTopic(), topicDescription.getPartitions(),
+                    topicDescription.getReplicationFactor(), toProperties(topicDescription.getConfig()));
+            return null;
+        });
+    }
+
+    private TopicResult.Status doUpdateTopic(TopicUpdate topicUpdate) {
+        String topic = topicUpdate.getTopic();
+        return updateOperation.time(() -> {
+            // read from Zookeeper rather than the cache, a stale partition count would make a repeated update fail
+            Map<Integer, List<Integer>> assignment = metadataCache.reloadPartitionAssignment(topic);
+            if (assignment == null) {
+                throw new UnknownTopicOrPartitionException("Topic does not exist: " + topic);
+            }
+            Integer partitions = topicUpdate.getPartitions();
+            if (partitions != null && partitions < assignment.size()) {
+                throw new BadRequestException("Topic " + topic + " has " + assignment.size()
+                        + " partitions, partitions can only be added");
+            }
+
+            boolean updated = false;
+            // partitions are added first, they may be rejected by the brokers, e.g. when there are too few of them
+            // for the replication factor, while the config was validated up front and is only written
+            if (partitions != null && partitions > assignment.size()) {
+                // new partitions are assigned to brokers the same way as those of a new topic
+                AdminUtils.addPartitions(zkClient, topic, partitions, "", true, new Properties());
+                updated = true;
+            }
+            if (!topicUpdate.getConfig().isEmpty()) {
+                // the update replaces the whole config of the topic, so the current one is read from Zookeeper as well
+                Properties current = AdminUtils.fetchTopicConfig(zkClient, topic);
+                Properties config = new Properties();
+                config.putAll(current);
+                topicUpdate.getConfig().forEach((name, value) -> {
+                    if (value == null) {
+                        config.remove(name);
+                    } else {
+                        config.setProperty(name, value);
+                    }
+                });
+                if (!config.equals(current)) {
+                    AdminUtils.changeTopicConfig(zkClient, topic, config);
+                    updated = true;
+                }
+            }
+            return updated ? TopicResult.Status.UPDATED : TopicResult.Status.UNCHANGED;
+        });
+    }
+
+    private void doDeleteTopic(String topic) {
+        deleteOperation.time(() -> {
+            if (!metadataCache.topicExists(topic)) {
+                throw new UnknownTopicOrPartitionException("Topic does not exist: " + topic);
+            }
+            try {
+                AdminUtils.deleteTopic(zkClient, topic);
+            } catch (ZkNodeExistsException ex) {
+                LOG.debug("Topic {} is already marked for deletion", topic);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Checks what can only be checked against the cluster: the number of brokers and the topic configs.
+     */
+    private void validateTopics(List<TopicDescription> topicDescriptions) {
+        int brokers = ZkUtils.getSortedBrokerList(zkClient).size();
+        for (TopicDescription topicDescription : topicDescriptions) {
+            if (topicDescription.getReplicationFactor() > brokers) {
+                throw new BadRequestException("Replication factor " + topicDescription.getReplicationFactor()
+                        + " of topic " + topicDescription.getTopic() + " is larger than the number of brokers " + brokers);
+            }
+            try {
+                LogConfig.validate(toProperties(topicDescription.getConfig()));
+            } catch (RuntimeException ex) {
+                throw new BadRequestException("Invalid config of topic " + topicDescription.getTopic() + ": "
+                        + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks the config overrides to set, those to remove need not be valid.
+     */
+    private static void validateUpdates(List<TopicUpdate> topicUpdates) {
+        for (TopicUpdate topicUpdate : topicUpdates) {
+            Properties config = new Properties();
+            topicUpdate.getConfig().forEach((name, value) -> {
+                if (value != null) {
+                    config.setProperty(name, value);
+                }
+            });
+            try {
+                LogConfig.validate(config);
+            } catch (RuntimeException ex) {
+                throw new BadRequestException("Invalid config of topic " + topicUpdate.getTopic() + ": "
+                        + ex.getMessage());
+            }
         }
-        return messages;
     }
 
-    public void writeMessage(String topic, String message) {
-        LOG.debug("writeMessage to Kafka: topic={}, msg={}", topic, message);
-        writer.writeMessage(topic, message);
+    private static CompletableFuture<List<TopicResult>> allResults(List<CompletableFuture<TopicResult>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                .thenApply(done -> {
+                    List<TopicResult> results = new ArrayList<>(futures.size());
+                    futures.forEach(future -> results.add(future.join()));
+                    return results;
+                });
+    }
+
+    /**
+     * Runs an operation on the admin executor. A failure, including a rejection by a full executor,
+     * is reported in the result of the topic instead of failing the whole request.
+     */
+    private CompletableFuture<TopicResult> submitAdmin(String topic, Supplier<TopicResult> operation) {
+        try {
+            return CompletableFuture.supplyAsync(operation, adminExecutor)
+                    .exceptionally(ex -> {
+                        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                        LOG.error("Operation on topic {} failed", topic, cause);
+                        return TopicResult.failure(topic, cause.getMessage());
+                    });
+        } catch (ServiceUnavailableException ex) {
+            return CompletableFuture.completedFuture(TopicResult.failure(topic, ex.getMessage()));
+        }
+    }
+
+    private static Properties toProperties(Map<String, String> config) {
+        Properties properties = new Properties();
+        properties.putAll(config);
+        return properties;
     }
 
     @PreDestroy
@@ -101,4 +619,54 @@ public class KafkaService {
             LOG.warn("Closing zkClient interrupted", ex);
         }
     }
+
+    /**
+     * Time and failures of a single kind of operation.
+     */
+    private class OperationMetrics {
+        private final Timer timer;
+        private final Meter failures;
+
+        OperationMetrics(String operation) {
+            timer = metrics.newTimer(KafkaService.class, operation);
+            failures = metrics.newMeter(KafkaService.class, operation + "Failures", "requests", TimeUnit.SECONDS);
+        }
+
+        <T> T time(Supplier<T> operation) {
+            TimerContext context = timer.time();
+            try {
+                return operation.get();
+            } catch (RuntimeException ex) {
+                failures.mark();
+                throw ex;
+            } finally {
+                context.stop();
+            }
+        }
+
+        <T> CompletableFuture<T> timeAsync(Supplier<CompletableFuture<T>> operation) {
+            TimerContext context = timer.time();
+            CompletableFuture<T> future;
+            try {
+                future = operation.get();
+            } catch (RuntimeException ex) {
+                context.stop();
+                failures.mark();
+                throw ex;
+            }
+            // whenComplete would wrap failures into a CompletionException, the caller gets the original one
+            CompletableFuture<T> timed = new CompletableFuture<>();
+            future.whenComplete((result, throwable) -> {
+                context.stop();
+                if (throwable != null) {
+                    failures.mark();
+                    timed.completeExceptionally(throwable instanceof CompletionException && throwable.getCause() != null
+                            ? throwable.getCause() : throwable);
+                } else {
+                    timed.complete(result);
+                }
+            });
+            return timed;
+        }
+    }
 }
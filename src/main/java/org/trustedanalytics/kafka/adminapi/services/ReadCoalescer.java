@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.services;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.kafka.adminapi.kafka.ReadMemory;
+import org.trustedanalytics.kafka.adminapi.model.KafkaMessage;
+import org.trustedanalytics.kafka.adminapi.model.PartitionMessages;
+import org.trustedanalytics.kafka.adminapi.model.TopicMessages;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent identical reads share a single fetch from Kafka.
+ * The first caller of a key performs the read, callers arriving while it is in flight wait for its result.
+ * Results can additionally be kept for a short time, bounded by their estimated size in bytes.
+ * The cache is disabled when kafka.reader.cache.ttlMs is 0.
+ * Every caller gets its own reference to the read memory of the result and closes it once the result is written,
+ * a cached result keeps its memory reserved until it is evicted.
+ */
+@Component
+public class ReadCoalescer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReadCoalescer.class);
+
+    // rough per-object overhead used when estimating the size of cached results
+    private static final int OBJECT_OVERHEAD = 40;
+
+    @Autowired
+    private MetricsRegistry metrics;
+
+    @Value("${kafka.reader.cache.ttlMs}")
+    private long ttlMs;
+
+    @Value("${kafka.reader.cache.maxBytes}")
+    private long maxBytes;
+
+    private final ConcurrentMap<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    // access ordered, so the least recently used results are evicted first
+    private final LinkedHashMap<List<Object>, CachedResult> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long cachedBytes;
+
+    // the earliest expiry of a cached result, expired results are evicted when it is reached
+    private long earliestExpiry = Long.MAX_VALUE;
+
+    private Meter hits;
+    private Meter misses;
+    private Meter coalesced;
+    private Meter evictions;
+
+    @PostConstruct
+    protected void init() {
+        hits = metrics.newMeter(ReadCoalescer.class, "hits", "reads", TimeUnit.SECONDS);
+        misses = metrics.newMeter(ReadCoalescer.class, "misses", "reads", TimeUnit.SECONDS);
+        coalesced = metrics.newMeter(ReadCoalescer.class, "coalesced", "reads", TimeUnit.SECONDS);
+        evictions = metrics.newMeter(ReadCoalescer.class, "evictions", "results", TimeUnit.SECONDS);
+        metrics.newGauge(ReadCoalescer.class, "cachedBytes", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                synchronized (cache) {
+                    return cachedBytes;
+                }
+            }
+        });
+        metrics.newGauge(ReadCoalescer.class, "cachedResults", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                synchronized (cache) {
+                    return cache.size();
+                }
+            }
+        });
+    }
+
+    public static List<Object> key(Object... parts) {
+        return Arrays.asList(parts);
+    }
+
+    /**
+     * Returns a cached result of the key, the result of a read of the key which is already in flight
+     * or performs the read in the calling thread.
+     * Results are shared between callers and must not be modified.
+     * The caller closes the read memory of the result, if it has any, once it is done with it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T read(List<Object> key, Supplier<T> read) {
+        T cached = (T) getCached(key);
+        if (cached != null) {
+            hits.mark();
+            return cached;
+        }
+
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            LOG.debug("Joining read in flight: {}", key);
+            Object result = join(leader);
+            if (retain(result)) {
+                coalesced.mark();
+                return (T) result;
+            }
+            // all other holders are done with the result and released its memory, so it is read again
+            inFlight.remove(key, leader);
+            return read(key, read);
+        }
+
+        misses.mark();
+        try {
+            T result = read.get();
+            putCached(key, result);
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private static Object join(CompletableFuture<Object> leader) {
+        try {
+            return leader.join();
+        } catch (CompletionException ex) {
+            // fail with the same exception as the leader, so that it is handled the same way
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * @return The cached result with a reference to its memory taken for the caller
+     */
+    private Object getCached(List<Object> key) {
+        if (ttlMs <= 0) {
+            return null;
+        }
+        synchronized (cache) {
+            // expired results are evicted on every read, so that they do not hold read memory for long
+            evictExpired(System.currentTimeMillis());
+            CachedResult cached = cache.get(key);
+            // the cache holds a reference until it evicts the result, so taking another one succeeds
+            return cached != null && retain(cached.result) ? cached.result : null;
+        }
+    }
+
+    private void putCached(List<Object> key, Object result) {
+        if (ttlMs <= 0 || result == null) {
+            return;
+        }
+        long size = estimateSize(result);
+        if (size > maxBytes || !retain(result)) {
+            return;
+        }
+        synchronized (cache) {
+            remove(key);
+            long expiresAt = System.currentTimeMillis() + ttlMs;
+            cache.put(key, new CachedResult(result, size, expiresAt));
+            cachedBytes += size;
+            earliestExpiry = Math.min(earliestExpiry, expiresAt);
+            evictOversized();
+        }
+    }
+
+    private void evictExpired(long now) {
+        if (now <= earliestExpiry) {
+            return;
+        }
+        earliestExpiry = Long.MAX_VALUE;
+        Iterator<CachedResult> results = cache.values().iterator();
+        while (results.hasNext()) {
+            CachedResult cached = results.next();
+            if (cached.expiresAt < now) {
+                results.remove();
+                evicted(cached);
+            } else {
+                earliestExpiry = Math.min(earliestExpiry, cached.expiresAt);
+            }
+        }
+    }
+
+    private void evictOversized() {
+        Iterator<CachedResult> eldest = cache.values().iterator();
+        while (cachedBytes > maxBytes && eldest.hasNext()) {
+            CachedResult cached = eldest.next();
+            eldest.remove();
+            evicted(cached);
+        }
+    }
+
+    private void evicted(CachedResult cached) {
+        cachedBytes -= cached.size;
+        release(cached.result);
+        evictions.mark();
+    }
+
+    private void remove(List<Object> key) {
+        CachedResult removed = cache.remove(key);
+        if (removed != null) {
+            cachedBytes -= removed.size;
+            release(removed.result);
+        }
+    }
+
+    private static void release(Object result) {
+        ReadMemory.Lease memory = memoryOf(result);
+        if (memory != null) {
+            memory.close();
+        }
+    }
+
+    /**
+     * @return false if the result has read memory which is released already
+     */
+    private static boolean retain(Object result) {
+        ReadMemory.Lease memory = memoryOf(result);
+        return memory == null || memory.retain();
+    }
+
+    private static ReadMemory.Lease memoryOf(Object result) {
+        if (result instanceof PartitionMessages) {
+            return ((PartitionMessages) result).getMemory();
+        }
+        if (result instanceof TopicMessages) {
+            return ((TopicMessages) result).getMemory();
+        }
+        return null;
+    }
+
+    private static long estimateSize(Object result) {
+        if (result instanceof PartitionMessages) {
+            return OBJECT_OVERHEAD + estimateSize(((PartitionMessages) result).getMessages());
+        }
+        if (result instanceof TopicMessages) {
+            return OBJECT_OVERHEAD + estimateSize(((TopicMessages) result).getMessages());
+        }
+        if (result instanceof Collection) {
+            long size = OBJECT_OVERHEAD;
+            for (Object message : (Collection<?>) result) {
+                size += estimateSize(message);
+            }
+            return size;
+        }
+        if (result instanceof String) {
+            return OBJECT_OVERHEAD + 2L * ((String) result).length();
+        }
+        if (result instanceof KafkaMessage) {
+            KafkaMessage message = (KafkaMessage) result;
+            return 3 * OBJECT_OVERHEAD + length(message.getKey()) + length(message.getValue());
+        }
+        return OBJECT_OVERHEAD;
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static class CachedResult {
+        private final Object result;
+        private final long size;
+        private final long expiresAt;
+
+        CachedResult(Object result, long size, long expiresAt) {
+            this.result = result;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+import kafka.admin.AdminUtils;
+import kafka.utils.ZkUtils;
+import org.I0Itec.zkclient.IZkChildListener;
+import org.I0Itec.zkclient.IZkDataListener;
+import org.I0Itec.zkclient.IZkStateListener;
+import org.I0Itec.zkclient.ZkClient;
+import org.apache.zookeeper.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.kafka.adminapi.kafka.TopicMeters;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps topics, their partition assignment and their configs in memory.
+ * The cache is filled once and then kept current by Zookeeper watches on
+ * /brokers/topics and /config/topics. Watch events can be lost while the Zookeeper session is
+ * being re-established, so the whole cache is reloaded when it gets older than the staleness bound.
+ */
+@Component
+public class TopicMetadataCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TopicMetadataCache.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Autowired
+    private ZkClient zkClient;
+
+    @Autowired
+    private MetricsRegistry metrics;
+
+    // the meters of deleted topics are removed with them
+    @Autowired
+    private List<TopicMeters> topicMeters;
+
+    @Value("${kafka.metadata.cache.maxStalenessMs}")
+    private long maxStalenessMs;
+
+    // topic -> partition -> replica broker ids
+    private final ConcurrentMap<String, Map<Integer, List<Integer>>> assignments = new ConcurrentHashMap<>();
+
+    // topic configs are loaded lazily, as most requests don't need them
+    private final ConcurrentMap<String, Properties> configs = new ConcurrentHashMap<>();
+
+    private final TopicsListener topicsListener = new TopicsListener();
+    private final AssignmentListener assignmentListener = new AssignmentListener();
+    private final ConfigListener configListener = new ConfigListener();
+    private final SessionListener sessionListener = new SessionListener();
+
+    private volatile long lastRefresh;
+
+    private Meter hits;
+    private Meter misses;
+    private Timer refreshes;
+    private Timer topicLoads;
+
+    @PostConstruct
+    protected void init() {
+        hits = metrics.newMeter(TopicMetadataCache.class, "hits", "lookups", TimeUnit.SECONDS);
+        misses = metrics.newMeter(TopicMetadataCache.class, "misses", "lookups", TimeUnit.SECONDS);
+        refreshes = metrics.newTimer(TopicMetadataCache.class, "refreshes");
+        topicLoads = metrics.newTimer(TopicMetadataCache.class, "topicLoads");
+        metrics.newGauge(TopicMetadataCache.class, "topics", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return assignments.size();
+            }
+        });
+
+        zkClient.subscribeStateChanges(sessionListener);
+        zkClient.subscribeChildChanges(ZkUtils.BrokerTopicsPath(), topicsListener);
+        refresh();
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        // the client is shared, so only the listeners of the cache are removed
+        zkClient.unsubscribeStateChanges(sessionListener);
+        zkClient.unsubscribeChildChanges(ZkUtils.BrokerTopicsPath(), topicsListener);
+        for (String topic : assignments.keySet()) {
+            zkClient.unsubscribeDataChanges(ZkUtils.getTopicPath(topic), assignmentListener);
+        }
+        for (String topic : configs.keySet()) {
+            zkClient.unsubscribeDataChanges(ZkUtils.getTopicConfigPath(topic), configListener);
+        }
+    }
+
+    public List<String> listTopics(boolean forceRefresh) {
+        if (forceRefresh) {
+            refresh();
+        } else {
+            ensureFresh();
+        }
+        return new ArrayList<>(assignments.keySet());
+    }
+
+    public boolean topicExists(String topic) {
+        return getPartitionAssignment(topic) != null;
+    }
+
+    /**
+     * @return The replica broker ids for every partition of the topic or null if the topic does not exist
+     */
+    public Map<Integer, List<Integer>> getPartitionAssignment(String topic) {
+        ensureFresh();
+        Map<Integer, List<Integer>> assignment = assignments.get(topic);
+        if (assignment != null) {
+            hits.mark();
+            return assignment;
+        }
+        // the topic may have been created a moment ago and its watch event may still be on its way
+        misses.mark();
+        return loadTopic(topic);
+    }
+
+    /**
+     * Reads the partition assignment of the topic from Zookeeper, bypassing and updating the cache.
+     * @return The replica broker ids for every partition of the topic or null if the topic does not exist
+     */
+    public Map<Integer, List<Integer>> reloadPartitionAssignment(String topic) {
+        return loadTopic(topic);
+    }
+
+    public Properties getConfig(String topic) {
+        Properties config = configs.get(topic);
+        if (config != null) {
+            hits.mark();
+            return config;
+        }
+        misses.mark();
+        config = AdminUtils.fetchTopicConfig(zkClient, topic);
+        zkClient.subscribeDataChanges(ZkUtils.getTopicConfigPath(topic), configListener);
+        configs.put(topic, config);
+        return config;
+    }
+
+    /**
+     * Reloads all topics from Zookeeper.
+     */
+    public synchronized void refresh() {
+        LOG.debug("Refreshing topic metadata cache");
+        TimerContext timer = refreshes.time();
+        try {
+            List<String> topics = zkClient.exists(ZkUtils.BrokerTopicsPath())
+                    ? zkClient.getChildren(ZkUtils.BrokerTopicsPath())
+                    : Collections.emptyList();
+            updateTopics(topics, true);
+            configs.clear();
+            lastRefresh = System.currentTimeMillis();
+        } finally {
+            timer.stop();
+        }
+        LOG.debug("Topic metadata cache refreshed: {} topics", assignments.size());
+    }
+
+    private void ensureFresh() {
+        if (isStale()) {
+            synchronized (this) {
+                // callers which waited for the lock find the cache reloaded by the first one
+                if (isStale()) {
+                    refresh();
+                }
+            }
+        }
+    }
+
+    private boolean isStale() {
+        return System.currentTimeMillis() - lastRefresh > maxStalenessMs;
+    }
+
+    private synchronized void updateTopics(List<String> topics, boolean reloadAll) {
+        Set<String> current = new HashSet<>(topics);
+        Iterator<String> cached = assignments.keySet().iterator();
+        while (cached.hasNext()) {
+            String topic = cached.next();
+            if (!current.contains(topic)) {
+                LOG.debug("Topic removed from cache: {}", topic);
+                cached.remove();
+                configs.remove(topic);
+                topicMeters.forEach(meters -> meters.remove(topic));
+                zkClient.unsubscribeDataChanges(ZkUtils.getTopicPath(topic), assignmentListener);
+                zkClient.unsubscribeDataChanges(ZkUtils.getTopicConfigPath(topic), configListener);
+            }
+        }
+        for (String topic : current) {
+            // known topics are kept current by their own watches
+            if (reloadAll || !assignments.containsKey(topic)) {
+                loadTopic(topic);
+            }
+        }
+    }
+
+    private Map<Integer, List<Integer>> loadTopic(String topic) {
+        TimerContext timer = topicLoads.time();
+        try {
+            String path = ZkUtils.getTopicPath(topic);
+            // don't leave watches behind for topics which don't exist
+            if (!zkClient.exists(path)) {
+                return null;
+            }
+            zkClient.subscribeDataChanges(path, assignmentListener);
+            String data = zkClient.readData(path, true);
+            if (data == null) {
+                return null;
+            }
+            Map<Integer, List<Integer>> assignment = parseAssignment(data);
+            assignments.put(topic, assignment);
+            return assignment;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private static Map<Integer, List<Integer>> parseAssignment(String data) {
+        // {"version":1,"partitions":{"0":[1,2],"1":[2,0]}}
+        try {
+            Map<Integer, List<Integer>> assignment = new TreeMap<>();
+            Iterator<Map.Entry<String, JsonNode>> partitions = MAPPER.readTree(data).path("partitions").fields();
+            while (partitions.hasNext()) {
+                Map.Entry<String, JsonNode> partition = partitions.next();
+                List<Integer> replicas = new ArrayList<>();
+                partition.getValue().forEach(replica -> replicas.add(replica.asInt()));
+                assignment.put(Integer.valueOf(partition.getKey()), Collections.unmodifiableList(replicas));
+            }
+            return Collections.unmodifiableMap(assignment);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Malformed partition assignment: " + data, ex);
+        }
+    }
+
+    private static String topicOf(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private class TopicsListener implements IZkChildListener {
+        @Override
+        public void handleChildChange(String parentPath, List<String> children) {
+            LOG.debug("Topics changed");
+            updateTopics(children == null ? Collections.emptyList() : children, false);
+        }
+    }
+
+    private class AssignmentListener implements IZkDataListener {
+        @Override
+        public void handleDataChange(String dataPath, Object data) {
+            LOG.debug("Partition assignment changed: {}", dataPath);
+            assignments.put(topicOf(dataPath), parseAssignment((String) data));
+        }
+
+        @Override
+        public void handleDataDeleted(String dataPath) {
+            LOG.debug("Partition assignment deleted: {}", dataPath);
+            assignments.remove(topicOf(dataPath));
+        }
+    }
+
+    private class ConfigListener implements IZkDataListener {
+        @Override
+        public void handleDataChange(String dataPath, Object data) {
+            configs.remove(topicOf(dataPath));
+        }
+
+        @Override
+        public void handleDataDeleted(String dataPath) {
+            configs.remove(topicOf(dataPath));
+        }
+    }
+
+    private class SessionListener implements IZkStateListener {
+        @Override
+        public void handleStateChanged(Watcher.Event.KeeperState state) {
+            // nothing to do, ZkClient re-registers the watches by itself
+        }
+
+        @Override
+        public void handleNewSession() {
+            LOG.info("New Zookeeper session, events might have been lost");
+            refresh();
+        }
+
+        @Override
+        public void handleSessionEstablishmentError(Throwable error) {
+            LOG.warn("Zookeeper session could not be established", error);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.services;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
+import kafka.common.TopicAndPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.kafka.adminapi.kafka.KafkaReader;
+import org.trustedanalytics.kafka.adminapi.model.PartitionDetails;
+import org.trustedanalytics.kafka.adminapi.model.PartitionStats;
+import org.trustedanalytics.kafka.adminapi.model.TopicDetails;
+import org.trustedanalytics.kafka.adminapi.model.TopicStats;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers how big a topic is and how fast it grows without reading it.
+ * Message counts come from the earliest and latest offsets, sizes are estimated from a small fetch at the end
+ * of every partition, and rates are derived from latest offsets sampled in the background.
+ * Only topics whose stats were asked for within the longest rate window are sampled, starting with the offsets
+ * read for the first request, so the history grows with the topics people look at, not with the cluster.
+ */
+@Component
+public class TopicStatsMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TopicStatsMonitor.class);
+
+    // how many of the last messages of a partition its message size is estimated from
+    private static final int PROBE_MESSAGES = 100;
+
+    @Autowired
+    private KafkaReader reader;
+
+    @Autowired
+    private TopicMetadataCache metadataCache;
+
+    @Autowired
+    private MetricsRegistry metrics;
+
+    @Value("${kafka.stats.sampleIntervalMs}")
+    private long sampleIntervalMs;
+
+    @Value("${kafka.stats.rateWindowsSec}")
+    private String rateWindows;
+
+    @Value("${kafka.stats.probeBytes}")
+    private int probeBytes;
+
+    private final List<Long> rateWindowsSec = new ArrayList<>();
+
+    // topics whose stats were asked for and their samples
+    private final ConcurrentMap<String, TopicHistory> histories = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService sampler;
+
+    private Timer samples;
+    private Meter failures;
+
+    @PostConstruct
+    protected void init() {
+        for (String window : rateWindows.split(",")) {
+            rateWindowsSec.add(Long.parseLong(window.trim()));
+        }
+
+        samples = metrics.newTimer(TopicStatsMonitor.class, "samples");
+        failures = metrics.newMeter(TopicStatsMonitor.class, "failures", "samples", TimeUnit.SECONDS);
+        metrics.newGauge(TopicStatsMonitor.class, "topics", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return histories.size();
+            }
+        });
+
+        LOG.debug("starting topic offset sampler");
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "topic-offset-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleWithFixedDelay(this::sample, 0, sampleIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        sampler.shutdownNow();
+    }
+
+    /**
+     * Reads the offsets of the topic and a few of its last messages, a couple of small requests per leader broker.
+     */
+    public TopicStats getStats(String topic) {
+        TopicDetails details = reader.describeTopics(Collections.singletonList(topic)).get(0);
+
+        Map<Integer, Long> probeOffsets = new HashMap<>();
+        if (details.getPartitions() != null) {
+            for (PartitionDetails partition : details.getPartitions()) {
+                if (partition.getMessages() != null && partition.getMessages() > 0) {
+                    probeOffsets.put(partition.getPartition(),
+                            Math.max(partition.getEarliestOffset(), partition.getLatestOffset() - PROBE_MESSAGES));
+                }
+            }
+        }
+        Map<Integer, Double> messageSizes = probeOffsets.isEmpty()
+                ? Collections.emptyMap() : reader.averageMessageSizes(topic, probeOffsets, probeBytes);
+
+        long now = System.currentTimeMillis();
+        TopicHistory history = histories.computeIfAbsent(topic, key -> new TopicHistory());
+        history.lastQueried = now;
+        if (history.isEmpty()) {
+            // the offsets just read are the first sample of a topic which was not tracked yet
+            Map<TopicAndPartition, Long> latestOffsets = new HashMap<>();
+            if (details.getPartitions() != null) {
+                for (PartitionDetails partition : details.getPartitions()) {
+                    if (partition.getLatestOffset() != null) {
+                        latestOffsets.put(new TopicAndPartition(topic, partition.getPartition()),
+                                partition.getLatestOffset());
+                    }
+                }
+            }
+            history.add(OffsetSample.of(now, topic, latestOffsets), maxAgeMs());
+        }
+        List<OffsetSample> topicHistory = history.samples();
+
+        TopicStats stats = new TopicStats();
+        stats.setTopic(topic);
+        List<PartitionStats> partitions = new ArrayList<>();
+        long messages = 0;
+        long estimatedBytes = 0;
+        if (details.getPartitions() != null) {
+            for (PartitionDetails partition : details.getPartitions()) {
+                PartitionStats partitionStats = new PartitionStats();
+                partitionStats.setPartition(partition.getPartition());
+                partitionStats.setEarliestOffset(partition.getEarliestOffset());
+                partitionStats.setLatestOffset(partition.getLatestOffset());
+                partitionStats.setMessages(partition.getMessages());
+                partitionStats.setError(partition.getError());
+                if (partition.getMessages() != null) {
+                    messages += partition.getMessages();
+                    Double messageSize = messageSizes.get(partition.getPartition());
+                    if (messageSize != null) {
+                        long bytes = Math.round(messageSize * partition.getMessages());
+                        partitionStats.setAverageMessageBytes(messageSize);
+                        partitionStats.setEstimatedBytes(bytes);
+                        estimatedBytes += bytes;
+                    }
+                }
+                partitionStats.setMessagesPerSecond(rates(topicHistory, partition.getPartition()));
+                partitions.add(partitionStats);
+            }
+        }
+        stats.setMessages(messages);
+        stats.setEstimatedBytes(estimatedBytes);
+        stats.setMessagesPerSecond(rates(topicHistory, null));
+        stats.setPartitions(partitions);
+        return stats;
+    }
+
+    private void sample() {
+        TimerContext timer = samples.time();
+        try {
+            long maxAgeMs = maxAgeMs();
+            long now = System.currentTimeMillis();
+            List<String> topics = new ArrayList<>();
+            histories.forEach((topic, history) -> {
+                // brokers create the topics named in a metadata request, so topics which are gone are dropped too
+                if (now - history.lastQueried > maxAgeMs || !metadataCache.topicExists(topic)) {
+                    histories.remove(topic, history);
+                } else {
+                    topics.add(topic);
+                }
+            });
+            if (topics.isEmpty()) {
+                return;
+            }
+            Map<TopicAndPartition, Long> latestOffsets = reader.latestOffsets(topics);
+            long sampledAt = System.currentTimeMillis();
+            for (String topic : topics) {
+                TopicHistory history = histories.get(topic);
+                if (history != null) {
+                    history.add(OffsetSample.of(sampledAt, topic, latestOffsets), maxAgeMs);
+                }
+            }
+            LOG.debug("Topic offsets sampled: {} topics", topics.size());
+        } catch (RuntimeException ex) {
+            // the history is kept, a missed sample only widens the interval between two samples
+            failures.mark();
+            LOG.warn("Sampling topic offsets failed", ex);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    private long maxAgeMs() {
+        return TimeUnit.SECONDS.toMillis(Collections.max(rateWindowsSec)) + sampleIntervalMs;
+    }
+
+    /**
+     * @param partition The partition to derive the rates of, the whole topic if null
+     * @return Messages appended per second between the last sample and the oldest one within each window
+     */
+    private Map<String, Double> rates(List<OffsetSample> topicHistory, Integer partition) {
+        Map<String, Double> rates = new LinkedHashMap<>();
+        if (topicHistory.size() < 2) {
+            return rates;
+        }
+        OffsetSample last = topicHistory.get(topicHistory.size() - 1);
+        for (long windowSec : rateWindowsSec) {
+            // samples are taken every interval, so the window may start a little before the oldest sample in it
+            long windowStart = last.timestamp - TimeUnit.SECONDS.toMillis(windowSec) - sampleIntervalMs / 2;
+            OffsetSample first = null;
+            for (OffsetSample sample : topicHistory) {
+                if (sample.timestamp >= windowStart) {
+                    first = sample;
+                    break;
+                }
+            }
+            if (first == null || first == last) {
+                continue;
+            }
+            long appended = 0;
+            for (int id = 0; id < last.latestOffsets.length; id++) {
+                long before = id < first.latestOffsets.length ? first.latestOffsets[id] : -1;
+                if (last.latestOffsets[id] >= 0 && before >= 0 && (partition == null || partition == id)) {
+                    // a partition recreated with the topic starts again at 0
+                    appended += Math.max(0, last.latestOffsets[id] - before);
+                }
+            }
+            rates.put(windowSec + "s", appended * 1000.0 / (last.timestamp - first.timestamp));
+        }
+        return rates;
+    }
+
+    /**
+     * The samples of a topic, oldest first.
+     */
+    private static class TopicHistory {
+        private final Deque<OffsetSample> samples = new ArrayDeque<>();
+        private volatile long lastQueried;
+
+        synchronized boolean isEmpty() {
+            return samples.isEmpty();
+        }
+
+        synchronized void add(OffsetSample sample, long maxAgeMs) {
+            samples.addLast(sample);
+            while (sample.timestamp - samples.peekFirst().timestamp > maxAgeMs) {
+                samples.removeFirst();
+            }
+        }
+
+        synchronized List<OffsetSample> samples() {
+            return new ArrayList<>(samples);
+        }
+    }
+
+    private static class OffsetSample {
+        private final long timestamp;
+        // by partition id, -1 where the offset is not known
+        private final long[] latestOffsets;
+
+        private OffsetSample(long timestamp, long[] latestOffsets) {
+            this.timestamp = timestamp;
+            this.latestOffsets = latestOffsets;
+        }
+
+        static OffsetSample of(long timestamp, String topic, Map<TopicAndPartition, Long> latestOffsets) {
+            int partitions = 0;
+            for (TopicAndPartition partition : latestOffsets.keySet()) {
+                if (partition.topic().equals(topic)) {
+                    partitions = Math.max(partitions, partition.partition() + 1);
+                }
+            }
+            long[] offsets = new long[partitions];
+            Arrays.fill(offsets, -1);
+            latestOffsets.forEach((partition, offset) -> {
+                if (partition.topic().equals(topic)) {
+                    offsets[partition.partition()] = offset;
+                }
+            });
+            return new OffsetSample(timestamp, offsets);
+        }
+    }
+}
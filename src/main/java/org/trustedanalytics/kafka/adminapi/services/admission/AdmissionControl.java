@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.services.admission;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.kafka.adminapi.exceptions.TooManyRequestsException;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Decides whether a request may run, before it touches Kafka:
+ * <ul>
+ * <li>every client and every topic has a token bucket per kind of request, a request takes a token from both</li>
+ * <li>reads from Kafka hold one of a fixed number of consumer sessions while they run</li>
+ * </ul>
+ * Rejected requests fail with {@link TooManyRequestsException}, telling the client when to retry.
+ * A client is its remote address, the client header names it only on requests from a trusted proxy,
+ * so that a client cannot pick a fresh identity to escape its limits.
+ * Buckets live in concurrent maps and are updated by compare-and-set, so checking a limit never takes a lock.
+ */
+@Component
+public class AdmissionControl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionControl.class);
+
+    @Value("${kafka.limits.clientHeader}")
+    private String clientHeader;
+
+    @Value("${kafka.limits.trustedProxies}")
+    private String trustedProxies;
+
+    @Value("${kafka.limits.read.perClient}")
+    private double readsPerClient;
+
+    @Value("${kafka.limits.read.perTopic}")
+    private double readsPerTopic;
+
+    @Value("${kafka.limits.write.perClient}")
+    private double writesPerClient;
+
+    @Value("${kafka.limits.write.perTopic}")
+    private double writesPerTopic;
+
+    @Value("${kafka.limits.admin.perClient}")
+    private double adminPerClient;
+
+    @Value("${kafka.limits.admin.perTopic}")
+    private double adminPerTopic;
+
+    @Value("${kafka.limits.burstSeconds}")
+    private double burstSeconds;
+
+    @Value("${kafka.limits.maxBuckets}")
+    private int maxBuckets;
+
+    @Value("${kafka.limits.maxConsumerSessions}")
+    private int maxConsumerSessions;
+
+    @Autowired
+    private MetricsRegistry metrics;
+
+    private final Map<RequestKind, Limit> clientLimits = new EnumMap<>(RequestKind.class);
+    private final Map<RequestKind, Limit> topicLimits = new EnumMap<>(RequestKind.class);
+    private final Map<RequestKind, Meter> rejectedRequests = new EnumMap<>(RequestKind.class);
+
+    private Set<String> trustedProxyAddresses;
+
+    private Semaphore consumerSessions;
+    private Meter rejectedSessions;
+
+    @PostConstruct
+    protected void init() {
+        clientLimits.put(RequestKind.READ, new Limit(readsPerClient));
+        clientLimits.put(RequestKind.WRITE, new Limit(writesPerClient));
+        clientLimits.put(RequestKind.ADMIN, new Limit(adminPerClient));
+        topicLimits.put(RequestKind.READ, new Limit(readsPerTopic));
+        topicLimits.put(RequestKind.WRITE, new Limit(writesPerTopic));
+        topicLimits.put(RequestKind.ADMIN, new Limit(adminPerTopic));
+        consumerSessions = new Semaphore(maxConsumerSessions);
+        trustedProxyAddresses = Arrays.stream(trustedProxies.split(","))
+                .map(String::trim)
+                .filter(address -> !address.isEmpty())
+                .collect(Collectors.toSet());
+
+        for (RequestKind kind : RequestKind.values()) {
+            rejectedRequests.put(kind, metrics.newMeter(AdmissionControl.class, "rejectedRequests",
+                    kind.name().toLowerCase(), "requests", TimeUnit.SECONDS));
+        }
+        rejectedSessions = metrics.newMeter(AdmissionControl.class, "rejectedSessions", "requests", TimeUnit.SECONDS);
+        metrics.newGauge(AdmissionControl.class, "consumerSessions", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return maxConsumerSessions - consumerSessions.availablePermits();
+            }
+        });
+        metrics.newGauge(AdmissionControl.class, "buckets", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                int buckets = 0;
+                for (Limit limit : clientLimits.values()) {
+                    buckets += limit.buckets.size();
+                }
+                for (Limit limit : topicLimits.values()) {
+                    buckets += limit.buckets.size();
+                }
+                return buckets;
+            }
+        });
+    }
+
+    /**
+     * @return The request header which identifies a client behind a trusted proxy
+     */
+    public String getClientHeader() {
+        return clientHeader;
+    }
+
+    /**
+     * @param remoteAddress The address the request comes from
+     * @param clientId The value of the client header, null if the request has none
+     * @return The client whose limits apply to the request: the client header when a trusted proxy sent
+     * the request and set it, otherwise the remote address
+     */
+    public String clientOf(String remoteAddress, String clientId) {
+        if (clientId != null && !clientId.trim().isEmpty() && trustedProxyAddresses.contains(remoteAddress)) {
+            return clientId;
+        }
+        return remoteAddress;
+    }
+
+    /**
+     * Takes a token of the client and of the topic, the request is rejected if either has none left.
+     * @param topic The topic of the request, null when it is not about a single topic
+     */
+    public void admit(RequestKind kind, String client, String topic) {
+        long now = System.nanoTime();
+        TokenBucket clientBucket = clientLimits.get(kind).bucket(client, now);
+        long wait = clientBucket == null ? 0 : clientBucket.tryAcquire(now);
+        if (wait > 0) {
+            reject(kind, "client " + client, wait);
+        }
+        TokenBucket topicBucket = topicLimits.get(kind).bucket(topic, now);
+        wait = topicBucket == null ? 0 : topicBucket.tryAcquire(now);
+        if (wait > 0) {
+            if (clientBucket != null) {
+                clientBucket.release();
+            }
+            reject(kind, "topic " + topic, wait);
+        }
+    }
+
+    /**
+     * @return A session which has to be closed once the read ends
+     */
+    public ConsumerSession openConsumerSession() {
+        if (!consumerSessions.tryAcquire()) {
+            rejectedSessions.mark();
+            throw new TooManyRequestsException("Too many concurrent reads from Kafka, the limit is " + maxConsumerSessions);
+        }
+        AtomicBoolean closed = new AtomicBoolean();
+        return () -> {
+            if (closed.compareAndSet(false, true)) {
+                consumerSessions.release();
+            }
+        };
+    }
+
+    private void reject(RequestKind kind, String subject, long waitNanos) {
+        LOG.debug("{} request of {} rejected, next token in {} ns", kind, subject, waitNanos);
+        rejectedRequests.get(kind).mark();
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        throw new TooManyRequestsException("Rate limit of " + kind.name().toLowerCase() + " requests exceeded for "
+                + subject, retryAfterSeconds);
+    }
+
+    /**
+     * Buckets of one limit by client or topic. A full bucket is the same as no bucket,
+     * so full ones are dropped whenever there are too many.
+     */
+    private class Limit {
+
+        private final double ratePerSecond;
+        private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+        private final AtomicBoolean sweeping = new AtomicBoolean();
+
+        Limit(double ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+        }
+
+        /**
+         * @return null when the limit is disabled
+         */
+        TokenBucket bucket(String key, long now) {
+            if (ratePerSecond <= 0 || key == null) {
+                return null;
+            }
+            TokenBucket bucket = buckets.get(key);
+            if (bucket == null) {
+                if (buckets.size() >= maxBuckets) {
+                    sweep(now);
+                }
+                bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(ratePerSecond, ratePerSecond * burstSeconds, now));
+            }
+            return bucket;
+        }
+
+        private void sweep(long now) {
+            // one thread sweeps while the others go on
+            if (sweeping.compareAndSet(false, true)) {
+                try {
+                    buckets.values().removeIf(bucket -> bucket.isFull(now));
+                } finally {
+                    sweeping.set(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.services.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket kept as a single timestamp: the time at which the bucket will be full again
+ * (the generic cell rate algorithm). Taking a token moves the timestamp forward by the time one token takes
+ * to refill, which is a single compare-and-set, so concurrent requests never block each other.
+ */
+final class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+
+    private final AtomicLong fullAt;
+
+    /**
+     * @param ratePerSecond Tokens added per second
+     * @param burst Tokens a full bucket holds
+     */
+    TokenBucket(double ratePerSecond, double burst, long now) {
+        this.nanosPerToken = Math.max(1, (long) (1_000_000_000L / ratePerSecond));
+        this.burstNanos = (long) (nanosPerToken * Math.max(1, burst));
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * @return 0 when a token was taken, otherwise the nanoseconds until one is available
+     */
+    long tryAcquire(long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + nanosPerToken;
+            long wait = next - now - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken by {@link #tryAcquire(long)}, when the request was rejected by another limit.
+     */
+    void release() {
+        fullAt.addAndGet(-nanosPerToken);
+    }
+
+    boolean isFull(long now) {
+        return fullAt.get() <= now;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.services.tail;
+
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+
+/**
+ * What happens when the buffer of a live tail subscriber is full.
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     * The oldest buffered messages are dropped, the subscriber is told how many it missed.
+     */
+    DROP,
+
+    /**
+     * The subscriber is disconnected, so that it never misses a message silently.
+     */
+    DISCONNECT;
+
+    public static SlowConsumerPolicy parse(String policy) {
+        for (SlowConsumerPolicy value : values()) {
+            if (value.name().equalsIgnoreCase(policy)) {
+                return value;
+            }
+        }
+        throw new BadRequestException("Unknown slow consumer policy: " + policy);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.services.tail;
+
+import org.trustedanalytics.kafka.adminapi.model.KafkaMessage;
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+import org.trustedanalytics.kafka.adminapi.model.TailMessages;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A subscriber of a live tail which receives messages as they arrive, e.g. over a WebSocket.
+ * The shared consumer of the topic only puts messages into the buffer of the subscription, bounded in messages
+ * and bytes, so it never waits for a subscriber. The subscriber drains the buffer at its own pace.
+ */
+public class TailSubscription {
+
+    /**
+     * Callbacks of a subscription, they are called on the thread of the shared consumer and must not block.
+     */
+    public interface Listener {
+
+        /**
+         * New messages are available in the buffer.
+         */
+        void onMessages(TailSubscription subscription);
+
+        /**
+         * The subscription was ended by the tail, e.g. because the subscriber was too slow.
+         */
+        void onClosed(TailSubscription subscription, String reason);
+    }
+
+    private final String topic;
+    private final BlockingQueue<KafkaMessage> buffer;
+    private final long maxBytes;
+    private final SlowConsumerPolicy policy;
+    private final Listener listener;
+    private final TopicTail tail;
+
+    // next offsets of the messages drained so far, they make up the resume token
+    private final Map<Integer, Long> offsets;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    private volatile boolean closed;
+
+    TailSubscription(String topic, Map<Integer, Long> offsets, int bufferSize, long maxBytes,
+                     SlowConsumerPolicy policy, Listener listener, TopicTail tail) {
+        this.topic = topic;
+        this.offsets = new HashMap<>(offsets);
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.listener = listener;
+        this.tail = tail;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public boolean hasMessages() {
+        return !buffer.isEmpty() || dropped.get() > 0;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Takes at most max buffered messages.
+     */
+    public synchronized TailMessages drain(int max, MessageFormat format) {
+        List<KafkaMessage> messages = new ArrayList<>(Math.min(max, buffer.size()));
+        buffer.drainTo(messages, max);
+        messages.forEach(message -> bufferedBytes.addAndGet(-TopicTail.size(message)));
+        messages.forEach(message -> offsets.put(message.getPartition(), message.getOffset() + 1));
+        return TopicTail.toTailMessages(topic, messages, TailToken.encode(offsets), dropped.getAndSet(0), format);
+    }
+
+    public void close() {
+        if (!closed) {
+            closed = true;
+            tail.unsubscribe(this);
+        }
+    }
+
+    /**
+     * Buffers the messages of the subscriber.
+     * @param mayDisconnect false if the policy must not disconnect the subscriber, e.g. when replaying buffered messages
+     * @return false if the subscriber could not keep up and must be disconnected
+     */
+    boolean offer(List<KafkaMessage> messages, long skipped, boolean mayDisconnect) {
+        dropped.addAndGet(skipped);
+        for (KafkaMessage message : messages) {
+            long size = TopicTail.size(message);
+            // a single message larger than the byte limit is still buffered on its own
+            while ((bufferedBytes.get() + size > maxBytes && !buffer.isEmpty()) || !buffer.offer(message)) {
+                if (policy == SlowConsumerPolicy.DISCONNECT && mayDisconnect) {
+                    return false;
+                }
+                KafkaMessage oldest = buffer.poll();
+                if (oldest != null) {
+                    bufferedBytes.addAndGet(-TopicTail.size(oldest));
+                    dropped.incrementAndGet();
+                }
+            }
+            bufferedBytes.addAndGet(size);
+        }
+        if (!messages.isEmpty() || skipped > 0) {
+            listener.onMessages(this);
+        }
+        return true;
+    }
+
+    void closedByTail(String reason) {
+        closed = true;
+        listener.onClosed(this, reason);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.services.tail;
+
+import org.springframework.util.StringUtils;
+import org.trustedanalytics.kafka.adminapi.exceptions.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * A resume token is the next offset of every partition, e.g. "0:120,1:98", encoded so that clients treat it as opaque.
+ */
+public final class TailToken {
+
+    private TailToken() {
+    }
+
+    public static String encode(Map<Integer, Long> offsets) {
+        StringJoiner joiner = new StringJoiner(",");
+        new TreeMap<>(offsets).forEach((partition, offset) -> joiner.add(partition + ":" + offset));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(joiner.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return The next offset of every partition, empty if there is no token
+     */
+    public static Map<Integer, Long> decode(String token) {
+        if (StringUtils.isEmpty(token)) {
+            return Collections.emptyMap();
+        }
+        try {
+            Map<Integer, Long> offsets = new TreeMap<>();
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            for (String partitionOffset : StringUtils.tokenizeToStringArray(decoded, ",")) {
+                String[] parts = partitionOffset.split(":");
+                if (parts.length != 2 || Long.parseLong(parts[1]) < 0) {
+                    throw new IllegalArgumentException(partitionOffset);
+                }
+                offsets.put(Integer.valueOf(parts[0]), Long.valueOf(parts[1]));
+            }
+            return offsets;
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Invalid token: " + token);
+        }
+    }
+}
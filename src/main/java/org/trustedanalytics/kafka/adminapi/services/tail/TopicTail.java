@@ -0,0 +1,410 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.services.tail;
+
+import com.yammer.metrics.core.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.kafka.adminapi.kafka.KafkaReader;
+import org.trustedanalytics.kafka.adminapi.kafka.ReadMemory;
+import org.trustedanalytics.kafka.adminapi.kafka.TopicLeaders;
+import org.trustedanalytics.kafka.adminapi.model.KafkaMessage;
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+import org.trustedanalytics.kafka.adminapi.model.TailMessages;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+
+/**
+ * The shared consumer of a live tailed topic.
+ * A single thread fetches new messages and fans them out to all subscribers, so the number of watchers
+ * does not change the load on Kafka. The latest messages are kept in a bounded buffer, long-poll requests
+ * are answered from it and new subscribers can resume from it without fetching anything.
+ * The buffer reserves its bytes from the read memory, under memory pressure it keeps fewer messages.
+ * The tail stops by itself once nobody has been watching it for the idle timeout.
+ */
+class TopicTail implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TopicTail.class);
+
+    private final String topic;
+    private final KafkaReader reader;
+    private final Executor pollExecutor;
+    private final Predicate<String> topicExists;
+    private final int maxWaitMs;
+    private final int bufferSize;
+    private final long bufferMaxBytes;
+    private final long idleTimeoutMs;
+    private final ReadMemory.Lease memory;
+    private final Meter fetchFailures;
+    private final Meter disconnected;
+
+    // used by the fetching thread only
+    private final TopicLeaders leaders = new TopicLeaders();
+
+    // all state below is guarded by this
+
+    // next offset to fetch of every partition
+    private final Map<Integer, Long> positions;
+
+    // the latest messages in the order they were fetched
+    private final Deque<KafkaMessage> buffer = new ArrayDeque<>();
+    private long bufferBytes;
+
+    // the oldest offset of every partition which can still be served from the buffer
+    private final Map<Integer, Long> firstBuffered = new HashMap<>();
+
+    private final List<TailSubscription> subscriptions = new ArrayList<>();
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    private long lastAccess = System.currentTimeMillis();
+    private boolean closed;
+    private boolean memoryClosed;
+
+    /**
+     * @param pollExecutor Polls the leader brokers of the topic in parallel
+     * @param memory Holds the bytes of the buffered messages, it is closed with the tail
+     */
+    TopicTail(String topic, Map<Integer, Long> initialOffsets, KafkaReader reader, Executor pollExecutor,
+              Predicate<String> topicExists, int maxWaitMs, int bufferSize, long bufferMaxBytes, long idleTimeoutMs,
+              ReadMemory.Lease memory, Meter fetchFailures, Meter disconnected) {
+        this.topic = topic;
+        this.positions = new HashMap<>(initialOffsets);
+        this.reader = reader;
+        this.pollExecutor = pollExecutor;
+        this.topicExists = topicExists;
+        this.maxWaitMs = maxWaitMs;
+        this.bufferSize = bufferSize;
+        this.bufferMaxBytes = bufferMaxBytes;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.memory = memory;
+        this.fetchFailures = fetchFailures;
+        this.disconnected = disconnected;
+    }
+
+    @Override
+    public void run() {
+        LOG.info("Live tail of topic {} started", topic);
+        String reason = "Live tail stopped";
+        try {
+            while (!closeIfIdle()) {
+                // a metadata request for a topic which is gone would create it again
+                if (!topicExists.test(topic)) {
+                    reason = "Topic was deleted";
+                    break;
+                }
+
+                Map<Integer, Long> from;
+                synchronized (this) {
+                    from = new HashMap<>(positions);
+                }
+                List<KafkaMessage> messages = new ArrayList<>();
+                try {
+                    Map<Integer, Long> next = reader.fetchNewMessages(topic, from, leaders, maxWaitMs, pollExecutor,
+                            (partition, offset, key, value) -> messages.add(
+                                    new KafkaMessage(partition, offset, copy(key), copy(value))));
+                    publish(from, next, messages);
+                } catch (RuntimeException ex) {
+                    fetchFailures.mark();
+                    LOG.warn("Fetching new messages of topic {} failed", topic, ex);
+                    publish(from, from, Collections.emptyList());
+                    Thread.sleep(maxWaitMs);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close(reason);
+            LOG.info("Live tail of topic {} stopped", topic);
+        }
+    }
+
+    /**
+     * @return The messages after the given offsets, at once if there are some or as soon as some arrive,
+     * or null if the tail is closed
+     */
+    CompletableFuture<TailMessages> poll(Map<Integer, Long> offsets, int max, long timeoutMs, MessageFormat format) {
+        Waiter waiter;
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            lastAccess = System.currentTimeMillis();
+            // without a token the client only wants what comes next
+            waiter = new Waiter(offsets.isEmpty() ? new HashMap<>(positions) : offsets, max, format,
+                    lastAccess + timeoutMs);
+            Batch batch = collect(waiter.offsets, max);
+            if (!batch.messages.isEmpty() || timeoutMs == 0) {
+                waiter.future.complete(batch.toTailMessages(topic, format));
+            } else {
+                waiters.add(waiter);
+            }
+        }
+        return waiter.future;
+    }
+
+    /**
+     * Buffered messages after the given offsets are passed to the subscription at once.
+     * @return The subscription or null if the tail is closed
+     */
+    synchronized TailSubscription subscribe(Map<Integer, Long> offsets, int bufferSize, long bufferMaxBytes,
+                                            SlowConsumerPolicy policy, TailSubscription.Listener listener) {
+        if (closed) {
+            return null;
+        }
+        lastAccess = System.currentTimeMillis();
+        Batch batch = collect(offsets.isEmpty() ? new HashMap<>(positions) : offsets, Integer.MAX_VALUE);
+        TailSubscription subscription =
+                new TailSubscription(topic, batch.start, bufferSize, bufferMaxBytes, policy, listener, this);
+        // replayed messages which don't fit are dropped, the subscriber asked for them knowing it
+        subscription.offer(batch.messages, batch.dropped, false);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    synchronized void unsubscribe(TailSubscription subscription) {
+        subscriptions.remove(subscription);
+        lastAccess = System.currentTimeMillis();
+    }
+
+    synchronized int getSubscribers() {
+        return subscriptions.size();
+    }
+
+    synchronized int getWaiters() {
+        return waiters.size();
+    }
+
+    private void publish(Map<Integer, Long> from, Map<Integer, Long> next, List<KafkaMessage> messages) {
+        List<Waiter> completed = new ArrayList<>();
+        List<TailSubscription> tooSlow = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                // the memory of the buffer is released already
+                return;
+            }
+            next.forEach((partition, offset) -> {
+                if (!firstBuffered.containsKey(partition)) {
+                    firstBuffered.put(partition, from.containsKey(partition)
+                            ? from.get(partition) : firstOffset(messages, partition, offset));
+                }
+                positions.put(partition, offset);
+            });
+            for (KafkaMessage message : messages) {
+                long size = size(message);
+                boolean reserved = memory.tryReserve(size);
+                while (!reserved && !buffer.isEmpty()) {
+                    evictOldest();
+                    reserved = memory.tryReserve(size);
+                }
+                if (!reserved) {
+                    // not even a single message fits, long-polls see it as dropped
+                    firstBuffered.put(message.getPartition(), message.getOffset() + 1);
+                    continue;
+                }
+                buffer.addLast(message);
+                bufferBytes += size;
+            }
+            while (buffer.size() > bufferSize || (bufferBytes > bufferMaxBytes && buffer.size() > 1)) {
+                evictOldest();
+            }
+
+            long now = System.currentTimeMillis();
+            Iterator<Waiter> pending = waiters.iterator();
+            while (pending.hasNext()) {
+                Waiter waiter = pending.next();
+                if (waiter.future.isDone()) {
+                    pending.remove();
+                    continue;
+                }
+                Batch batch = collect(waiter.offsets, waiter.max);
+                if (!batch.messages.isEmpty() || now >= waiter.deadline) {
+                    waiter.batch = batch;
+                    completed.add(waiter);
+                    pending.remove();
+                }
+            }
+
+            // subscribers only get their messages buffered here, sending them is up to their own threads
+            Iterator<TailSubscription> subscribed = subscriptions.iterator();
+            while (subscribed.hasNext()) {
+                TailSubscription subscription = subscribed.next();
+                if (!subscription.offer(messages, 0, true)) {
+                    subscribed.remove();
+                    tooSlow.add(subscription);
+                }
+            }
+        }
+
+        completed.forEach(waiter -> waiter.future.complete(waiter.batch.toTailMessages(topic, waiter.format)));
+        tooSlow.forEach(subscription -> {
+            disconnected.mark();
+            LOG.debug("Disconnecting slow subscriber of topic {}", topic);
+            subscription.closedByTail("Subscriber is too slow");
+        });
+    }
+
+    private void evictOldest() {
+        KafkaMessage evicted = buffer.removeFirst();
+        long size = size(evicted);
+        bufferBytes -= size;
+        memory.release(size);
+        firstBuffered.put(evicted.getPartition(), evicted.getOffset() + 1);
+    }
+
+    /**
+     * Finds the messages after the given offsets in the buffer.
+     * Partitions missing from the offsets start at their oldest buffered message.
+     */
+    private Batch collect(Map<Integer, Long> offsets, int max) {
+        Batch batch = new Batch();
+        batch.start = new HashMap<>(offsets);
+        firstBuffered.forEach((partition, first) -> {
+            Long offset = batch.start.get(partition);
+            if (offset == null) {
+                batch.start.put(partition, first);
+            } else if (offset < first) {
+                // the messages in between are not buffered any more
+                batch.dropped += first - offset;
+                batch.start.put(partition, first);
+            }
+        });
+
+        batch.next = new HashMap<>(batch.start);
+        for (KafkaMessage message : buffer) {
+            if (batch.messages.size() >= max) {
+                break;
+            }
+            Long offset = batch.start.get(message.getPartition());
+            if (offset != null && message.getOffset() >= offset) {
+                batch.messages.add(message);
+                batch.next.put(message.getPartition(), message.getOffset() + 1);
+            }
+        }
+        return batch;
+    }
+
+    private synchronized boolean closeIfIdle() {
+        if (!closed && subscriptions.isEmpty() && waiters.isEmpty()
+                && System.currentTimeMillis() - lastAccess > idleTimeoutMs) {
+            closed = true;
+        }
+        return closed;
+    }
+
+    /**
+     * Answers the pending long-polls and disconnects the subscribers.
+     */
+    void close(String reason) {
+        List<Waiter> pending;
+        List<TailSubscription> subscribed;
+        synchronized (this) {
+            closed = true;
+            pending = new ArrayList<>(waiters);
+            subscribed = new ArrayList<>(subscriptions);
+            pending.forEach(waiter -> waiter.batch = collect(waiter.offsets, waiter.max));
+            waiters.clear();
+            subscriptions.clear();
+            buffer.clear();
+            bufferBytes = 0;
+            if (!memoryClosed) {
+                memoryClosed = true;
+                memory.close();
+            }
+        }
+        pending.forEach(waiter -> waiter.future.complete(waiter.batch.toTailMessages(topic, waiter.format)));
+        subscribed.forEach(subscription -> subscription.closedByTail(reason));
+    }
+
+    static TailMessages toTailMessages(String topic, List<KafkaMessage> messages, String token, long dropped,
+                                       MessageFormat format) {
+        TailMessages result = new TailMessages();
+        result.setTopic(topic);
+        result.setToken(token);
+        result.setDropped(dropped);
+        if (format == MessageFormat.BINARY) {
+            result.setMessages(messages);
+        } else {
+            List<String> values = new ArrayList<>(messages.size());
+            messages.forEach(message -> values.add(
+                    message.getValue() == null ? null : new String(message.getValue(), StandardCharsets.UTF_8)));
+            result.setMessages(values);
+        }
+        return result;
+    }
+
+    private static long firstOffset(List<KafkaMessage> messages, int partition, long nextOffset) {
+        for (KafkaMessage message : messages) {
+            if (message.getPartition() == partition) {
+                return message.getOffset();
+            }
+        }
+        return nextOffset;
+    }
+
+    static long size(KafkaMessage message) {
+        return (message.getKey() == null ? 0 : message.getKey().length)
+                + (message.getValue() == null ? 0 : message.getValue().length);
+    }
+
+    private static byte[] copy(ByteBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static class Batch {
+        Map<Integer, Long> start;
+        Map<Integer, Long> next;
+        List<KafkaMessage> messages = new ArrayList<>();
+        long dropped;
+
+        TailMessages toTailMessages(String topic, MessageFormat format) {
+            return TopicTail.toTailMessages(topic, messages, TailToken.encode(next), dropped, format);
+        }
+    }
+
+    private static class Waiter {
+        final Map<Integer, Long> offsets;
+        final int max;
+        final MessageFormat format;
+        final long deadline;
+        final CompletableFuture<TailMessages> future = new CompletableFuture<>();
+        Batch batch;
+
+        Waiter(Map<Integer, Long> offsets, int max, MessageFormat format, long deadline) {
+            this.offsets = offsets;
+            this.max = max;
+            this.format = format;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2016 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trustedanalytics.kafka.adminapi.services.tail;
+
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.trustedanalytics.kafka.adminapi.exceptions.TooManyRequestsException;
+import org.trustedanalytics.kafka.adminapi.kafka.KafkaReader;
+import org.trustedanalytics.kafka.adminapi.kafka.ReadMemory;
+import org.trustedanalytics.kafka.adminapi.model.MessageFormat;
+import org.trustedanalytics.kafka.adminapi.model.TailMessages;
+import org.trustedanalytics.kafka.adminapi.model.TopicDetails;
+import org.trustedanalytics.kafka.adminapi.services.TopicMetadataCache;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Live tails of topics, with a single shared consumer per tailed topic.
+ * A tail is started by the first request of its topic, outside of the map of tails, while concurrent requests
+ * of the same topic wait for it. Every tail takes one of kafka.tail.maxTopics permits until it stops.
+ */
+@Component
+public class TopicTailer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TopicTailer.class);
+
+    @Autowired
+    private KafkaReader reader;
+
+    @Autowired
+    private TopicMetadataCache metadataCache;
+
+    @Autowired
+    private MetricsRegistry metrics;
+
+    @Autowired
+    private ReadMemory readMemory;
+
+    @Autowired
+    @Qualifier("tailExecutor")
+    private Executor tailExecutor;
+
+    @Autowired
+    @Qualifier("tailPollExecutor")
+    private Executor tailPollExecutor;
+
+    @Value("${kafka.tail.maxTopics}")
+    private int maxTopics;
+
+    @Value("${kafka.tail.maxWaitMs}")
+    private int maxWaitMs;
+
+    @Value("${kafka.tail.bufferSize}")
+    private int bufferSize;
+
+    @Value("${kafka.tail.bufferMaxBytes}")
+    private long bufferMaxBytes;
+
+    @Value("${kafka.tail.subscriberBufferSize}")
+    private int subscriberBufferSize;
+
+    @Value("${kafka.tail.subscriberBufferMaxBytes}")
+    private long subscriberBufferMaxBytes;
+
+    @Value("${kafka.tail.idleTimeoutMs}")
+    private long idleTimeoutMs;
+
+    // a tail which is still starting is an incomplete future
+    private final ConcurrentMap<String, CompletableFuture<TopicTail>> tails = new ConcurrentHashMap<>();
+
+    private Semaphore permits;
+
+    private Meter fetchFailures;
+    private Meter disconnected;
+
+    @PostConstruct
+    protected void init() {
+        permits = new Semaphore(maxTopics);
+        fetchFailures = metrics.newMeter(TopicTailer.class, "fetchFailures", "fetches", TimeUnit.SECONDS);
+        disconnected = metrics.newMeter(TopicTailer.class, "slowSubscribersDisconnected", "subscribers", TimeUnit.SECONDS);
+        metrics.newGauge(TopicTailer.class, "tailedTopics", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return tails.size();
+            }
+        });
+        metrics.newGauge(TopicTailer.class, "subscribers", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return runningTails().mapToInt(TopicTail::getSubscribers).sum();
+            }
+        });
+        metrics.newGauge(TopicTailer.class, "waitingPolls", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return runningTails().mapToInt(TopicTail::getWaiters).sum();
+            }
+        });
+    }
+
+    @PreDestroy
+    protected void destroy() {
+        runningTails().forEach(tail -> tail.close("Server is shutting down"));
+    }
+
+    private Stream<TopicTail> runningTails() {
+        return tails.values().stream()
+                .filter(tail -> tail.isDone() && !tail.isCompletedExceptionally())
+                .map(CompletableFuture::join);
+    }
+
+    /**
+     * Long-poll of a topic.
+     * @param token The token of the previous response, or null to wait for the next messages
+     * @param timeoutMs How long to wait for new messages, the response is empty if none arrive
+     */
+    public CompletableFuture<TailMessages> poll(String topic, String token, int max, long timeoutMs,
+                                                MessageFormat format) {
+        Map<Integer, Long> offsets = TailToken.decode(token);
+        return withTail(topic, offsets, tail -> tail.poll(offsets, max, timeoutMs, format));
+    }
+
+    /**
+     * @param token The token of the last received batch, or null to receive only new messages
+     */
+    public TailSubscription subscribe(String topic, String token, SlowConsumerPolicy policy,
+                                      TailSubscription.Listener listener) {
+        Map<Integer, Long> offsets = TailToken.decode(token);
+        return withTail(topic, offsets,
+                tail -> tail.subscribe(offsets, subscriberBufferSize, subscriberBufferMaxBytes, policy, listener));
+    }
+
+    private <T> T withTail(String topic, Map<Integer, Long> offsets, Function<TopicTail, T> action) {
+        while (true) {
+            CompletableFuture<TopicTail> starting = new CompletableFuture<>();
+            CompletableFuture<TopicTail> tail = tails.putIfAbsent(topic, starting);
+            if (tail == null) {
+                start(topic, offsets, starting);
+                tail = starting;
+            }
+            T result = action.apply(join(tail));
+            if (result != null) {
+                return result;
+            }
+            // the tail has just stopped, the next one starts where the request wants to continue
+            tails.remove(topic, tail);
+        }
+    }
+
+    /**
+     * Starts the tail of the placeholder, or fails it and removes it, so that the next request tries again.
+     */
+    private void start(String topic, Map<Integer, Long> offsets, CompletableFuture<TopicTail> placeholder) {
+        if (!permits.tryAcquire()) {
+            throw failStart(topic, placeholder,
+                    new TooManyRequestsException("Too many live tailed topics, the limit is " + maxTopics));
+        }
+        try {
+            // a new tail starts where the first request wants to continue, so an idle tail does not lose messages,
+            // otherwise at the end of the topic, so that the first response already has a token to resume from
+            Map<Integer, Long> initialOffsets = offsets.isEmpty() ? latestOffsets(topic) : offsets;
+            LOG.debug("Starting live tail of topic {} at {}", topic, initialOffsets);
+            TopicTail tail = new TopicTail(topic, initialOffsets, reader, tailPollExecutor, metadataCache::topicExists,
+                    maxWaitMs, bufferSize, bufferMaxBytes, idleTimeoutMs, readMemory.lease(), fetchFailures,
+                    disconnected);
+            tailExecutor.execute(() -> {
+                try {
+                    tail.run();
+                } finally {
+                    tails.remove(topic, placeholder);
+                    permits.release();
+                }
+            });
+            placeholder.complete(tail);
+        } catch (RuntimeException ex) {
+            permits.release();
+            throw failStart(topic, placeholder, ex);
+        }
+    }
+
+    private RuntimeException failStart(String topic, CompletableFuture<TopicTail> placeholder, RuntimeException ex) {
+        tails.remove(topic, placeholder);
+        placeholder.completeExceptionally(ex);
+        return ex;
+    }
+
+    private static TopicTail join(CompletableFuture<TopicTail> tail) {
+        try {
+            return tail.join();
+        } catch (CompletionException ex) {
+            // requests waiting for a tail which failed to start fail the same way as the one which started it
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private Map<Integer, Long> latestOffsets(String topic) {
+        Map<Integer, Long> offsets = new HashMap<>();
+        for (TopicDetails topicDetails : reader.describeTopics(Collections.singletonList(topic))) {
+            if (topicDetails.getPartitions() == null) {
+                continue;
+            }
+            // partitions without an offset, e.g. without a leader, are resolved by the tail itself
+            topicDetails.getPartitions().stream()
+                    .filter(partition -> partition.getLatestOffset() != null)
+                    .forEach(partition -> offsets.put(partition.getPartition(), partition.getLatestOffset()));
+        }
+        return offsets;
+    }
+}